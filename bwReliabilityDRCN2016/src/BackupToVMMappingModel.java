@@ -66,12 +66,12 @@ public class BackupToVMMappingModel {
 			ArrayList<int[][]> parameters =  new ArrayList<int[][]>();
 				
 			int P = this.treeNetwork.nbOfPhysicalMachines;
-			int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-			int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-			int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-			int V = P+torSwitchesNb + aggCoreSwitchesNb;
+			int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+			int V = this.treeNetwork.getNbOfNodes();
+			
+			//number of switches above the TOR switches (aggregate and core switches of all the levels)
+			int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 			
-			int count = 0;
 			
 			//x specifies if vm n is hosted on server p
 			int [][] x = new int [this.request.N][P];
@@ -106,64 +106,23 @@ public class BackupToVMMappingModel {
 			parameters.add(x);
 			
 			
-			//Working on links between TOR and physical servers
-			//looping over TOR switches 
-			for (int i=P; i<(P+torSwitchesNb); i++)
-			{			
-				l[0][i] = 1;
-				for(int j=0; j<treeNetwork.nbOfPhysicalMachinesPerTor; j++)
-				{
-					
-					//setting physical server count is under TOR switch i 
-					v[count][i] = 1;
-				
-					//setting link capacity between TOR i and physical server count
-					c[count][i] = treeNetwork.pmToTorLinkCapacity;
-					
-					//will hold the total number of physical machines
-					count++;
-				}		
-				
-			}
-			
+			Link [] networkLinks = this.treeNetwork.getLinks();
+			int sourceIndex;
+			int destinationIndex;
 			
-			
-			//Working on links between Aggregate switches and TOR
-			//looping over aggregate switches
-			for (int i=P+torSwitchesNb; i<(V-coreSwitchesNb); i++)
-			{			
-				l[0][i] = 2;
-				for(int j=0; j<treeNetwork.nbOfTorPerAgg; j++)
-				{
-					//setting TOR switch 'count' is under Aggregate switch i 
-					v[count][i]= 1;
-					
-					//setting link capacity between Aggregate i and TOR switch count
-					c[count][i] = treeNetwork.torToAggregateLinkCapacity;
-					
-					//will hold the total number of TOR
-					count++;
-				}		
+			//Working on the links between each node (physical server or switch) and its parent switch, level by level
+			for (int i=0; i<networkLinks.length; i++)
+			{
+				sourceIndex = this.treeNetwork.getNodeIndex(networkLinks[i].sourceNode);
+				destinationIndex = this.treeNetwork.getNodeIndex(networkLinks[i].destinationNode);
 				
-			}
-			
-			//Working on links between Core switches and Aggregate switches 
-			//looping over core switches
-			for (int i=V-coreSwitchesNb; i<V ; i++)
-			{	
-				l[0][i] = 3;
-				for(int j=0; j<treeNetwork.nbOfAggPerCore; j++)
-				{
-					//setting Aggregate switch count is under Core switch i 
-					v[count][i]= 1;
-					
-					//setting link capacity between core switch i and aggregate switch count
-					c[count][i] = treeNetwork.aggregateToCoreLinkCapacity;
-					
-					//will hold the total number of aggregate switch
-					count++;
-				}		
+				l[0][destinationIndex] = networkLinks[i].destinationNode.level;
+				
+				//setting node sourceIndex is under switch destinationIndex
+				v[sourceIndex][destinationIndex] = 1;
 				
+				//setting link capacity between switch destinationIndex and node sourceIndex
+				c[sourceIndex][destinationIndex] = networkLinks[i].capacity;
 			}
 							
 			parameters.add(c);
@@ -234,13 +193,10 @@ public class BackupToVMMappingModel {
 			{
 				physicalMachine = this.treeNetwork.physicalMachinesSet[i];
 				
-				for (int j=0; j<physicalMachine.virtualMachines.length; j++)
+				for (int j=0; j<physicalMachine.nbOfVM; j++)
 				{
 					//verify that the VM of the specified server is reserved for the specified request (tenant)
-					if (physicalMachine.virtualMachines[j].reserved 
-							&& physicalMachine.virtualMachines[j].vmType == VirtualMachine.Type.PRIMARY 
-							&& physicalMachine.virtualMachines[j].request.id == this.request.id
-						)
+					if (physicalMachine.getSlotOwner(j) == this.request.id && physicalMachine.getSlotType(j) == VirtualMachine.Type.PRIMARY)
 					{
 						x[n][i] = 1;
 						n++;
@@ -273,14 +229,11 @@ public class BackupToVMMappingModel {
 			{
 				physicalMachine = this.treeNetwork.physicalMachinesSet[i];
 				
-				for (int j=0; j<physicalMachine.virtualMachines.length; j++)
+				for (int j=0; j<physicalMachine.nbOfVM; j++)
 				{
 					//verify that the VM of the specified server is reserved for the specified request (tenant)
 					
-					if (physicalMachine.virtualMachines[j].reserved 
-							&& physicalMachine.virtualMachines[j].vmType == VirtualMachine.Type.BACKUP 
-							&& physicalMachine.virtualMachines[j].request.id == this.request.id
-						)
+					if (physicalMachine.getSlotOwner(j) == this.request.id && physicalMachine.getSlotType(j) == VirtualMachine.Type.BACKUP)
 					{ 
 						y[n][i] = 1;
 						n++;
@@ -306,35 +259,28 @@ public class BackupToVMMappingModel {
 		public int[][] populateLinkCapacity ()
 		{
 			int P = this.treeNetwork.nbOfPhysicalMachines;
-			int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-			int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-			int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-			int V = P+torSwitchesNb + aggCoreSwitchesNb;
+			int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+			int V = this.treeNetwork.getNbOfNodes();
+			
+			//number of switches above the TOR switches (aggregate and core switches of all the levels)
+			int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 			int[][] c = new int [V][V];
 			Link l;
 			int [][] f = this.populateReservedLinkBandwidth();
 			
-			//Set the residual bandwidth for links between physical machines(source) and TOR  switches (Destination)
-			for (int i=0; i<treeNetwork.pmToTorLinkSet.length; i++)
+			Link [] networkLinks = this.treeNetwork.getLinks();
+			int sourceIndex;
+			int destinationIndex;
+			
+			//Set the residual bandwidth for the links between each node (Source) and its parent switch (Destination), level by level
+			for (int i=0; i<networkLinks.length; i++)
 			{
-				l = treeNetwork.pmToTorLinkSet[i];
+				l = networkLinks[i];
+				sourceIndex = this.treeNetwork.getNodeIndex(l.sourceNode);
+				destinationIndex = this.treeNetwork.getNodeIndex(l.destinationNode);
 				
 				//we need to add the bandwidth reserved for this request because of constraint 16
-				c[l.sourceNode.id][l.destinationNode.id + P] = l.bandwidth+f[l.sourceNode.id][l.destinationNode.id + P];
-			}
-			
-			//Set the residual bandwidth for links between TOR  switches (Source) and Aggregate switches (Destination)
-			for (int i=0; i<treeNetwork.torToAggregateLinkSet.length; i++)
-			{
-				l = treeNetwork.torToAggregateLinkSet[i];
-				c[l.sourceNode.id+P][l.destinationNode.id + P+torSwitchesNb] = l.bandwidth+f[l.sourceNode.id+P][l.destinationNode.id + P+torSwitchesNb] ;
-			}
-			
-			//Set the residual bandwidth for links between Aggregate  switches (Source) and Core switches (Destination)
-			for (int i=0; i<treeNetwork.aggregateToCoreLinkset.length; i++)
-			{
-				l = treeNetwork.aggregateToCoreLinkset[i];
-				c[l.sourceNode.id + P + torSwitchesNb][l.destinationNode.id +V-coreSwitchesNb] = l.bandwidth+f[l.sourceNode.id + P + torSwitchesNb][l.destinationNode.id +V-coreSwitchesNb];
+				c[sourceIndex][destinationIndex] = l.getBandwidth()+f[sourceIndex][destinationIndex];
 			}
 			
 			//unset variable to release space in memory to handl garbage collector issue
@@ -353,64 +299,28 @@ public class BackupToVMMappingModel {
 		public int[][] populateReservedLinkBandwidth ()
 		{
 			int P = this.treeNetwork.nbOfPhysicalMachines;
-			int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-			int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-			int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-			int V = P+torSwitchesNb + aggCoreSwitchesNb;
+			int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+			int V = this.treeNetwork.getNbOfNodes();
+			
+			//number of switches above the TOR switches (aggregate and core switches of all the levels)
+			int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 			
 			int [][] f = new int [V][V];
-			int[] requestBandwidth;
 			Link l;
 			
-			//Set the reserved bandwidth for links between physical machines(source) and TOR  switches (Destination)
-			for (int i=0; i<treeNetwork.pmToTorLinkSet.length; i++)
-			{
-				l = treeNetwork.pmToTorLinkSet[i];
-				
-				for (int j=0; j<l.bandwidthForRequests.size();j++)
-				{
-					requestBandwidth = l.bandwidthForRequests.get(j);
-					
-					//check if a bandwidth is reserved for the specified request
-					if (requestBandwidth[0] == this.request.id)
-					{
-						f[l.sourceNode.id][l.destinationNode.id + P] = requestBandwidth[1];
-						break;
-					}
-					
-				}
-				
-			}
+			Link [] networkLinks = this.treeNetwork.getLinks();
+			int sourceIndex;
+			int destinationIndex;
 			
-			//Set the reserved bandwidth for links between TOR  switches (Source) and Aggregate switches (Destination)
-			for (int i=0; i<treeNetwork.torToAggregateLinkSet.length; i++)
+			//Set the reserved bandwidth for the links between each node (Source) and its parent switch (Destination), level by level
+			for (int i=0; i<networkLinks.length; i++)
 			{
-				l = treeNetwork.torToAggregateLinkSet[i];
-				for (int j=0; j<l.bandwidthForRequests.size();j++)
-				{
-					requestBandwidth = l.bandwidthForRequests.get(j);
-					if (requestBandwidth[0] == this.request.id)
-					{
-						f[l.sourceNode.id+P][l.destinationNode.id + P+torSwitchesNb] = requestBandwidth[1];
-						break;
-					}
-				}
+				l = networkLinks[i];
+				sourceIndex = this.treeNetwork.getNodeIndex(l.sourceNode);
+				destinationIndex = this.treeNetwork.getNodeIndex(l.destinationNode);
 				
-			}
-			
-			//Set the reserved bandwidth for links between Aggregate  switches (Source) and Core switches (Destination)
-			for (int i=0; i<treeNetwork.aggregateToCoreLinkset.length; i++)
-			{
-				l = treeNetwork.aggregateToCoreLinkset[i];
-				for (int j=0; j<l.bandwidthForRequests.size();j++)
-				{
-					requestBandwidth = l.bandwidthForRequests.get(j);
-					if (requestBandwidth[0] == this.request.id)
-					{
-						f[l.sourceNode.id + P + torSwitchesNb][l.destinationNode.id +V-coreSwitchesNb] = requestBandwidth[1];
-						break;
-					}
-				}
+				//primary bandwidth reserved for the specified request (0 if nothing is reserved)
+				f[sourceIndex][destinationIndex] = l.bandwidthForRequests.getPrimary(this.request.id);
 				
 			}
 			
@@ -463,11 +373,11 @@ public class BackupToVMMappingModel {
 		public ArrayList<int[][]> populateNodesInformation()
 		{
 			int P = this.treeNetwork.nbOfPhysicalMachines;
-			int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-			int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-			int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-			int V = P+torSwitchesNb + aggCoreSwitchesNb;
-			int count =0;
+			int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+			int V = this.treeNetwork.getNbOfNodes();
+			
+			//number of switches above the TOR switches (aggregate and core switches of all the levels)
+			int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 			
 			ArrayList<int[][]> nodeInformation =  new ArrayList<int[][]>();
 			
@@ -478,52 +388,20 @@ public class BackupToVMMappingModel {
 			int [][] l = new int [1][V];
 					
 					
-			//Working on links between TOR and physical servers
-			//looping over TOR switches 
-			for (int i=P; i<(P+torSwitchesNb); i++)
-			{			
-				l[0][i] = 1;
-				for(int j=0; j<treeNetwork.nbOfPhysicalMachinesPerTor; j++)
-				{			
-					//setting physical server count is under TOR switch i 
-					v[count][i] = 1;
-							
-					//will hold the total number of physical machines
-					count++;
-				}		
-				
-			}
+			Link [] networkLinks = this.treeNetwork.getLinks();
+			int sourceIndex;
+			int destinationIndex;
 			
-			//Working on links between Aggregate switches and TOR
-			//looping over aggregate switches
-			for (int i=P+torSwitchesNb; i<(V-coreSwitchesNb); i++)
-			{			
-				l[0][i] = 2;
-				for(int j=0; j<treeNetwork.nbOfTorPerAgg; j++)
-				{
-					//setting TOR switch 'count' is under Aggregate switch i 
-					v[count][i]= 1;
-					
-					//will hold the total number of TOR
-					count++;
-				}		
+			//Working on the links between each node (physical server or switch) and its parent switch, level by level
+			for (int i=0; i<networkLinks.length; i++)
+			{
+				sourceIndex = this.treeNetwork.getNodeIndex(networkLinks[i].sourceNode);
+				destinationIndex = this.treeNetwork.getNodeIndex(networkLinks[i].destinationNode);
 				
-			}
-			
-			//Working on links between Core switches and Aggregate switches 
-			//looping over core switches
-			for (int i=V-coreSwitchesNb; i<V ; i++)
-			{	
-				l[0][i] = 3;
-				for(int j=0; j<treeNetwork.nbOfAggPerCore; j++)
-				{
-					//setting Aggregate switch count is under Core switch i 
-					v[count][i]= 1;
-					
-					//will hold the total number of aggregate switch
-					count++;
-				}		
+				l[0][destinationIndex] = networkLinks[i].destinationNode.level;
 				
+				//setting node sourceIndex is under switch destinationIndex
+				v[sourceIndex][destinationIndex] = 1;
 			}
 							
 			nodeInformation.add(v);
@@ -612,10 +490,11 @@ public class BackupToVMMappingModel {
 			ArrayList<int[][]> parameters =  new ArrayList<int[][]>();
 				
 			int P = treeNetwork.nbOfPhysicalMachines;
-			int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-			int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-			int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-			int V = P+torSwitchesNb + aggCoreSwitchesNb;
+			int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+			int V = this.treeNetwork.getNbOfNodes();
+			
+			//number of switches above the TOR switches (aggregate and core switches of all the levels)
+			int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 	
 			int backupNeeded = this.request.getBackupNeeded();
 			double objectiveValue = -1;
@@ -1350,50 +1229,34 @@ public class BackupToVMMappingModel {
 		public void updateNetwork (IloIntVar[][] tc ) throws UnknownObjectException, IloException
 		{
 			int P = treeNetwork.nbOfPhysicalMachines;
-			int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-			int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-			int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-			int V = P+torSwitchesNb + aggCoreSwitchesNb;
+			int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+			int V = this.treeNetwork.getNbOfNodes();
+			
+			//number of switches above the TOR switches (aggregate and core switches of all the levels)
+			int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 			
 			Link l;
 			int bandwidthToReserve = 0 ;
 			
-			//Set the reserved bandwidth for links between servers (Source) and TOR switches (Destination)
-			for (int i=0; i<treeNetwork.pmToTorLinkSet.length; i++)
+			Link [] networkLinks = this.treeNetwork.getLinks();
+			int sourceIndex;
+			int destinationIndex;
+			
+			//Set the reserved bandwidth for the links between each node (Source) and its parent switch (Destination), level by level
+			for (int i=0; i<networkLinks.length; i++)
 			{
-				l = treeNetwork.pmToTorLinkSet[i];
-				bandwidthToReserve = (int)cplex.getValue(tc[l.sourceNode.id][l.destinationNode.id + P] );
+				l = networkLinks[i];
+				sourceIndex = this.treeNetwork.getNodeIndex(l.sourceNode);
+				destinationIndex = this.treeNetwork.getNodeIndex(l.destinationNode);
+				bandwidthToReserve = (int)cplex.getValue(tc[sourceIndex][destinationIndex] );
 				
 				//check if a bandwidth is reserved for the specified request
 				if (bandwidthToReserve!= 0)
 				{
-					l.reserveBandwidth(bandwidthToReserve, this.request.id, Link.BandwidthType.BACKUP);			
+					l.reserveBandwidth(bandwidthToReserve, this.request, Link.BandwidthType.BACKUP);			
 				}
 			}
 			
-			//Set the reserved bandwidth for links between TOR  switches (Source) and Aggregate switches (Destination)
-			for (int i=0; i<treeNetwork.torToAggregateLinkSet.length; i++)
-			{
-				l = treeNetwork.torToAggregateLinkSet[i];
-				bandwidthToReserve = (int)cplex.getValue(tc[l.sourceNode.id+P][l.destinationNode.id + P+torSwitchesNb]  );
-				if (bandwidthToReserve!= 0)
-				{
-					l.reserveBandwidth(bandwidthToReserve, this.request.id,Link.BandwidthType.BACKUP);			
-				}
-				
-			}
-			
-			//Set the reserved bandwidth for links between Aggregate  switches (Source) and Core switches (Destination)
-			for (int i=0; i<treeNetwork.aggregateToCoreLinkset.length; i++)
-			{
-				l = treeNetwork.aggregateToCoreLinkset[i];
-				bandwidthToReserve = (int)cplex.getValue(tc[l.sourceNode.id + P + torSwitchesNb][l.destinationNode.id +V-coreSwitchesNb] );
-				if (bandwidthToReserve!= 0)
-				{
-					l.reserveBandwidth(bandwidthToReserve, this.request.id,Link.BandwidthType.BACKUP);			
-				}			
-			}
-			
 		}
 		
 		
@@ -1592,7 +1455,7 @@ public class BackupToVMMappingModel {
 			
 			ArrayList<Request> requests = new ArrayList<Request>();
 			Request r1, r2, r3;
-			Switch [] subtreesRoots = treeNetwork.getSwitchSetPerTreeLevel(3);
+			Switch [] subtreesRoots = treeNetwork.getSwitchSetPerTreeLevel(treeNetwork.height);
 			SubTree s = new SubTree(subtreesRoots[0]);
 			treeNetwork.buildSubTree(s, subtreesRoots[0]);
 			
@@ -1608,13 +1471,13 @@ public class BackupToVMMappingModel {
 				j++;
 				pm.reserveVM(15, r1, VirtualMachine.Type.PRIMARY);
 				l = s.searchLink(pm);				
-				l.reserveBandwidth(10, r1.id, Link.BandwidthType.PRIMARY);
+				l.reserveBandwidth(10, r1, Link.BandwidthType.PRIMARY);
 				
 				pm = treeNetwork.physicalMachinesSet[j];
 				j++;
 				pm.reserveVM(10, r1,  VirtualMachine.Type.PRIMARY);
 				l = s.searchLink(pm);
-				l.reserveBandwidth(10, r1.id, Link.BandwidthType.PRIMARY);
+				l.reserveBandwidth(10, r1, Link.BandwidthType.PRIMARY);
 				
 				pm.reserveVM(6, r1, VirtualMachine.Type.BACKUP);
 				pm = treeNetwork.physicalMachinesSet[j];
@@ -1632,13 +1495,13 @@ public class BackupToVMMappingModel {
 				j++;
 				pm.reserveVM(16, r2, VirtualMachine.Type.PRIMARY);
 				l = s.searchLink(pm);				
-				l.reserveBandwidth(16, r2.id, Link.BandwidthType.PRIMARY);
+				l.reserveBandwidth(16, r2, Link.BandwidthType.PRIMARY);
 				
 				pm = treeNetwork.physicalMachinesSet[j];
 				j++;
 				pm.reserveVM(16, r2,  VirtualMachine.Type.PRIMARY);
 				l = s.searchLink(pm);
-				l.reserveBandwidth(16, r2.id, Link.BandwidthType.PRIMARY);
+				l.reserveBandwidth(16, r2, Link.BandwidthType.PRIMARY);
 				//pm.reserveVM(1, r2, VirtualMachine.Type.BACKUP);
 								
 				pm = treeNetwork.physicalMachinesSet[j];
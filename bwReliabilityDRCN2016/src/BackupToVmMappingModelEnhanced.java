@@ -37,6 +37,7 @@ import java.util.ArrayList;
 import Network.FatTreeNetwork;
 import Network.Link;
 import Network.PhysicalMachine;
+import Network.PodLocks;
 import Network.Request;
 import Network.SubTree;
 import Network.Switch;
@@ -76,12 +77,12 @@ public class BackupToVmMappingModelEnhanced
 		ArrayList<int[][]> parameters =  new ArrayList<int[][]>();
 			
 		int P = this.treeNetwork.nbOfPhysicalMachines;
-		int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-		int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-		int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-		int V = P+torSwitchesNb + aggCoreSwitchesNb;
+		int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+		int V = this.treeNetwork.getNbOfNodes();
+		
+		//number of switches above the TOR switches (aggregate and core switches of all the levels)
+		int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 		
-		int count = 0;
 		
 		//x specifies if vm n is hosted on server p
 		int [][] x = new int [this.request.N][P];
@@ -116,64 +117,23 @@ public class BackupToVmMappingModelEnhanced
 		parameters.add(x);
 		
 		
-		//Working on links between TOR and physical servers
-		//looping over TOR switches 
-		for (int i=P; i<(P+torSwitchesNb); i++)
-		{			
-			l[0][i] = 1;
-			for(int j=0; j<treeNetwork.nbOfPhysicalMachinesPerTor; j++)
-			{
-				
-				//setting physical server count is under TOR switch i 
-				v[count][i] = 1;
-			
-				//setting link capacity between TOR i and physical server count
-				c[count][i] = treeNetwork.pmToTorLinkCapacity;
-				
-				//will hold the total number of physical machines
-				count++;
-			}		
-			
-		}
-		
-		
+		Link [] networkLinks = this.treeNetwork.getLinks();
+		int sourceIndex;
+		int destinationIndex;
 		
-		//Working on links between Aggregate switches and TOR
-		//looping over aggregate switches
-		for (int i=P+torSwitchesNb; i<(V-coreSwitchesNb); i++)
-		{			
-			l[0][i] = 2;
-			for(int j=0; j<treeNetwork.nbOfTorPerAgg; j++)
-			{
-				//setting TOR switch 'count' is under Aggregate switch i 
-				v[count][i]= 1;
-				
-				//setting link capacity between Aggregate i and TOR switch count
-				c[count][i] = treeNetwork.torToAggregateLinkCapacity;
-				
-				//will hold the total number of TOR
-				count++;
-			}		
+		//Working on the links between each node (physical server or switch) and its parent switch, level by level
+		for (int i=0; i<networkLinks.length; i++)
+		{
+			sourceIndex = this.treeNetwork.getNodeIndex(networkLinks[i].sourceNode);
+			destinationIndex = this.treeNetwork.getNodeIndex(networkLinks[i].destinationNode);
 			
-		}
-		
-		//Working on links between Core switches and Aggregate switches 
-		//looping over core switches
-		for (int i=V-coreSwitchesNb; i<V ; i++)
-		{	
-			l[0][i] = 3;
-			for(int j=0; j<treeNetwork.nbOfAggPerCore; j++)
-			{
-				//setting Aggregate switch count is under Core switch i 
-				v[count][i]= 1;
-				
-				//setting link capacity between core switch i and aggregate switch count
-				c[count][i] = treeNetwork.aggregateToCoreLinkCapacity;
-				
-				//will hold the total number of aggregate switch
-				count++;
-			}		
+			l[0][destinationIndex] = networkLinks[i].destinationNode.level;
+			
+			//setting node sourceIndex is under switch destinationIndex
+			v[sourceIndex][destinationIndex] = 1;
 			
+			//setting link capacity between switch destinationIndex and node sourceIndex
+			c[sourceIndex][destinationIndex] = networkLinks[i].capacity;
 		}
 						
 		parameters.add(c);
@@ -238,13 +198,10 @@ public class BackupToVmMappingModelEnhanced
 		{
 			physicalMachine = this.treeNetwork.physicalMachinesSet[i];
 			
-			for (int j=0; j<physicalMachine.virtualMachines.length; j++)
+			for (int j=0; j<physicalMachine.nbOfVM; j++)
 			{
 				//verify that the VM of the specified server is reserved for the specified request (tenant)
-				if (physicalMachine.virtualMachines[j].reserved 
-						&& physicalMachine.virtualMachines[j].vmType == VirtualMachine.Type.PRIMARY 
-						&& physicalMachine.virtualMachines[j].request.id == this.request.id
-					)
+				if (physicalMachine.getSlotOwner(j) == this.request.id && physicalMachine.getSlotType(j) == VirtualMachine.Type.PRIMARY)
 				{
 					x[n][i] = 1;
 					n++;
@@ -277,14 +234,11 @@ public class BackupToVmMappingModelEnhanced
 		{
 			physicalMachine = this.treeNetwork.physicalMachinesSet[i];
 			
-			for (int j=0; j<physicalMachine.virtualMachines.length; j++)
+			for (int j=0; j<physicalMachine.nbOfVM; j++)
 			{
 				//verify that the VM of the specified server is reserved for the specified request (tenant)
 				
-				if (physicalMachine.virtualMachines[j].reserved 
-						&& physicalMachine.virtualMachines[j].vmType == VirtualMachine.Type.BACKUP 
-						&& physicalMachine.virtualMachines[j].request.id == this.request.id
-					)
+				if (physicalMachine.getSlotOwner(j) == this.request.id && physicalMachine.getSlotType(j) == VirtualMachine.Type.BACKUP)
 				{ 
 					y[n][i] = 1;
 					n++;
@@ -320,7 +274,7 @@ public class BackupToVmMappingModelEnhanced
 			l = links[i];
 			
 			//we need to add the bandwidth reserved for this request because of constraint 16
-			c[l.continuousId] = l.bandwidth+f[l.continuousId];
+			c[l.continuousId] = l.getBandwidth()+f[l.continuousId];
 		}
 		
 		
@@ -334,37 +288,27 @@ public class BackupToVmMappingModelEnhanced
 	
 	/**
 	 * 
-	 * This function populates the bandwidth reserved for the request on all the links
+	 * This function populates the bandwidth reserved for the request on all the links.
+	 * Only the links of the request footprint are read: the request has no bandwidth reserved on the other links,
+	 * whose reservation tables may be changed by the threads admitting requests in other pods
 	 * 
 	 * @return array of reserved bandwidth for the request on all the links
 	 */
 	public int[] populateReservedLinkBandwidth ()
 	{
 		
-		Link [] links = this.treeNetwork.getLinks();
-		int [] f = new int[links.length];
-		int[] requestBandwidth;
+		int [] f = new int[this.treeNetwork.getLinks().length];
 		Link l = null;
 		
-		for (int i = 0; i<links.length; i++)
+		for (int i = 0; i<this.request.reservedLinks.size(); i++)
 		{
-			l =  links[i];
-			for (int j=0; j<l.bandwidthForRequests.size();j++)
-			{
-				requestBandwidth = l.bandwidthForRequests.get(j);
-				
-				//check if a bandwidth is reserved for the specified request
-				if (requestBandwidth[0] == this.request.id)
-				{
-					f[l.continuousId] = requestBandwidth[1];
-					break;
-				}
-			}
+			l =  this.request.reservedLinks.get(i);
+			
+			//primary bandwidth reserved for the specified request (0 if nothing is reserved)
+			f[l.continuousId] = l.bandwidthForRequests.getPrimary(this.request.id);
 		}
 		
 		l = null;
-		requestBandwidth = null;
-		links = null;
 		
 		return f;
 	}
@@ -413,11 +357,11 @@ public class BackupToVmMappingModelEnhanced
 	public ArrayList<int[][]> populateNodesInformation()
 	{
 		int P = this.treeNetwork.nbOfPhysicalMachines;
-		int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-		int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-		int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-		int V = P+torSwitchesNb + aggCoreSwitchesNb;
-		int count =0;
+		int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+		int V = this.treeNetwork.getNbOfNodes();
+		
+		//number of switches above the TOR switches (aggregate and core switches of all the levels)
+		int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 		
 		ArrayList<int[][]> nodeInformation =  new ArrayList<int[][]>();
 		
@@ -428,52 +372,20 @@ public class BackupToVmMappingModelEnhanced
 		int [][] l = new int [1][V];
 				
 				
-		//Working on links between TOR and physical servers
-		//looping over TOR switches 
-		for (int i=P; i<(P+torSwitchesNb); i++)
-		{			
-			l[0][i] = 1;
-			for(int j=0; j<treeNetwork.nbOfPhysicalMachinesPerTor; j++)
-			{			
-				//setting physical server count is under TOR switch i 
-				v[count][i] = 1;
-						
-				//will hold the total number of physical machines
-				count++;
-			}		
-			
-		}
+		Link [] networkLinks = this.treeNetwork.getLinks();
+		int sourceIndex;
+		int destinationIndex;
 		
-		//Working on links between Aggregate switches and TOR
-		//looping over aggregate switches
-		for (int i=P+torSwitchesNb; i<(V-coreSwitchesNb); i++)
-		{			
-			l[0][i] = 2;
-			for(int j=0; j<treeNetwork.nbOfTorPerAgg; j++)
-			{
-				//setting TOR switch 'count' is under Aggregate switch i 
-				v[count][i]= 1;
-				
-				//will hold the total number of TOR
-				count++;
-			}		
+		//Working on the links between each node (physical server or switch) and its parent switch, level by level
+		for (int i=0; i<networkLinks.length; i++)
+		{
+			sourceIndex = this.treeNetwork.getNodeIndex(networkLinks[i].sourceNode);
+			destinationIndex = this.treeNetwork.getNodeIndex(networkLinks[i].destinationNode);
 			
-		}
-		
-		//Working on links between Core switches and Aggregate switches 
-		//looping over core switches
-		for (int i=V-coreSwitchesNb; i<V ; i++)
-		{	
-			l[0][i] = 3;
-			for(int j=0; j<treeNetwork.nbOfAggPerCore; j++)
-			{
-				//setting Aggregate switch count is under Core switch i 
-				v[count][i]= 1;
-				
-				//will hold the total number of aggregate switch
-				count++;
-			}		
+			l[0][destinationIndex] = networkLinks[i].destinationNode.level;
 			
+			//setting node sourceIndex is under switch destinationIndex
+			v[sourceIndex][destinationIndex] = 1;
 		}
 						
 		nodeInformation.add(v);
@@ -563,17 +475,18 @@ public class BackupToVmMappingModelEnhanced
 	public double modelFormulation(int[][]pmAllocation,int[][]backupAllocation, int[][]primaryBandwdith,boolean printResults) throws IloException
 	{
 		Link [] links = this.treeNetwork.getLinks();
-		int pmToTorlinksNb = this.treeNetwork.getNbOfLinksPerType(Link.MACHINE_TO_TOR_TYPE);
+		int pmToTorlinksNb = this.treeNetwork.getNbOfLinksPerLevel(1);
 		int linkSourceNodeId = 0;
 		
 		
 		ArrayList<int[][]> parameters =  new ArrayList<int[][]>();
 			
 		int P = treeNetwork.nbOfPhysicalMachines;
-		int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-		int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-		int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-		int V = P+torSwitchesNb + aggCoreSwitchesNb;
+		int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+		int V = this.treeNetwork.getNbOfNodes();
+		
+		//number of switches above the TOR switches (aggregate and core switches of all the levels)
+		int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 
 		int backupNeeded = this.request.getBackupNeeded();
 		double objectiveValue = -1;
@@ -1114,7 +1027,12 @@ public class BackupToVmMappingModelEnhanced
 		cplex.exportModel("BackupToVmMapping.lp");
 		if (cplex.solve()) {
 			
-			this.updateNetwork(tc);
+			//the backup bandwidth needs links outside the pod locked by the thread, the request is protected again after escalating
+			if (!this.updateNetwork(tc))
+			{
+				cplex.end();
+				return -1;
+			}
 			
 			if(printResults)
 			{ 
@@ -1152,19 +1070,35 @@ public class BackupToVmMappingModelEnhanced
 	
 
 	/**
-	 * This functions update the network with the additional backup bandwidth
+	 * This functions update the network with the additional backup bandwidth.
+	 * When the requests are admitted concurrently, nothing is reserved if a link is outside the pod locked by the thread:
+	 * an escalation is requested instead
 	 * 
 	 * @param tc [i][j] bandwidth to reserve on link ij
+	 * @return false if an escalation is needed to reserve the bandwidth
 	 * @throws IloException 
 	 * @throws UnknownObjectException 
 	 */
-	public void updateNetwork (IloIntVar[] tc ) throws UnknownObjectException, IloException
+	public boolean updateNetwork (IloIntVar[] tc ) throws UnknownObjectException, IloException
 	{
 	
 		Link [] links =  this.treeNetwork.getLinks(); 
+		PodLocks podLocks = this.treeNetwork.podLocks;
 		Link l;
 		int bandwidthToReserve = 0 ;
 		
+		//the links of other pods can not be changed under the pod lock
+		for ( int i =0; podLocks != null && i<links.length; i++)
+		{
+			l = links[i];
+			
+			if ((int)cplex.getValue(tc[l.continuousId]) != 0 && podLocks.needsEscalation(l.sourceNode))
+			{
+				podLocks.requestEscalation();
+				return false;
+			}
+		}
+		
 		for ( int i =0; i<links.length; i++)
 		{
 			l = links[i];
@@ -1173,13 +1107,14 @@ public class BackupToVmMappingModelEnhanced
 			//check if a bandwidth is reserved for the specified request
 			if (bandwidthToReserve!= 0)
 			{
-				l.reserveBandwidth(bandwidthToReserve, this.request.id, Link.BandwidthType.BACKUP);			
+				l.reserveBandwidth(bandwidthToReserve, this.request, Link.BandwidthType.BACKUP);			
 			}
 		}
 		
 		links = null;
 		l =null;
 		
+		return true;
 	}
 	
 	
@@ -1372,7 +1307,7 @@ public class BackupToVmMappingModelEnhanced
 		
 		ArrayList<Request> requests = new ArrayList<Request>();
 		Request r1, r2, r3;
-		Switch [] subtreesRoots = treeNetwork.getSwitchSetPerTreeLevel(3);
+		Switch [] subtreesRoots = treeNetwork.getSwitchSetPerTreeLevel(treeNetwork.height);
 		SubTree s = new SubTree(subtreesRoots[0]);
 		treeNetwork.buildSubTree(s, subtreesRoots[0]);
 		
@@ -1388,13 +1323,13 @@ public class BackupToVmMappingModelEnhanced
 			j++;
 			pm.reserveVM(15, r1, VirtualMachine.Type.PRIMARY);
 			l = s.searchLink(pm);				
-			l.reserveBandwidth(10, r1.id, Link.BandwidthType.PRIMARY);
+			l.reserveBandwidth(10, r1, Link.BandwidthType.PRIMARY);
 			
 			pm = treeNetwork.physicalMachinesSet[j];
 			j++;
 			pm.reserveVM(10, r1,  VirtualMachine.Type.PRIMARY);
 			l = s.searchLink(pm);
-			l.reserveBandwidth(10, r1.id, Link.BandwidthType.PRIMARY);
+			l.reserveBandwidth(10, r1, Link.BandwidthType.PRIMARY);
 			
 			pm.reserveVM(6, r1, VirtualMachine.Type.BACKUP);
 			pm = treeNetwork.physicalMachinesSet[j];
@@ -1412,13 +1347,13 @@ public class BackupToVmMappingModelEnhanced
 			j++;
 			pm.reserveVM(16, r2, VirtualMachine.Type.PRIMARY);
 			l = s.searchLink(pm);				
-			l.reserveBandwidth(16, r2.id, Link.BandwidthType.PRIMARY);
+			l.reserveBandwidth(16, r2, Link.BandwidthType.PRIMARY);
 			
 			pm = treeNetwork.physicalMachinesSet[j];
 			j++;
 			pm.reserveVM(16, r2,  VirtualMachine.Type.PRIMARY);
 			l = s.searchLink(pm);
-			l.reserveBandwidth(16, r2.id, Link.BandwidthType.PRIMARY);
+			l.reserveBandwidth(16, r2, Link.BandwidthType.PRIMARY);
 			//pm.reserveVM(1, r2, VirtualMachine.Type.BACKUP);
 							
 			pm = treeNetwork.physicalMachinesSet[j];
@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import Network.FatTreeNetwork;
+import Network.Request;
+import Network.SubTree;
+
+/**
+ * This class compares the two checks of the bandwidth of a request in a sub tree of the placement:
+ * - isBandwidthAvailable: bottom-up computation of the numbers of VMs hosted below each node
+ * - isBandwidthAvailableUpdated: top-down search of the minimum allocation with the searched cases kept
+ *
+ * The same requests arrive in two copies of the network, one for each check. The sub trees are visited as by
+ * getBestPlacementForRequest() and the requests are replayed by RequestsReplay.
+ * The acceptance ratio and the placement time per request are printed for each check
+ *
+ * @author Hyame
+ *
+ */
+public class BandwidthCheckBenchmark implements RequestsReplay.Placement {
+
+	//network where the requests are placed
+	public FatTreeNetwork treeNetwork;
+
+	//placement algorithm
+	public VirtualMachinesPlacement vmPlacement;
+
+	//true to check the sub trees with isBandwidthAvailableUpdated
+	public boolean updatedCheck;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param treeNetwork built network
+	 * @param updatedCheck true to check the sub trees with isBandwidthAvailableUpdated
+	 */
+	public BandwidthCheckBenchmark (FatTreeNetwork treeNetwork, boolean updatedCheck)
+	{
+		this.treeNetwork = treeNetwork;
+		this.vmPlacement = new VirtualMachinesPlacement(treeNetwork);
+		this.updatedCheck = updatedCheck;
+	}
+
+
+	/**
+	 * This function places the request in the first sub tree that passes the check, from the lowest level
+	 *
+	 * @param request
+	 * @return array list of physical machines id and the number of VMs allocated for the request, null if the request is rejected
+	 */
+	@Override
+	public ArrayList <int []> placeRequest (Request request)
+	{
+		Iterator <SubTree> subTrees;
+		SubTree subTree;
+		ArrayList <int []> physicalVMAllocation;
+
+		for (int level = 1; level <= this.treeNetwork.height; level++)
+		{
+			subTrees = this.vmPlacement.getCandidateSubTrees(level, request);
+
+			while (subTrees.hasNext())
+			{
+				subTree = subTrees.next();
+
+				if (subTree.getAvailableVms() < request.N || subTree.getMaxServerBandwidth() < request.B)
+				{
+					continue;
+				}
+
+				if (!this.updatedCheck)
+				{
+					if (this.vmPlacement.isBandwidthAvailable(subTree, request))
+					{
+						return this.vmPlacement.allocateRequest(request, subTree);
+					}
+
+					continue;
+				}
+
+				physicalVMAllocation = this.vmPlacement.isBandwidthAvailableUpdated(subTree, request, request.N);
+
+				if (physicalVMAllocation != null)
+				{
+					//the allocation is reserved by allocateRequest without checking the sub tree again
+					request.primaryAllocationPlan = physicalVMAllocation;
+					request.primaryAllocationPlanSubTree = subTree;
+
+					return this.vmPlacement.allocateRequest(request, subTree);
+				}
+			}
+		}
+
+		return null;
+	}
+
+
+	public static void main(String [] args)
+	{
+		int nbOfPhysicalMachines [] = RequestsReplay.NB_OF_PHYSICAL_MACHINES;
+		int bandwidthRange [] = {50, 500};
+		ArrayList <int []> requests;
+		FatTreeNetwork treeNetwork;
+		BandwidthCheckBenchmark benchmark;
+		long results [];
+
+		for (int i=0; i<nbOfPhysicalMachines.length; i++)
+		{
+			requests = RequestsReplay.generateRequests(20000, 20, bandwidthRange, 1);
+
+			for (int check=0; check<2; check++)
+			{
+				treeNetwork = RequestsReplay.buildNetwork(nbOfPhysicalMachines[i]);
+
+				benchmark = new BandwidthCheckBenchmark(treeNetwork, check == 1);
+				results = new RequestsReplay(treeNetwork).replay(requests, benchmark);
+
+				System.out.println(nbOfPhysicalMachines[i]+" PMs - "+(check == 1 ? "isBandwidthAvailableUpdated" : "isBandwidthAvailable       ")
+						+" : acceptance ratio "+(double)results[0]/requests.size()+", "+results[1]/requests.size()/1000+" us/request");
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import Network.FatTreeNetwork;
+import Network.Request;
+import Network.SubTree;
+
+/**
+ * This class checks that the candidates pool of the placement (see VirtualMachinesPlacement.setCandidatesPool)
+ * does not change the placement of the requests.
+ *
+ * The same requests are replayed by RequestsReplay on two copies of the network, the first one checks the candidates
+ * one after the other and the second one checks them with the pool. For each request the sub tree returned
+ * by getBestPlacementForRequest and the allocation reserved in it must be the same in both networks.
+ * The placement time per request is printed for both networks
+ *
+ * @author Hyame
+ *
+ */
+public class CandidatesPoolCheck implements RequestsReplay.Placement {
+
+	//placement algorithm of the network
+	public VirtualMachinesPlacement vmPlacement;
+
+	//sub tree where each request was placed (null if it was rejected), in the order of the requests
+	public ArrayList <SubTree> subTrees;
+
+	//allocation of each request (null if it was rejected), in the order of the requests
+	public ArrayList <ArrayList <int []>> allocations;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param treeNetwork built network
+	 * @param pool pool of the threads checking the candidates (null to check them one after the other)
+	 */
+	public CandidatesPoolCheck (FatTreeNetwork treeNetwork, ForkJoinPool pool)
+	{
+		this.vmPlacement = new VirtualMachinesPlacement(treeNetwork);
+		this.vmPlacement.setCandidatesPool(pool);
+		this.subTrees = new ArrayList <SubTree>();
+		this.allocations = new ArrayList <ArrayList <int []>>();
+	}
+
+
+	/**
+	 * This function places the request in the sub tree returned by getBestPlacementForRequest and keeps the placement
+	 *
+	 * @param request
+	 * @return array list of physical machines id and the number of VMs allocated for the request, null if the request is rejected
+	 */
+	@Override
+	public ArrayList <int []> placeRequest (Request request)
+	{
+		SubTree subTree = this.vmPlacement.getBestPlacementForRequest(request, 1);
+		ArrayList <int []> physicalVMAllocation = subTree == null ? null : this.vmPlacement.allocateRequest(request, subTree);
+
+		this.subTrees.add(subTree);
+		this.allocations.add(physicalVMAllocation);
+
+		return physicalVMAllocation;
+	}
+
+
+	/**
+	 * This function compares the placements kept by this check with the ones kept by the other check, request by request
+	 *
+	 * @param other check of the same requests on a copy of the network
+	 * @return index of the first request placed differently, -1 if all the requests were placed the same way
+	 */
+	public int compare (CandidatesPoolCheck other)
+	{
+		for (int i=0; i<this.subTrees.size(); i++)
+		{
+			if (!sameSubTree(this.subTrees.get(i), other.subTrees.get(i)) || !sameAllocation(this.allocations.get(i), other.allocations.get(i)))
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * This function compares two sub trees of two copies of the network by their root
+	 *
+	 * @param subTree1
+	 * @param subTree2
+	 * @return boolean
+	 */
+	static boolean sameSubTree (SubTree subTree1, SubTree subTree2)
+	{
+		if (subTree1 == null || subTree2 == null)
+		{
+			return subTree1 == subTree2;
+		}
+
+		return subTree1.rootNode.level == subTree2.rootNode.level && subTree1.rootNode.id == subTree2.rootNode.id;
+	}
+
+
+	/**
+	 * This function compares two allocations of two copies of the network, physical machine by physical machine
+	 *
+	 * @param allocation1
+	 * @param allocation2
+	 * @return boolean
+	 */
+	static boolean sameAllocation (ArrayList <int []> allocation1, ArrayList <int []> allocation2)
+	{
+		if (allocation1 == null || allocation2 == null)
+		{
+			return allocation1 == allocation2;
+		}
+
+		if (allocation1.size() != allocation2.size())
+		{
+			return false;
+		}
+
+		for (int i=0; i<allocation1.size(); i++)
+		{
+			if (allocation1.get(i)[0] != allocation2.get(i)[0] || allocation1.get(i)[1] != allocation2.get(i)[1])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * @param subTree
+	 * @return root of the sub tree, or "no sub tree" for a rejected request
+	 */
+	static String describe (SubTree subTree)
+	{
+		return subTree == null ? "no sub tree" : "sub tree "+subTree.rootNode.id+" of level "+subTree.rootNode.level;
+	}
+
+
+	public static void main(String [] args)
+	{
+		int nbOfPhysicalMachines [] = RequestsReplay.NB_OF_PHYSICAL_MACHINES;
+		int bandwidthRange [] = {50, 500};
+		//threads of the pool: first argument, or one per processor
+		int nbOfThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		ArrayList <int []> requests;
+		FatTreeNetwork sequentialNetwork, poolNetwork;
+		ForkJoinPool pool = new ForkJoinPool(nbOfThreads);
+		CandidatesPoolCheck sequentialCheck, poolCheck;
+		long sequentialResults [], poolResults [];
+		int mismatch;
+
+		for (int i=0; i<nbOfPhysicalMachines.length; i++)
+		{
+			requests = RequestsReplay.generateRequests(20000, 20, bandwidthRange, 1);
+
+			sequentialNetwork = RequestsReplay.buildNetwork(nbOfPhysicalMachines[i]);
+			sequentialCheck = new CandidatesPoolCheck(sequentialNetwork, null);
+			sequentialResults = new RequestsReplay(sequentialNetwork).replay(requests, sequentialCheck);
+
+			poolNetwork = RequestsReplay.buildNetwork(nbOfPhysicalMachines[i]);
+			poolCheck = new CandidatesPoolCheck(poolNetwork, pool);
+			poolResults = new RequestsReplay(poolNetwork).replay(requests, poolCheck);
+
+			mismatch = sequentialCheck.compare(poolCheck);
+
+			System.out.println(nbOfPhysicalMachines[i]+" PMs : "+(mismatch == -1 ? "same placements with the pool"
+					: "request "+requests.get(mismatch)[0]+" placed in "+describe(sequentialCheck.subTrees.get(mismatch))
+					+" without the pool and in "+describe(poolCheck.subTrees.get(mismatch))+" with the pool"));
+			System.out.println(nbOfPhysicalMachines[i]+" PMs : "+sequentialResults[1]/requests.size()/1000+" us/request without the pool, "
+					+poolResults[1]/requests.size()/1000+" us/request with "+nbOfThreads+" threads");
+		}
+
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,364 @@
+import ilog.concert.IloException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Network.FatTreeNetwork;
+import Network.Link;
+import Network.NetworkState;
+import Network.PhysicalMachine;
+import Network.Request;
+import Network.ReservationTable;
+import Network.Switch;
+
+/**
+ * This class drives the concurrent admission of requests on a shared network
+ * (see FatTreeNetwork.enableConcurrentAdmission) and checks the network once all the threads are done.
+ *
+ * Each thread places its requests with hoseVMPlacementAlgorithmConcurrentRequest, protects the placed requests
+ * with protectRequestConcurrently and releases some of its admitted requests at random. Then the network is checked:
+ * - ledger: the bandwidth used on each link is the sum of the bandwidth reserved on it for the admitted requests
+ * - slots: the available VMs of each physical machine and switch match the free slots, the reserved slots belong to admitted requests
+ * - footprint: the links and physical machines of each admitted request hold its reservations and its primary VMs
+ *
+ * @author Hyame
+ *
+ */
+public class ConcurrentAdmissionCheck {
+
+	//network shared by the admission threads
+	public FatTreeNetwork treeNetwork;
+
+	//placement algorithm shared by the admission threads
+	public VirtualMachinesPlacement vmPlacement;
+
+	//protection algorithm shared by the admission threads
+	public VMsProtectionWithBandwidthGuarantee vmsProtection;
+
+	//requests admitted (placed and protected) and not released, indexed by request id
+	public HashMap <Integer, Request> admittedRequests;
+
+	//first inconsistency found by the check, null if the network is consistent
+	public String inconsistency;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param treeNetwork built network, its concurrent admission is enabled by the constructor
+	 */
+	public ConcurrentAdmissionCheck (FatTreeNetwork treeNetwork)
+	{
+		this.treeNetwork = treeNetwork;
+		this.treeNetwork.enableConcurrentAdmission();
+		this.vmPlacement = new VirtualMachinesPlacement(treeNetwork);
+		this.vmsProtection = new VMsProtectionWithBandwidthGuarantee(treeNetwork, new ArrayList<Request>());
+		this.admittedRequests = new HashMap <Integer, Request>();
+	}
+
+
+	/**
+	 * This function admits the requests with the given number of threads and waits for all the threads
+	 *
+	 * @param nbOfThreads
+	 * @param requestsPerThread number of requests generated by each thread
+	 * @param seed seed of the requests of the first thread (the next threads use the next seeds)
+	 * @return number of admitted requests (including the released ones)
+	 * @throws InterruptedException
+	 */
+	public int admit (int nbOfThreads, final int requestsPerThread, long seed) throws InterruptedException
+	{
+		final AtomicInteger requestIds = new AtomicInteger();
+		final AtomicInteger nbOfAdmittedRequests = new AtomicInteger();
+		final ArrayList <ArrayList <Request>> threadRequests = new ArrayList <ArrayList <Request>>();
+		final ArrayList <Throwable> failures = new ArrayList <Throwable>();
+		Thread threads [] = new Thread [nbOfThreads];
+
+		for (int t=0; t<nbOfThreads; t++)
+		{
+			final ArrayList <Request> requests = new ArrayList <Request>();
+			final Random rand = new Random(seed + t);
+			threadRequests.add(requests);
+
+			threads[t] = new Thread()
+			{
+				@Override
+				public void run ()
+				{
+					try
+					{
+						admitRequests(requests, requestsPerThread, rand, requestIds, nbOfAdmittedRequests);
+					}
+					catch (Throwable e)
+					{
+						synchronized (failures)
+						{
+							failures.add(e);
+						}
+					}
+				}
+			};
+		}
+
+		for (int t=0; t<nbOfThreads; t++)
+		{
+			threads[t].start();
+		}
+
+		for (int t=0; t<nbOfThreads; t++)
+		{
+			threads[t].join();
+		}
+
+		if (!failures.isEmpty())
+		{
+			throw new IllegalStateException("an admission thread failed", failures.get(0));
+		}
+
+		for (int t=0; t<nbOfThreads; t++)
+		{
+			for (int i=0; i<threadRequests.get(t).size(); i++)
+			{
+				this.admittedRequests.put(threadRequests.get(t).get(i).id, threadRequests.get(t).get(i));
+			}
+		}
+
+		return nbOfAdmittedRequests.get();
+	}
+
+
+	/**
+	 * This function is run by each admission thread: it places and protects the requests one after the other
+	 * and releases one of its admitted requests at random after some arrivals
+	 *
+	 * @param requests requests admitted by the thread and not released
+	 * @param nbRequests number of requests to generate
+	 * @param rand generator of the thread
+	 * @param requestIds ids shared by the threads
+	 * @param nbOfAdmittedRequests counter of the admitted requests shared by the threads
+	 * @throws IloException
+	 * @throws IOException
+	 */
+	void admitRequests (ArrayList <Request> requests, int nbRequests, Random rand, AtomicInteger requestIds, AtomicInteger nbOfAdmittedRequests) throws IloException, IOException
+	{
+		Request request;
+
+		for (int i=0; i<nbRequests; i++)
+		{
+			request = new Request(requestIds.getAndIncrement(), 2 + rand.nextInt(12), 20 + rand.nextInt(200));
+
+			//a placed request that can not be protected is released by protectRequestConcurrently
+			if (this.vmPlacement.hoseVMPlacementAlgorithmConcurrentRequest(request) != null
+					&& this.vmsProtection.protectRequestConcurrently(request, true))
+			{
+				requests.add(request);
+				nbOfAdmittedRequests.incrementAndGet();
+			}
+
+			if (!requests.isEmpty() && rand.nextInt(3) == 0)
+			{
+				this.treeNetwork.releaseAllocatedRequest(requests.remove(rand.nextInt(requests.size())), null);
+			}
+		}
+	}
+
+
+	/**
+	 * This function checks the ledger, the slots and the footprints of the network against the admitted requests.
+	 * It should be called once all the admission threads are done
+	 *
+	 * @return true if the network is consistent, otherwise the first inconsistency is kept in the inconsistency attribute
+	 */
+	public boolean check ()
+	{
+		this.inconsistency = null;
+
+		return this.checkLedger() && this.checkSlots() && this.checkFootprints();
+	}
+
+
+	/**
+	 * This function checks that the bandwidth used on each link is the sum of the bandwidth reserved on it
+	 * for admitted requests having the link in their footprint
+	 *
+	 * @return boolean
+	 */
+	boolean checkLedger ()
+	{
+		Link links [] = this.treeNetwork.getLinks();
+		ReservationTable table;
+		Request request;
+		int reservedBandwidth;
+
+		for (int i=0; i<links.length; i++)
+		{
+			table = links[i].bandwidthForRequests;
+			reservedBandwidth = 0;
+
+			for (int slot=0; slot<table.getSlotsNb(); slot++)
+			{
+				if (table.getKeyAt(slot) == ReservationTable.EMPTY)
+				{
+					continue;
+				}
+
+				request = this.admittedRequests.get(table.getKeyAt(slot));
+
+				if (request == null || !request.reservedLinks.contains(links[i]))
+				{
+					return this.fail("link "+links[i].continuousId+" holds bandwidth of request "+table.getKeyAt(slot)+" outside an admitted footprint");
+				}
+
+				reservedBandwidth += table.getPrimaryAt(slot) + table.getBackupAt(slot);
+			}
+
+			if (links[i].getBandwidth() < 0 || links[i].capacity - links[i].getBandwidth() != reservedBandwidth)
+			{
+				return this.fail("link "+links[i].continuousId+" residual bandwidth "+links[i].getBandwidth()+" reserved "+reservedBandwidth);
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * This function checks that the available VMs of the physical machines and switches match the free slots
+	 * and that the reserved slots belong to admitted requests having the physical machine in their footprint
+	 *
+	 * @return boolean
+	 */
+	boolean checkSlots ()
+	{
+		PhysicalMachine pm;
+		Request request;
+		Switch switches [];
+		ArrayList <PhysicalMachine> physicalMachines;
+		int freeSlots;
+
+		for (int i=0; i<this.treeNetwork.physicalMachinesSet.length; i++)
+		{
+			pm = this.treeNetwork.physicalMachinesSet[i];
+			freeSlots = 0;
+
+			for (int vm=0; vm<pm.nbOfVM; vm++)
+			{
+				if (pm.getSlotOwner(vm) == NetworkState.FREE_SLOT)
+				{
+					freeSlots++;
+					continue;
+				}
+
+				request = this.admittedRequests.get(pm.getSlotOwner(vm));
+
+				if (request == null || !request.reservedPhysicalMachines.contains(pm))
+				{
+					return this.fail("physical machine "+pm.id+" holds a VM of request "+pm.getSlotOwner(vm)+" outside an admitted footprint");
+				}
+			}
+
+			if (freeSlots != pm.getAvailableVM())
+			{
+				return this.fail("physical machine "+pm.id+" free slots "+freeSlots+" available VMs "+pm.getAvailableVM());
+			}
+		}
+
+		for (int level=1; level<=this.treeNetwork.height; level++)
+		{
+			switches = this.treeNetwork.getSwitchSetPerTreeLevel(level);
+
+			for (int i=0; i<switches.length; i++)
+			{
+				physicalMachines = this.treeNetwork.getSubTree(switches[i]).physicalMachines;
+				freeSlots = 0;
+
+				for (int j=0; j<physicalMachines.size(); j++)
+				{
+					freeSlots += physicalMachines.get(j).getAvailableVM();
+				}
+
+				if (freeSlots != switches[i].getAvailableVMs())
+				{
+					return this.fail("switch "+switches[i].id+" of level "+level+" free slots "+freeSlots+" available VMs "+switches[i].getAvailableVMs());
+				}
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * This function checks that each admitted request holds its primary VMs on the physical machines of its footprint
+	 * and has bandwidth reserved on the links of its footprint
+	 *
+	 * @return boolean
+	 */
+	boolean checkFootprints ()
+	{
+		int primaryVms;
+
+		for (Request request : this.admittedRequests.values())
+		{
+			primaryVms = 0;
+
+			for (int i=0; i<request.reservedPhysicalMachines.size(); i++)
+			{
+				primaryVms += request.reservedPhysicalMachines.get(i).getHostedVms(request);
+			}
+
+			if (primaryVms != request.N)
+			{
+				return this.fail("request "+request.id+" holds "+primaryVms+" primary VMs in its footprint instead of "+request.N);
+			}
+
+			for (int i=0; i<request.reservedLinks.size(); i++)
+			{
+				if (!request.reservedLinks.get(i).bandwidthForRequests.contains(request.id))
+				{
+					return this.fail("request "+request.id+" has link "+request.reservedLinks.get(i).continuousId+" in its footprint without reservation");
+				}
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * This function keeps the first inconsistency found
+	 *
+	 * @param inconsistency
+	 * @return false
+	 */
+	private boolean fail (String inconsistency)
+	{
+		this.inconsistency = inconsistency;
+
+		return false;
+	}
+
+
+	public static void main(String [] args) throws InterruptedException
+	{
+		int nbOfThreads [] = {1, 4};
+		FatTreeNetwork treeNetwork;
+		ConcurrentAdmissionCheck admissionCheck;
+		int nbOfAdmittedRequests;
+
+		for (int i=0; i<nbOfThreads.length; i++)
+		{
+			treeNetwork = new FatTreeNetwork(64, 6, 4, 4, 4, 1000, 3000, 6000);
+			treeNetwork.buildTreeNetwork();
+
+			admissionCheck = new ConcurrentAdmissionCheck(treeNetwork);
+			nbOfAdmittedRequests = admissionCheck.admit(nbOfThreads[i], 40, 1);
+
+			System.out.println(nbOfThreads[i]+" threads : "+nbOfAdmittedRequests+" admitted requests, "
+					+(admissionCheck.check() ? "consistent network" : "inconsistent network: "+admissionCheck.inconsistency));
+		}
+	}
+}
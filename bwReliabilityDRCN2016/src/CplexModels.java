@@ -25,8 +25,8 @@ import ilog.cplex.IloCplex;
 import java.util.ArrayList;
 
 import Network.FatTreeNetwork;
+import Network.Link;
 import Network.Request;
-import Network.Switch;
 
 
 public class CplexModels {
@@ -55,13 +55,14 @@ public class CplexModels {
 	 */
 	public double model() throws IloException
 	{
-		int torswitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-		int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-		int aggCoreswitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
+		int torswitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
 		int P = this.treeNetwork.nbOfPhysicalMachines;
 		int T = this.requests.size();
 		
-		int V = P+torswitchesNb + aggCoreswitchesNb;
+		int V = this.treeNetwork.getNbOfNodes();
+		
+		//number of switches above the TOR switches (aggregate and core switches of all the levels)
+		int aggCoreswitchesNb = V-P-torswitchesNb; 
 		int Up = this.treeNetwork.nbOfVMPerPhysicalMachine;
 		
 		ArrayList<int[][]> zc = this.populatingInputs();
@@ -316,70 +317,26 @@ public class CplexModels {
 	{
 		ArrayList<int[][]> zc= new ArrayList<int[][]>();
 		
-		int torswitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-		int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-		int aggCoreswitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-		int P = this.treeNetwork.nbOfPhysicalMachines;
-		int V = P+torswitchesNb + aggCoreswitchesNb;
+		int V = this.treeNetwork.getNbOfNodes();
 						
 		int [][] zij = new int [V][V]; 
 		int [][] Cij = new int [V][V];
-		int count =0;
-		
-		//Working on links between TOR and physical servers
-		//looping over TOR switches 
-		for (int i=P; i<(P+torswitchesNb); i++)
-		{			
-			for(int j=0; j<treeNetwork.nbOfPhysicalMachinesPerTor; j++)
-			{
-				//setting physical server count is under TOR switch i 
-				zij[i][count] = 1;
-				
-				//setting link capacity between TOR i and physical server count
-				Cij[i][count] = treeNetwork.pmToTorLinkCapacity;
-				
-				//will hold the total number of physical machines
-				count++;
-			}		
-			
-		}
-		
 		
+		Link [] networkLinks = this.treeNetwork.getLinks();
+		int sourceIndex;
+		int destinationIndex;
 		
-		//Working on links between Aggregate switches and TOR
-		//looping over aggregate switches
-		for (int i=P+torswitchesNb; i<(V-coreSwitchesNb); i++)
-		{			
-			for(int j=0; j<treeNetwork.nbOfTorPerAgg; j++)
-			{
-				//setting TOR switch 'count' is under Aggregate switch i 
-				zij[i][count] = 1;
-				
-				//setting link capacity between Aggregate i and TOR switch count
-				Cij[i][count] = treeNetwork.torToAggregateLinkCapacity;
-				
-				//will hold the total number of TOR
-				count++;
-			}		
+		//Working on the links between each node (physical server or switch) and its parent switch, level by level
+		for (int i=0; i<networkLinks.length; i++)
+		{
+			sourceIndex = this.treeNetwork.getNodeIndex(networkLinks[i].sourceNode);
+			destinationIndex = this.treeNetwork.getNodeIndex(networkLinks[i].destinationNode);
 			
-		}
-		
-		//Working on links between Core switches and Aggregate switches 
-		//looping over core switches
-		for (int i=V-coreSwitchesNb; i<V ; i++)
-		{			
-			for(int j=0; j<treeNetwork.nbOfAggPerCore; j++)
-			{
-				//setting Aggregate switch count is under Core switch i 
-				zij[i][count] = 1;
-				
-				//setting link capacity between core switch i and aggregate switch count
-				Cij[i][count] = treeNetwork.aggregateToCoreLinkCapacity;
-				
-				//will hold the total number of aggregate switch
-				count++;
-			}		
+			//setting node sourceIndex is under switch destinationIndex
+			zij[destinationIndex][sourceIndex] = 1;
 			
+			//setting link capacity between switch destinationIndex and node sourceIndex
+			Cij[destinationIndex][sourceIndex] = networkLinks[i].capacity;
 		}
 		
 		zc.add(zij);
@@ -0,0 +1,172 @@
+package ExperimentalCalculations;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Network.FatTreeNetwork;
+import Network.Link;
+import Network.PhysicalMachine;
+
+/**
+ * This class measures the throughput of the lock-free link bandwidth ledger when several threads
+ * reserve bandwidth on PM->TOR->Aggregate->Core paths at the same time (all or nothing) and give it back.
+ *
+ * Two scenarios are run for an increasing number of threads:
+ * - spread: each thread picks random physical machines of the whole network
+ * - hot: all the threads use physical machines of the same pod (switch below the core) so they compete on the same upper links
+ *
+ * @author Hyame
+ *
+ */
+public class LinkLedgerBenchmark {
+
+	//duration of each measure in milliseconds
+	private static final long MEASURE_DURATION = 1000;
+
+	//network shared by the threads
+	public FatTreeNetwork treeNetwork;
+
+	//bandwidth reserved on each link of a path
+	public int bandwidth;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param treeNetwork built network
+	 * @param bandwidth bandwidth reserved on each link of a path
+	 */
+	public LinkLedgerBenchmark (FatTreeNetwork treeNetwork, int bandwidth)
+	{
+		this.treeNetwork = treeNetwork;
+		this.bandwidth = bandwidth;
+	}
+
+
+	/**
+	 * This function runs the threads for MEASURE_DURATION and returns the number of path reservations per second
+	 *
+	 * @param nbOfThreads
+	 * @param hot true if all the threads use the physical machines of the first pod
+	 * @return long [] {reserved paths per second, rejected paths per second}
+	 * @throws InterruptedException
+	 */
+	public long [] measure (int nbOfThreads, final boolean hot) throws InterruptedException
+	{
+		final AtomicLong reservedPaths = new AtomicLong();
+		final AtomicLong rejectedPaths = new AtomicLong();
+		final long endTime = System.currentTimeMillis() + MEASURE_DURATION;
+		final int nbOfPhysicalMachines = hot ? this.treeNetwork.getSwitchSetPerTreeLevel(this.treeNetwork.getPodLevel())[0].lastPm + 1 : this.treeNetwork.nbOfPhysicalMachines;
+		Thread threads [] = new Thread [nbOfThreads];
+		long results [] = new long [2];
+
+		for (int i=0; i<nbOfThreads; i++)
+		{
+			final int seed = i;
+
+			threads[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					Random random = new Random(seed);
+					int amounts [] = new int [treeNetwork.height];
+					PhysicalMachine pm;
+					Link path [];
+					long reserved = 0;
+					long rejected = 0;
+
+					for (int j=0; j<amounts.length; j++)
+					{
+						amounts[j] = bandwidth;
+					}
+
+					while (System.currentTimeMillis() < endTime)
+					{
+						//loop without reading the clock at each reservation
+						for (int k=0; k<1000; k++)
+						{
+							pm = treeNetwork.physicalMachinesSet[random.nextInt(nbOfPhysicalMachines)];
+							path = treeNetwork.getUpPath(pm, treeNetwork.height);
+
+							if (!Link.tryReservePath(path, amounts))
+							{
+								rejected++;
+								continue;
+							}
+
+							reserved++;
+
+							for (int j=0; j<path.length; j++)
+							{
+								path[j].returnBandwidth(amounts[j]);
+							}
+						}
+					}
+
+					reservedPaths.addAndGet(reserved);
+					rejectedPaths.addAndGet(rejected);
+				}
+			};
+		}
+
+		for (int i=0; i<nbOfThreads; i++)
+		{
+			threads[i].start();
+		}
+
+		for (int i=0; i<nbOfThreads; i++)
+		{
+			threads[i].join();
+		}
+
+		results[0] = reservedPaths.get()*1000/MEASURE_DURATION;
+		results[1] = rejectedPaths.get()*1000/MEASURE_DURATION;
+
+		return results;
+	}
+
+
+	/**
+	 * This function checks that all the bandwidth was given back to the links
+	 *
+	 * @return true if the residual bandwidth of each link is equal to its capacity
+	 */
+	public boolean isLedgerBalanced ()
+	{
+		Link links [] = this.treeNetwork.getLinks();
+
+		for (int i=0; i<links.length; i++)
+		{
+			if (links[i].getBandwidth() != links[i].capacity)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	public static void main(String [] args) throws InterruptedException
+	{
+		FatTreeNetwork treeNetwork = new FatTreeNetwork(4096, 8, 16, 16, 16, 1000, 10000, 40000);
+		LinkLedgerBenchmark benchmark;
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		long results [];
+
+		treeNetwork.buildTreeNetwork();
+
+		benchmark = new LinkLedgerBenchmark(treeNetwork, 500);
+
+		for (int nbOfThreads = 1; nbOfThreads <= maxThreads; nbOfThreads*=2)
+		{
+			results = benchmark.measure(nbOfThreads, false);
+			System.out.println("spread - threads "+nbOfThreads+" : "+results[0]+" paths/s reserved, "+results[1]+" paths/s rejected");
+
+			results = benchmark.measure(nbOfThreads, true);
+			System.out.println("hot    - threads "+nbOfThreads+" : "+results[0]+" paths/s reserved, "+results[1]+" paths/s rejected");
+		}
+
+		System.out.println("ledger balanced : "+benchmark.isLedgerBalanced());
+	}
+}
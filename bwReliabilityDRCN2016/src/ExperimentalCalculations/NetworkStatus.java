@@ -120,22 +120,10 @@ public class NetworkStatus {
 	public int calculateTotalReservedBandwidth ()
 	{
 		int reservedBw = 0;
-		int[] bandwidth = new int [3];
-		Request request = null;
 		
 		for (int i =0; i<this.requests.size(); i++)
 		{	
-			request = this.requests.get(i);
-		
-			for (int j=0; j< request.reservedBandwidth.size(); j++)
-			{
-				bandwidth = request.reservedBandwidth.get(j);	
-				reservedBw+= bandwidth[1]+bandwidth[2];
-				
-				bandwidth = null;
-				bandwidth = new int[3];
-			}
-		
+			reservedBw+= this.requests.get(i).getTotalReservedBandwidth();
 		}
 		return reservedBw;
 	}
@@ -295,7 +283,6 @@ public class NetworkStatus {
 		
 		Request r = null;
 		int reservedBw = 0;
-		int[] bandwidth = new int [3];
 		ArrayList<int[]> requestsBw = new ArrayList<int[]>();
 		int [] requestConsumption = null;
 	
@@ -319,13 +306,8 @@ public class NetworkStatus {
 				continue;
 			}
 					
-			for (int j=0; j< r.reservedBandwidth.size(); j++)
-			{
-				bandwidth = r.reservedBandwidth.get(j);	
-				reservedBw+= bandwidth[1]+bandwidth[2];				
-				bandwidth = null;
-				bandwidth = new int[3];
-			}
+			reservedBw = r.getTotalReservedBandwidth();
+			
 			requestConsumption [0] = +r.id;
 			requestConsumption [1] = reservedBw/r.B;
 			requestConsumption [2] = r.reservedBackupVms;
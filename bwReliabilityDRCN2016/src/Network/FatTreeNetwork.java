@@ -1,6 +1,8 @@
 package Network;
 import java.nio.file.LinkOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import Network.Link.BandwidthType;
 import Network.VirtualMachine.Type;
@@ -15,35 +17,24 @@ import Network.VirtualMachine.Type;
  */
 public class FatTreeNetwork {
 	
-	public static final int HEIGHT = 3;
-	
 	/***********************************************
 	 * basic information needed to define the tree
 	 ***********************************************/
 	
+	//height of the tree: the physical machines are at level 0, the TOR switches at level 1 and the core switches at level height
+	public int height;
+	
 	//number of physical machines in the network
 	public int nbOfPhysicalMachines;
 	
 	//number of virtual machines per each physical machine
 	public int nbOfVMPerPhysicalMachine;
 	
-	//number of physical machines per each TOR switch
-	public int nbOfPhysicalMachinesPerTor;
-	
-	//number of TOR switches per aggregate switch
-	public int nbOfTorPerAgg;
-	
-	//number of aggregate switches per each core switch
-	public int nbOfAggPerCore;
-	
-	//capacity of links between physical machines and TOR switches
-	public int pmToTorLinkCapacity;
+	//number of children (physical machines or switches) of each switch indexed by the switch level (1 to height)
+	public int nbOfChildrenPerLevel [];
 	
-	//capacity of links between TOR and aggregate switches
-	public int torToAggregateLinkCapacity;
-	
-	//capacity of link between aggregate and core switches
-	public int aggregateToCoreLinkCapacity;
+	//capacity of the links indexed by the level of their destination switch (1 to height)
+	public int linkCapacityPerLevel [];
 	
 	/***********************************************
 	 * Defining tree network elements
@@ -52,27 +43,47 @@ public class FatTreeNetwork {
 	//set of physical machines of the network
 	public PhysicalMachine physicalMachinesSet [];
 	
-	//set of TOR switches
-	public Switch torSwitchSet [];
+	//switches indexed by [switch level][switch id] (level 1 to height)
+	public Switch switchSetPerLevel [][];
 	
-	//set of aggregate switches
-	public Switch aggregateSwitchSet[];
+	//links indexed by [destination switch level][link id] (level 1 to height)
+	public Link linkSetPerLevel [][];
 	
-	//set of core switches
-	public Switch coreSwitchSet[];
+	//reservation state of the network (links residual bandwidth and VMs owner/type) kept in primitive arrays
+	public NetworkState state;
 	
-	//set of links between TOR switches and physical machines
-	public Link pmToTorLinkSet[];
+	//index of the first node of each level when all the nodes are numbered level by level (physical machines first), used by the models
+	private int firstNodeIndex [];
 	
-	//set of links between aggregate switches and TOR switches
-	public Link torToAggregateLinkSet[];
+	/***********************************************
+	 * Topology index built with the network
+	 ***********************************************/
 	
-	//set of switches between core switch and aggregate switches
-	public Link aggregateToCoreLinkset [];
+	//link having the node as source indexed by [node level][node id]
+	public Link uplinkIndex [][];
+	
+	//links having the switch as destination indexed by [switch level][switch id]
+	public Link childLinksIndex [][][];
+	
+	//all the links of the network indexed by their continuous id
+	public Link linksByContinuousId [];
+	
+	/*
+	 * sub tree having the switch as root indexed by [switch level][switch id] (the physical machines level is null).
+	 * The sub trees are built once with the network and shared by all the queries, 
+	 * they should not be modified (the reservation state is kept in the physical machines and links)
+	 */
+	public SubTree subTreesIndex [][];
+	
+	//locks of the pods when the requests are admitted concurrently (null if the network is used by a single thread)
+	public PodLocks podLocks;
+	
+	//sub trees of each level ordered by the residual bandwidth of their upper link, updated when the bandwidth of a link changes
+	public UplinkBandwidthIndex bandwidthIndex;
 	
 	
 	/**
-	 * Constructor
+	 * Constructor of a 3 levels fat tree (physical machines, TOR, aggregate and core switches)
 	 * 
 	 * 
 	 * @param nbOfPhysicalMachines
@@ -88,15 +99,35 @@ public class FatTreeNetwork {
 	public FatTreeNetwork( int nbOfPhysicalMachines, int nbOfVMPerPhysicalMachine, int nbOfPhysicalMachinesPerTor,
 			int nbOfTorPerAgg, int nbOfAggPerCore, int pmToTorLinkCapacity, int torToAggregateLinkCapacity, int aggregateToCoreLinkCapacity )
 	{		
+		this(nbOfPhysicalMachines, nbOfVMPerPhysicalMachine, new int [] {nbOfPhysicalMachinesPerTor, nbOfTorPerAgg, nbOfAggPerCore}, 
+				new int [] {pmToTorLinkCapacity, torToAggregateLinkCapacity, aggregateToCoreLinkCapacity});
+	}
+	
+	
+	/**
+	 * Constructor of a fat tree of any height, the height is the length of the arrays
+	 * 
+	 * @param nbOfPhysicalMachines
+	 * @param nbOfVMPerPhysicalMachine
+	 * @param nbOfChildrenPerSwitch number of children of the switches of each level, starting with the physical machines per TOR switch
+	 * @param linkCapacity capacity of the links of each level, starting with the links between the physical machines and the TOR switches
+	 */
+	public FatTreeNetwork (int nbOfPhysicalMachines, int nbOfVMPerPhysicalMachine, int nbOfChildrenPerSwitch [], int linkCapacity [])
+	{
+		if (nbOfChildrenPerSwitch.length == 0 || nbOfChildrenPerSwitch.length != linkCapacity.length)
+		{
+			throw new IllegalArgumentException("the number of children and the links capacity should be given for each level");
+		}
+		
+		this.height = nbOfChildrenPerSwitch.length;
 		this.nbOfPhysicalMachines = nbOfPhysicalMachines;
 		this.nbOfVMPerPhysicalMachine = nbOfVMPerPhysicalMachine;
-		this.nbOfPhysicalMachinesPerTor = nbOfPhysicalMachinesPerTor;
-		this.nbOfTorPerAgg = nbOfTorPerAgg;
-		this.nbOfAggPerCore = nbOfAggPerCore;
-		this.pmToTorLinkCapacity = pmToTorLinkCapacity;
-		this.torToAggregateLinkCapacity = torToAggregateLinkCapacity;
-		this.aggregateToCoreLinkCapacity = aggregateToCoreLinkCapacity;
-	
+		this.nbOfChildrenPerLevel = new int [this.height+1];
+		this.linkCapacityPerLevel = new int [this.height+1];
+		
+		//the arrays are indexed by level (there are no switches or links at level 0)
+		System.arraycopy(nbOfChildrenPerSwitch, 0, this.nbOfChildrenPerLevel, 1, this.height);
+		System.arraycopy(linkCapacity, 0, this.linkCapacityPerLevel, 1, this.height);
 	}
 	
 	
@@ -110,7 +141,7 @@ public class FatTreeNetwork {
 		
 		for (int i=0; i<this.nbOfPhysicalMachines; i++)
 		{
-			PhysicalMachine physicalMachine = new PhysicalMachine (i,this.nbOfVMPerPhysicalMachine);
+			PhysicalMachine physicalMachine = new PhysicalMachine (i,this.nbOfVMPerPhysicalMachine, this.state, i*this.nbOfVMPerPhysicalMachine);
 			this.physicalMachinesSet[i] = physicalMachine;
 			
 		}
@@ -119,27 +150,19 @@ public class FatTreeNetwork {
 	
 	
 	/**
-	 * This function returns the number of switches based on switch type
+	 * This function returns the number of switches of a level
 	 * 
-	 * @param switchType switch type can have the following values: 
-	 * 		TOR_TYPE, AGGREGATE_TYPE, CORE_TYPE
+	 * @param level level of the switches (1 for TOR switches to height for core switches)
 	 * 
 	 * @return int number of switches 
 	 */
-	public int getNbOfSwitchPerType (String switchType)
+	public int getNbOfSwitchesPerLevel (int level)
 	{		
-		int nbOfSwitches = 0;
+		int nbOfSwitches = this.nbOfPhysicalMachines;
 		
-		switch (switchType) {
-			case Switch.TOR_TYPE:
-				nbOfSwitches = this.nbOfPhysicalMachines/this.nbOfPhysicalMachinesPerTor;
-				break;
-			case Switch.AGGREGATE_TYPE:
-				nbOfSwitches = this.nbOfPhysicalMachines/this.nbOfPhysicalMachinesPerTor/this.nbOfTorPerAgg;				
-				break;
-			case Switch.CORE_TYPE:
-				nbOfSwitches = this.nbOfPhysicalMachines/this.nbOfPhysicalMachinesPerTor/this.nbOfTorPerAgg/this.nbOfAggPerCore;
-				break;		
+		for (int i=1; i<=level; i++)
+		{
+			nbOfSwitches = nbOfSwitches/this.nbOfChildrenPerLevel[i];
 		}
 		
 		return nbOfSwitches;
@@ -147,24 +170,23 @@ public class FatTreeNetwork {
 	
 	
 	/**
-	 * This function generates the switches based on the switchType parameter
+	 * This function generates the switches of a level
 	 * 
-	 * @param switchType switch type can have the following values: 
-	 * 		TOR_TYPE, AGGREGATE_TYPE, CORE_TYPE
+	 * @param level level of the switches (1 for TOR switches to height for core switches)
 	 * 
 	 * @return switchSet array of switches
 	 */
-	public Switch[] generateSwitchesbyType (String switchType)
+	public Switch[] generateSwitchesPerLevel (int level)
 	{		
-		//get the number of switches based on the switch type
-		int nbOfSwitches = this.getNbOfSwitchPerType(switchType);
+		//get the number of switches of the level
+		int nbOfSwitches = this.getNbOfSwitchesPerLevel(level);
 		
 		//define the switches array
 		Switch switchSet[] = new Switch[nbOfSwitches];
 		
 		for (int i=0; i<nbOfSwitches; i++)
 		{			
-			Switch s = new Switch (i,switchType);
+			Switch s = new Switch (i, Switch.getTypePerLevel(level, this.height), level);
 			switchSet[i] = s;			
 		}
 		
@@ -174,48 +196,35 @@ public class FatTreeNetwork {
 	
 	
 	/**
-	 * This function returns the number of links based on link type
+	 * This function returns the number of links having a switch of the specified level as destination
 	 * 
-	 * @param linkType link type can have the following values: 
-	 * 		TOR_TO_MACHINE_TYPE, AGGREGATE_TO_TOR_TYPE, CORE_TO_AGGREATE_TYPE
+	 * @param level level of the destination switches
 	 * 
 	 * @return int number of links 
 	 */
-	public int getNbOfLinksPerType (String linkType)
+	public int getNbOfLinksPerLevel (int level)
 	{		
-		int nbOfLinks = 0;
-		
-		switch (linkType) 
+		//each node of the level below has one link to its parent
+		if (level == 1)
 		{
-			case Link.MACHINE_TO_TOR_TYPE:
-				nbOfLinks = this.nbOfPhysicalMachines;
-				break;
-			case Link.TOR_TO_AGGREGATE_TYPE:
-				//number of links between the aggregate switches and the TOR is equal to the number of TOR switches
-				nbOfLinks = this.getNbOfSwitchPerType(Switch.TOR_TYPE);
-				break;
-			case Link.AGGREATE_TO_CORE_TYPE:
-				//number of links between the core switches and the aggregate switches is equal to the number of aggregate switches
-				nbOfLinks = this.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE);
-				break;
+			return this.nbOfPhysicalMachines;
 		}
-			
-		return nbOfLinks;
+		
+		return this.getNbOfSwitchesPerLevel(level-1);
 	}
 	
 	
 	/**
-	 * This function will generate the set of links of the network
+	 * This function will generate the set of links having a switch of the specified level as destination
 	 * 
-	 * @param linkType specified the link type which we want to generate
-	 *  can have the following values: MACHINE_TO_TOR_TYPE, TOR_TO_AGGREGATE_TYPE, AGGREATE_TO_CORE_TYPE
+	 * @param level level of the destination switches
 	 *  
-	 * @return linksSet an array of the network links for a certain type
+	 * @return linksSet an array of the network links for a certain level
 	 */
-	public Link [] generateLinksPerType (String linkType)
+	public Link [] generateLinksPerLevel (int level)
 	{
-		//get the number of links based on the link type
-		int nbOfLinks = this.getNbOfLinksPerType(linkType);
+		//get the number of links of the level
+		int nbOfLinks = this.getNbOfLinksPerLevel(level);
 		
 		//define the links array
 		Link linksSet [] = new Link [nbOfLinks];
@@ -224,50 +233,29 @@ public class FatTreeNetwork {
 		 * determines the number of links with the same destination node in order
 		 * to know at how many iterations to change the destination node
 		 */
-		int nbOflinksWithSameDestinationNode = 1;
+		int nbOflinksWithSameDestinationNode = this.nbOfChildrenPerLevel[level];
 		
 		//defines the link capacity
-		int capacity = 0;
+		int capacity = this.linkCapacityPerLevel[level];
+		
+		//link type of the level
+		String linkType = Link.getTypePerLevel(level, this.height);
 		
-		//this specifies the link id where to start 
+		//this specifies the link id where to start (the links of the lower levels are numbered first)
 		int continiousIdStart = 0;
 		
 		//determines the nodes set to use as source and destination nodes
-		Node destinationNodesSet [] = null;
-		Node sourceNodesSet[] = null;
+		Node destinationNodesSet [] = this.switchSetPerLevel[level];
+		Node sourceNodesSet[] = level == 1 ? this.physicalMachinesSet : this.switchSetPerLevel[level-1];
 		
 		//defines destination node
 		Node destinationNode = new Node();
 		
 		int count = 0;
 		
-		/******************************************
-		 * Setting the variables based on linkType
-		 ******************************************/
-		
-		switch (linkType)
-		{		
-			case Link.MACHINE_TO_TOR_TYPE:
-				nbOflinksWithSameDestinationNode = this.nbOfPhysicalMachinesPerTor;
-				destinationNodesSet = this.torSwitchSet;
-				sourceNodesSet =  this.physicalMachinesSet;
-				capacity = this.pmToTorLinkCapacity; 
-				continiousIdStart = 0;
-				break;
-			case Link.TOR_TO_AGGREGATE_TYPE:			
-				nbOflinksWithSameDestinationNode = this.nbOfTorPerAgg;
-				destinationNodesSet = this.aggregateSwitchSet;
-				sourceNodesSet =  this.torSwitchSet;
-				capacity = this.torToAggregateLinkCapacity; 
-				continiousIdStart = this.getNbOfLinksPerType(Link.MACHINE_TO_TOR_TYPE);
-				break;
-			case Link.AGGREATE_TO_CORE_TYPE:
-				nbOflinksWithSameDestinationNode = this.nbOfAggPerCore;
-				destinationNodesSet = this.coreSwitchSet;
-				sourceNodesSet =  this.aggregateSwitchSet;
-				capacity = this.aggregateToCoreLinkCapacity;
-				continiousIdStart = this.getNbOfLinksPerType(Link.MACHINE_TO_TOR_TYPE)+this.getNbOfLinksPerType(Link.TOR_TO_AGGREGATE_TYPE);
-				break;
+		for (int i=1; i<level; i++)
+		{
+			continiousIdStart += this.getNbOfLinksPerLevel(i);
 		}
 		
 		
@@ -283,7 +271,7 @@ public class FatTreeNetwork {
 				count++;
 			}
 			
-			Link link = new Link(i,continiousIdStart+i, sourceNodesSet[i], destinationNode,capacity,linkType );
+			Link link = new Link(i,continiousIdStart+i, sourceNodesSet[i], destinationNode,capacity,linkType, this.state);
 			linksSet[i] = link;
 			
 		}
@@ -299,33 +287,31 @@ public class FatTreeNetwork {
 	
 	
 	/**
-	 * This function returns an array of all the links in the network.
+	 * This function returns an array of all the links in the network ordered by level.
 	 * This is useful for the models
 	 * 
 	 * @return list of links in the network
 	 */
 	public Link[] getLinks ()
 	{
-		int totalLinksNb = this.pmToTorLinkSet.length + this.torToAggregateLinkSet.length + this.aggregateToCoreLinkset.length;
-		Link [] links =  new Link [totalLinksNb];
+		int totalLinksNb = 0;
+		Link [] links;
 		int count = 0;
 		
-		for (int i = 0; i<this.pmToTorLinkSet.length; i++)
+		for (int level = 1; level<=this.height; level++)
 		{
-			links[count] = this.pmToTorLinkSet[i];
-			count++;
+			totalLinksNb += this.linkSetPerLevel[level].length;
 		}
 		
-		for (int i = 0; i<this.torToAggregateLinkSet.length; i++)
-		{
-			links[count] = this.torToAggregateLinkSet[i];
-			count++;
-		}
+		links =  new Link [totalLinksNb];
 		
-		for (int i = 0; i<this.aggregateToCoreLinkset.length; i++)
+		for (int level = 1; level<=this.height; level++)
 		{
-			links[count] = this.aggregateToCoreLinkset[i];
-			count++;
+			for (int i = 0; i<this.linkSetPerLevel[level].length; i++)
+			{
+				links[count] = this.linkSetPerLevel[level][i];
+				count++;
+			}
 		}
 		
 		return links;
@@ -334,24 +320,245 @@ public class FatTreeNetwork {
 	/**
 	 * This function generate the tree network by generating and creating the 
 	 * 1- Physical machines
-	 * 2- Switches
-	 * 3- Links
+	 * 2- Switches of each level
+	 * 3- Links of each level
 	 */
 	public void buildTreeNetwork ()
 	{
+		int nbOfLinks = 0;
+		
+		for (int level = 1; level<=this.height; level++)
+		{
+			nbOfLinks += this.getNbOfLinksPerLevel(level);
+		}
+		
+		//create the state holding the links bandwidth and the VMs reservations
+		this.state = new NetworkState(nbOfLinks, this.nbOfPhysicalMachines*this.nbOfVMPerPhysicalMachine);
+		
 		//generate the physical machines
 		this.generatePhysicalMachines();
 		
-		//generate the switches
-		this.torSwitchSet = this.generateSwitchesbyType(Switch.TOR_TYPE);
-		this.aggregateSwitchSet = this.generateSwitchesbyType(Switch.AGGREGATE_TYPE);
-		this.coreSwitchSet = this.generateSwitchesbyType(Switch.CORE_TYPE);
+		//generate the switches and the links having them as destination, level by level
+		this.switchSetPerLevel = new Switch [this.height+1][];
+		this.linkSetPerLevel = new Link [this.height+1][];
+		this.firstNodeIndex = new int [this.height+1];
+		
+		for (int level = 1; level<=this.height; level++)
+		{
+			this.switchSetPerLevel[level] = this.generateSwitchesPerLevel(level);
+			this.linkSetPerLevel[level] = this.generateLinksPerLevel(level);
+			this.firstNodeIndex[level] = this.firstNodeIndex[level-1] + this.linkSetPerLevel[level].length;
+		}
+		
+		//index the links by source node, destination switch and continuous id
+		this.buildTopologyIndex();
 		
-		//generate the links
-		this.pmToTorLinkSet = this.generateLinksPerType(Link.MACHINE_TO_TOR_TYPE);
-		this.torToAggregateLinkSet = this.generateLinksPerType(Link.TOR_TO_AGGREGATE_TYPE);
-		this.aggregateToCoreLinkset = this.generateLinksPerType(Link.AGGREATE_TO_CORE_TYPE);
+		//build the sub tree of each node
+		this.buildSubTreesIndex();
 		
+		//order the sub trees of each level by the residual bandwidth of their upper link
+		this.bandwidthIndex = new UplinkBandwidthIndex(this);
+		this.state.setBandwidthIndex(this.bandwidthIndex);
+	}
+	
+	
+	/**
+	 * @return number of nodes (physical machines and switches) of the network
+	 */
+	public int getNbOfNodes ()
+	{
+		return this.firstNodeIndex[this.height] + this.switchSetPerLevel[this.height].length;
+	}
+	
+	
+	/**
+	 * This function returns the index of the node when all the nodes are numbered level by level: 
+	 * the physical machines first, then the TOR switches and so on up to the core switches (as done by the models)
+	 * 
+	 * @param node physical machine or switch
+	 * 
+	 * @return index of the node
+	 */
+	public int getNodeIndex (Node node)
+	{
+		return this.firstNodeIndex[node.level] + node.id;
+	}
+	
+	
+	/**
+	 * This function builds the topology index of the network so that the uplink of a node, 
+	 * the child links of a switch and a link with a given continuous id are found without scanning the link sets.
+	 * The topology does not change after the network is built so the index is computed only once
+	 */
+	public void buildTopologyIndex ()
+	{
+		Link [] links = this.getLinks();
+		Link [] linksPerLevel;
+		Switch [] switchSet;
+		Link l;
+		int [] nbOfChildLinks;
+		
+		this.linksByContinuousId = new Link [links.length];
+		this.uplinkIndex = new Link [this.height][];
+		this.childLinksIndex = new Link [this.height+1][][];
+		
+		for (int i=0; i<links.length; i++)
+		{
+			this.linksByContinuousId[links[i].continuousId] = links[i];
+		}
+		
+		//the links at level (level+1) have the nodes of level (level) as source and the switches of level (level+1) as destination
+		for (int level = 0; level<this.height; level++)
+		{
+			linksPerLevel = this.getLinksSetPerTreeLevel(level+1);
+			switchSet = this.getSwitchSetPerTreeLevel(level+1);
+			nbOfChildLinks = new int [switchSet.length];
+			
+			this.uplinkIndex[level] = new Link [linksPerLevel.length];
+			this.childLinksIndex[level+1] = new Link [switchSet.length][];
+			
+			//count the children of each switch
+			for (int j=0; j<linksPerLevel.length; j++)
+			{
+				nbOfChildLinks[linksPerLevel[j].destinationNode.id]++;
+			}
+			
+			for (int j=0; j<switchSet.length; j++)
+			{
+				this.childLinksIndex[level+1][j] = new Link [nbOfChildLinks[j]];
+				nbOfChildLinks[j] = 0;
+			}
+			
+			//keep the child links in the same order as the link set
+			for (int j=0; j<linksPerLevel.length; j++)
+			{
+				l = linksPerLevel[j];
+				this.uplinkIndex[level][l.sourceNode.id] = l;
+				this.childLinksIndex[level+1][l.destinationNode.id][nbOfChildLinks[l.destinationNode.id]] = l;
+				nbOfChildLinks[l.destinationNode.id]++;
+				
+				l.sourceNode.parent = (Switch)l.destinationNode;
+			}
+			
+			for (int j=0; j<switchSet.length; j++)
+			{
+				switchSet[j].childLinks = this.childLinksIndex[level+1][j];
+				
+				//the ranges of the lower level switches are already computed
+				switchSet[j].computePhysicalMachinesRange();
+			}
+		}
+		
+		this.refreshSwitchesSummaries();
+		
+		//empty memory
+		links = null;
+		linksPerLevel = null;
+		switchSet = null;
+	}
+	
+	
+	/**
+	 * This function builds the sub tree having each switch as root.
+	 * The sub trees of the physical machines are not kept (the index of their level is null), see getSubTree
+	 */
+	public void buildSubTreesIndex ()
+	{
+		Switch [] switchSet;
+		
+		this.subTreesIndex = new SubTree [this.height+1][];
+		
+		for (int level = 1; level<=this.height; level++)
+		{
+			switchSet = this.getSwitchSetPerTreeLevel(level);
+			this.subTreesIndex[level] = new SubTree [switchSet.length];
+			
+			for (int j=0; j<switchSet.length; j++)
+			{
+				this.subTreesIndex[level][switchSet[j].id] = this.buildSubTree(new SubTree(switchSet[j]), switchSet[j]);
+			}
+		}
+		
+		switchSet = null;
+	}
+	
+	
+	/**
+	 * This function returns the shared sub tree having the specified node as root
+	 * 
+	 * @param rootNode physical machine or switch
+	 * 
+	 * @return sub tree, it should not be modified
+	 */
+	public SubTree getSubTree (Node rootNode)
+	{
+		//the sub tree of a physical machine only holds its root node (same as the child trees of a TOR switch), it is built on demand
+		if (rootNode.level == PhysicalMachine.MACHINE_LEVEL)
+		{
+			return new SubTree(rootNode);
+		}
+		
+		return this.subTreesIndex[rootNode.level][rootNode.id];
+	}
+	
+	
+	/**
+	 * This function recomputes the available VMs and maximum server bandwidth summaries of all the switches
+	 * from the lowest level to the highest one, and the bandwidth index from them. 
+	 * These summaries are then kept up to date on each reserve/release
+	 */
+	public void refreshSwitchesSummaries ()
+	{
+		Switch [] switchSet;
+		
+		for (int level = 1; level<=this.height; level++)
+		{
+			switchSet = this.getSwitchSetPerTreeLevel(level);
+			
+			for (int j=0; j<switchSet.length; j++)
+			{
+				switchSet[j].refreshSummaries();
+			}
+		}
+		
+		//the bandwidth index is only built at the end of buildTreeNetwork
+		if (this.bandwidthIndex != null)
+		{
+			this.bandwidthIndex.rebuild();
+		}
+		
+		switchSet = null;
+	}
+	
+	
+	/**
+	 * This function returns the links having the specified switch as destination node
+	 * 
+	 * @param switchNode 
+	 * 
+	 * @return child links of the switch, empty array if the node has no children
+	 */
+	public Link [] getChildLinks (Node switchNode)
+	{
+		if (switchNode.level < 1 || switchNode.level > this.height)
+		{
+			return new Link[0];
+		}
+		
+		return this.childLinksIndex[switchNode.level][switchNode.id];
+	}
+	
+	
+	/**
+	 * This function returns the link based on its continuous id
+	 * 
+	 * @param continuousId 
+	 * 
+	 * @return link
+	 */
+	public Link getLinkByContinuousId (int continuousId)
+	{
+		return this.linksByContinuousId[continuousId];
 	}
 	
 	
@@ -359,28 +566,16 @@ public class FatTreeNetwork {
 	 * This functions returns the switch set based on tree level
 	 * 
 	 * @param treeLevel the level of the tree we want to get the switch set for
+	 * @return switches of the level, empty array if there is no switch at this level
 	 */
 	public Switch [] getSwitchSetPerTreeLevel (int treelevel)
 	{
-		Switch switchSet [];
-		
-		switch (treelevel)
-		{		
-			case 1:
-				switchSet = this.torSwitchSet;
-				break;
-			case 2:			
-				switchSet = this.aggregateSwitchSet;
-				break;
-			case 3:
-				switchSet = this.coreSwitchSet;
-				break;
-			default:
-				switchSet= this.torSwitchSet;
-				break;
+		if (treelevel < 1 || treelevel > this.height)
+		{
+			return new Switch [0];
 		}
 		
-		return switchSet;
+		return this.switchSetPerLevel[treelevel];
 		
 	}
 	
@@ -388,29 +583,17 @@ public class FatTreeNetwork {
 	/**
 	 * This functions returns the link set based on tree level
 	 * 
-	 * @param treeLevel the level of the tree we want to get the switch set for
+	 * @param treeLevel the level of the destination switches of the links
+	 * @return links of the level, empty array if there is no link at this level
 	 */
 	public Link [] getLinksSetPerTreeLevel (int treelevel)
 	{
-		Link linkSet [];
-		
-		switch (treelevel)
-		{		
-			case 1:
-				linkSet = this.pmToTorLinkSet;
-				break;
-			case 2:			
-				linkSet = this.torToAggregateLinkSet;
-				break;
-			case 3:
-				linkSet = this.aggregateToCoreLinkset;
-				break;
-			default:
-				linkSet= this.pmToTorLinkSet;
-				break;
+		if (treelevel < 1 || treelevel > this.height)
+		{
+			return new Link [0];
 		}
 		
-		return linkSet;
+		return this.linkSetPerLevel[treelevel];
 		
 	}
 	
@@ -429,34 +612,28 @@ public class FatTreeNetwork {
 		
 		subTree.fatTreeNetwork = this;
 		
-		//links in the tree based on tree level
-		Link linksPerLevel  [] = this.getLinksSetPerTreeLevel(rootNode.level);
+		//links having the root node as destination
+		Link childLinks  [] = this.getChildLinks(rootNode);
 		
-		//loop over the link at each level
-		for (int j=0; j<linksPerLevel.length; j++)
+		//loop over the child links of the root node
+		for (int j=0; j<childLinks.length; j++)
 		{
-			//check if the tree link belong to the current subtree
-			if (!linksPerLevel[j].destinationNode.equals(rootNode))
-			{
-				continue;
-			}
-			
 			//add the link to the subtree
-			subTree.links.add(linksPerLevel[j]);
+			subTree.links.add(childLinks[j]);
 			
 			
 			if (rootNode.level !=1)
 			{
 				//add the child switch to the switch array
-				subTree.switches.add((Switch)linksPerLevel[j].sourceNode);
+				subTree.switches.add((Switch)childLinks[j].sourceNode);
 				
-				//call the function again to add the nodes/links at the lower level having linksPerLevel[j].sourceNode as rootNode
-				this.buildSubTree(subTree, linksPerLevel[j].sourceNode);
+				//call the function again to add the nodes/links at the lower level having childLinks[j].sourceNode as rootNode
+				this.buildSubTree(subTree, childLinks[j].sourceNode);
 			}
 			else
 			{
 				//if we are at the lowest level at the subtree than we need to add the physical machines
-				pm = (PhysicalMachine)linksPerLevel[j].sourceNode;
+				pm = (PhysicalMachine)childLinks[j].sourceNode;
 				
 				//add the physical machines as part of the sub tree
 				subTree.physicalMachines.add (pm);
@@ -465,8 +642,15 @@ public class FatTreeNetwork {
 														
 		}					
 		
+		//the sub tree holds the range of physical machines of its root switch
+		if (rootNode == subTree.rootNode && rootNode.level > 0)
+		{
+			subTree.firstPm = ((Switch)rootNode).firstPm;
+			subTree.lastPm = ((Switch)rootNode).lastPm;
+		}
+		
 		//empty memory
-		linksPerLevel = null;
+		childLinks = null;
 		
 		return subTree;
 	}
@@ -482,28 +666,14 @@ public class FatTreeNetwork {
 	 */
 	public ArrayList <SubTree> orderSubtreesByAvailableVMs(ArrayList <SubTree> subTrees )
 	{
-		SubTree  TempSubTree1, TempSubTree2;
+		int availableVms [] = new int [subTrees.size()];
 		
 		for ( int i=0; i< subTrees.size(); i++)
 		{	
-			TempSubTree1 = subTrees.get(i);
-			
-			for ( int j=i+1; j< subTrees.size(); j++)
-			{	
-				TempSubTree2 = subTrees.get(j);
-				
-				//compare the number of available VMs
-				if (TempSubTree1.getAvailableVms() > TempSubTree2.getAvailableVms())
-				{
-					subTrees.set (i,TempSubTree2);
-					subTrees.set (j,TempSubTree1);
-				}
-			}
+			availableVms[i] = subTrees.get(i).getAvailableVms();
 		}
 		
-		//empty memory
-		 TempSubTree1 = null;
-		 TempSubTree2 = null;
+		sortByKeys(subTrees, availableVms);
 		 
 		return subTrees;
 	}
@@ -511,7 +681,8 @@ public class FatTreeNetwork {
 	
 	/**
 	 * This function sorts the subTrees in the arrayList in an ascending order based
-	 * on the residual bandwidth on the link that connects the subtree to the rest of the network
+	 * on the residual bandwidth on the link that connects the subtree to the rest of the network.
+	 * The sub trees of a whole level are already ordered by the bandwidth index
 	 * 
 	 * @param subTrees array list of subtrees
 	 * 
@@ -519,33 +690,21 @@ public class FatTreeNetwork {
 	 */
 	public ArrayList <SubTree> orderSubtreesByUpperLinkResidualBandwidth(ArrayList <SubTree> subTrees )
 	{
-		SubTree  TempSubTree1, TempSubTree2;
-		Link l1, l2;
+		int residualBandwidth [] = new int [subTrees.size()];
+		Link l;
 		
 		for ( int i=0; i< subTrees.size(); i++)
 		{	
-			TempSubTree1 = subTrees.get(i);
-			l1 = this.searchLink(TempSubTree1.rootNode);
-		
-			for ( int j=i+1; j< subTrees.size(); j++)
-			{	
-				TempSubTree2 = subTrees.get(j);
-				l2 = this.searchLink(TempSubTree2.rootNode);
+			l = this.searchLink(subTrees.get(i).rootNode);
 			
-				//compare the number of available VMs
-				if (  l1.bandwidth > l2.bandwidth )
-				{
-					subTrees.set (i,TempSubTree2);
-					subTrees.set (j,TempSubTree1);
-				}
-			}
+			//the sub trees of the core switches have no upper link, they keep their order
+			residualBandwidth[i] = l == null ? 0 : l.getBandwidth();
 		}
 		
 		//empty memory
-		 TempSubTree1 = null;
-		 TempSubTree2 = null;
-		 l1 = null;
-		 l2 = null;
+		l = null;
+		
+		sortByKeys(subTrees, residualBandwidth);
 		 
 		return subTrees;
 	}
@@ -562,83 +721,97 @@ public class FatTreeNetwork {
 	 */
 	public ArrayList <SubTree> orderSubtreesByHostedVMs (ArrayList<SubTree> subTrees, Request request)
 	{
-		SubTree  TempSubTree1, TempSubTree2;
+		int hostedVms [] = new int [subTrees.size()];
 			
+		//negative keys for a descending order
 		for ( int i=0; i< subTrees.size(); i++)
 		{	
-			TempSubTree1 = subTrees.get(i);
-					
-			for ( int j=i+1; j< subTrees.size(); j++)
-			{	
-				TempSubTree2 = subTrees.get(j);
-							
-				//compare the number of available VMs
-				if (  TempSubTree1.getHostedVms(request) < TempSubTree2.getHostedVms(request) )
-				{
-					subTrees.set (i,TempSubTree2);
-					subTrees.set (j,TempSubTree1);
-				}
-			}
+			hostedVms[i] = -subTrees.get(i).getHostedVms(request);
 		}
 		
-		//empty memory
-		 TempSubTree1 = null;
-		 TempSubTree2 = null;
+		sortByKeys(subTrees, hostedVms);
 		 
 		return subTrees;
 	}
 	
 	
 	/**
-	 * This function returns the link with the specified source node
-	 * 
-	 * @param sourceNode 
+	 * This function sorts the list in ascending order of the keys, each key being computed once 
+	 * for its element before sorting. The elements with the same key keep their order
 	 * 
-	 * @return link
+	 * @param list list to sort
+	 * @param keys key of each element of the list
 	 */
-	public Link searchLink (Node sourceNode)
+	static <T> void sortByKeys (ArrayList<T> list, final int keys [])
 	{
-		Link l=null;
-		Link [] links = null;
+		Integer order [] = new Integer [list.size()];
+		ArrayList<T> elements = new ArrayList<T>(list);
 		
-		/**
-		 * search only in the link set at the same level of the source node
-		 */
-		switch (sourceNode.level) {
-			case 0:
-				links = this.pmToTorLinkSet;
-				break;
-			case 1:
-				links= this.torToAggregateLinkSet;				
-				break;
-			case 2:
-				links = this.aggregateToCoreLinkset;
-				break;	
-			default:				
-				break;	
-		}
-		
-		//we are at core level that is not a source node for any link
-		if (links == null)
+		for (int i=0; i<order.length; i++)
 		{
-			return null;
+			order[i] = i;
 		}
 		
-		for(int i=0; i<links.length; i++)
+		Arrays.sort(order, new Comparator<Integer>()
 		{
-			l = links[i];
-			
-			if (l.sourceNode.equals(sourceNode))
+			@Override
+			public int compare(Integer element1, Integer element2)
 			{
-				return l;
+				return Integer.compare(keys[element1], keys[element2]);
 			}
+		});
+		
+		for (int i=0; i<order.length; i++)
+		{
+			list.set(i, elements.get(order[i]));
 		}
 		
 		//empty memory
-		links= null;
+		elements = null;
+	}
+	
+	
+	/**
+	 * This function returns the link with the specified source node
+	 * 
+	 * @param sourceNode 
+	 * 
+	 * @return link
+	 */
+	public Link searchLink (Node sourceNode)
+	{
+		//core switches are not source node for any link
+		if (sourceNode.level < 0 || sourceNode.level >= this.height)
+		{
+			return null;
+		}
+		
+		return this.uplinkIndex[sourceNode.level][sourceNode.id];
+		
+	}
+	
+	
+	/**
+	 * This function returns the links of the path going up from the source node to its ancestor 
+	 * at the specified level (for example PM->TOR->Aggregate->Core for a physical machine and the core level)
+	 * 
+	 * @param sourceNode
+	 * @param level level of the last switch of the path
+	 * 
+	 * @return links of the path ordered from the source node
+	 */
+	public Link [] getUpPath (Node sourceNode, int level)
+	{
+		Link path [] = new Link [level - sourceNode.level];
+		Node node = sourceNode;
 		
-		return null;
+		for (int i=0; i<path.length; i++)
+		{
+			path[i] = this.uplinkIndex[node.level][node.id];
+			node = node.parent;
+		}
 		
+		return path;
 	}
 	
 	/**
@@ -658,10 +831,10 @@ public class FatTreeNetwork {
 		for ( int i = 0 ; i<linkSet.length; i++)
 		{	
 			//reserved bandwidth is the link capacity - remaining free bandwidth
-			reservedBandwidth+= linkSet[i].capacity - linkSet[i].bandwidth;			
+			reservedBandwidth+= linkSet[i].capacity - linkSet[i].getBandwidth();			
 		}
 		
-		if (level < FatTreeNetwork.HEIGHT)
+		if (level < this.height)
 		{
 			level++;
 			reservedBandwidth = this.calculateTotalBandwidth(level, reservedBandwidth);
@@ -682,15 +855,47 @@ public class FatTreeNetwork {
 	 *
 	 */
 	public void releaseAllocatedRequest (Request request, VirtualMachine.Type vmType)
+	{
+		int pod;
+		
+		if (this.podLocks == null)
+		{
+			this.releaseRequestFootprint(request, vmType);
+			return;
+		}
+		
+		//lock the pod of the request footprint, or the whole network if it spans the core
+		pod = this.podLocks.getPod(request);
+		this.podLocks.lock(pod);
+		
+		try
+		{
+			this.releaseRequestFootprint(request, vmType);
+		}
+		finally
+		{
+			this.podLocks.unlock(pod);
+		}
+	}
+	
+	
+	/**
+	 * This function releases the VMs and bandwidth of the specified type reserved for the request 
+	 * on the servers and links of its footprint
+	 * 
+	 * @param request
+	 * @param vmType (null, backup, primary) type of vm and bandwidth to release (null to release both)
+	 */
+	private void releaseRequestFootprint (Request request, VirtualMachine.Type vmType)
 	{
 		PhysicalMachine pm ;
 		Link l;
 		Link.BandwidthType bandwidthType;
 		
-		//release reserved VMs for the specified request 
-		for (int i=0; i<this.physicalMachinesSet.length; i++)
+		//release reserved VMs for the specified request on the servers of its footprint
+		for (int i=0; i<request.reservedPhysicalMachines.size(); i++)
 		{
-			pm = this.physicalMachinesSet[i];
+			pm = request.reservedPhysicalMachines.get(i);
 			pm.releaseVms(request.id, vmType);
 			
 		}
@@ -709,26 +914,24 @@ public class FatTreeNetwork {
 			bandwidthType =  null;
 		}
 	
-		//release the bandwidth reserved for this request on all the network links
-		for(int i=0;i<this.pmToTorLinkSet.length;i++)
-		{
-			l = this.pmToTorLinkSet[i];
-			l.releaseBandwidth(request.id, bandwidthType);
-			
-		}
-		
-		for(int i=0;i<this.torToAggregateLinkSet.length;i++)
+		//release the bandwidth reserved for this request on the links of its footprint
+		for(int i=0;i<request.reservedLinks.size();i++)
 		{
-			l = this.torToAggregateLinkSet[i];
+			l = request.reservedLinks.get(i);
 			l.releaseBandwidth(request.id, bandwidthType);
 			
 		}
 		
-		for(int i=0;i<this.aggregateToCoreLinkset.length;i++)
+		//the request is not using the network anymore
+		if (vmType == null)
 		{
-			l = this.aggregateToCoreLinkset[i];
-			l.releaseBandwidth(request.id, bandwidthType);
+			if (this.state.getUndoLog().isActive())
+			{
+				this.state.getUndoLog().logFootprintClear(request);
+			}
 			
+			request.reservedPhysicalMachines.clear();
+			request.reservedLinks.clear();
 		}
 		
 		//empty memory
@@ -740,39 +943,97 @@ public class FatTreeNetwork {
 	
 	
 	
+	/**
+	 * This function allows admitting requests concurrently on this network: 
+	 * the pods (sub trees of the switches below the core) get their own lock and each thread gets its own undo log.
+	 * It should be called after building the network and before starting the admission threads
+	 */
+	public void enableConcurrentAdmission ()
+	{
+		this.podLocks = new PodLocks(this.getSwitchSetPerTreeLevel(this.getPodLevel()).length, this.getPodLevel());
+		this.state.enableThreadUndoLogs();
+	}
+	
+	
+	/**
+	 * This function returns the level of the roots of the pods: the level below the core switches 
+	 * (only the core switches are shared by several pods)
+	 * 
+	 * @return level of the pods root switches
+	 */
+	public int getPodLevel ()
+	{
+		return this.height > 1 ? this.height-1 : this.height;
+	}
+	
+	
+	/**
+	 * This function marks a checkpoint of the network state. The reservations/releases done after it 
+	 * are logged and can be undone by rollback() or kept by commit().
+	 * Checkpoints can be nested, they should be rolled back or committed in the reverse order
+	 * 
+	 * @return checkpoint
+	 */
+	public int checkpoint ()
+	{
+		return this.state.getUndoLog().checkpoint();
+	}
+	
+	
+	/**
+	 * This function undoes all the reservations/releases done on the network since the checkpoint
+	 * 
+	 * @param checkpoint value returned by checkpoint()
+	 */
+	public void rollback (int checkpoint)
+	{
+		this.state.getUndoLog().rollback(checkpoint);
+	}
+	
+	
+	/**
+	 * This function keeps the reservations/releases done on the network since the checkpoint
+	 * 
+	 * @param checkpoint value returned by checkpoint()
+	 */
+	public void commit (int checkpoint)
+	{
+		this.state.getUndoLog().commit(checkpoint);
+	}
+	
+	
 	/**
 	 * This function resets all the network information by :
 	 * 1- removing the allocated VMs on physical machines
-	 * 2- resetting the links reserved bandwidth to 0
+	 * 2- releasing all the reserved bandwidth of the links
+	 * 
+	 * Only the reservation state is reset (by filling the state arrays), the topology and its index are kept 
+	 * so that the same network can be used for several runs without being built again.
+	 * The requests of the previous run should not be used after the reset
 	 */
 	public void reset()
 	{
+		Link [] links = this.linksByContinuousId;
+		
+		this.state.reset();
+		
 		//un allocate all VMs of all physical machines
 		for(int i=0; i<this.physicalMachinesSet.length; i++)
 		{
-			for(int j=0; j<this.physicalMachinesSet[i].virtualMachines.length; j++)
-			{
-				this.physicalMachinesSet[i].virtualMachines[j].reserveRelease(false, null, null); 
-			}
+			this.physicalMachinesSet[i].resetOccupancy();
 		}
 		
-		//reset reserved bandwidth to 0 for links between physical machines and TOR
-		for ( int i = 0; i< this.pmToTorLinkSet.length; i++)
+		//remove the requests reservations from the links
+		for (int i=0; i<links.length; i++)
 		{
-			this.pmToTorLinkSet[i].bandwidth = 0;
+			links[i].bandwidthForRequests.clear();
 		}
 		
-		//reset reserved bandwidth to 0 for links between TOR and aggregate switch
-		for ( int i = 0; i< this.torToAggregateLinkSet.length; i++)
-		{
-			this.torToAggregateLinkSet[i].bandwidth = 0;
-		}
+		//the VMs and links bandwidth were changed directly
+		this.refreshSwitchesSummaries();
 		
-		//reset reserved bandwidth to 0 for links between aggregate switch and core switch
-		for ( int i = 0; i< this.aggregateToCoreLinkset.length; i++)
-		{
-			this.aggregateToCoreLinkset[i].bandwidth = 0;
-		}
+		//empty memory
+		links = null;
 	}
 	
 	
@@ -787,10 +1048,20 @@ public class FatTreeNetwork {
 		
 		networkInfo +=" ---------------------------------------------------------------------- Fat tree network of ------------------------------------------------------------------------------ \n";
 		networkInfo +=" ----"+ this.nbOfPhysicalMachines+" Servers----"+ this.nbOfVMPerPhysicalMachine+" VM per server----\n";
-		networkInfo +=" ----"+ this.nbOfPhysicalMachinesPerTor+" Servers per TOR switch ("+ this.nbOfPhysicalMachines/this.nbOfPhysicalMachinesPerTor+" TOR)----\n";
-		networkInfo +=" ----"+  this.nbOfTorPerAgg+" of TOR switch per Aggregate ("+ (this.nbOfPhysicalMachines/this.nbOfPhysicalMachinesPerTor)/this.nbOfTorPerAgg+" Aggregate)----\n";
-		networkInfo +=" ----"+ this.nbOfAggPerCore+" Aggregate per core ("+(this.nbOfPhysicalMachines/this.nbOfPhysicalMachinesPerTor)/this.nbOfTorPerAgg/this.nbOfAggPerCore +" core )----\n";
-		networkInfo += " Links capacity : server-TOR = "+this.pmToTorLinkCapacity+" | TOR-AGG =  "+this.torToAggregateLinkCapacity+" | AGG-Core = "+this.aggregateToCoreLinkCapacity+" ----\n";
+		
+		for (int level = 1; level<=this.height; level++)
+		{
+			networkInfo +=" ----"+ this.nbOfChildrenPerLevel[level]+" children per level "+level+" switch ("+ this.getNbOfSwitchesPerLevel(level)+" "+Switch.getTypePerLevel(level, this.height)+")----\n";
+		}
+		
+		networkInfo += " Links capacity :";
+		
+		for (int level = 1; level<=this.height; level++)
+		{
+			networkInfo += " "+Link.getTypePerLevel(level, this.height)+" = "+this.linkCapacityPerLevel[level]+" |";
+		}
+		
+		networkInfo += " ----\n";
 		networkInfo +=" -----------------------------------------------------------------------------------------------------------------------------------------------------------------------------\n\n";
 		return networkInfo;
 	}
@@ -0,0 +1,134 @@
+package Network;
+import java.util.Arrays;
+
+
+/**
+ * This class keeps, for a request, the number of servers hosting each number of its primary VMs.
+ * It gives the maximum and minimum number of primary VMs hosted on a server and the number of hosting servers
+ * without visiting the servers of the request.
+ *
+ * It is updated by the physical machines each time a primary VM of the request is reserved or released
+ * (including the undo log and the snapshot loading that go through the same functions)
+ *
+ * @author Hyame
+ *
+ */
+public class HostedVmsStatistics {
+
+	//number of servers hosting i primary VMs of the request (index 0 is not used)
+	private int serversPerHostedVms [];
+
+	//number of servers hosting at least one primary VM of the request
+	private int hostingServersNb;
+
+	//maximum and minimum number of primary VMs hosted on a hosting server (0 if there is no hosting server)
+	private int maxHostedVms;
+	private int minHostedVms;
+
+
+	/**
+	 * Constructor
+	 */
+	public HostedVmsStatistics ()
+	{
+		this.serversPerHostedVms = new int [16];
+		this.hostingServersNb = 0;
+		this.maxHostedVms = 0;
+		this.minHostedVms = 0;
+	}
+
+
+	/**
+	 * This function moves a server from its previous number of hosted primary VMs to the new one
+	 *
+	 * @param previousHostedVms primary VMs of the request hosted on the server before the change
+	 * @param hostedVms primary VMs of the request hosted on the server after the change
+	 */
+	void update (int previousHostedVms, int hostedVms)
+	{
+		if (previousHostedVms == hostedVms)
+		{
+			return;
+		}
+
+		if (previousHostedVms > 0)
+		{
+			this.serversPerHostedVms[previousHostedVms]--;
+		}
+		else
+		{
+			this.hostingServersNb++;
+		}
+
+		if (hostedVms > 0)
+		{
+			//a server can host more VMs than expected, grow the array
+			if (hostedVms >= this.serversPerHostedVms.length)
+			{
+				this.serversPerHostedVms = Arrays.copyOf(this.serversPerHostedVms, Math.max(hostedVms+1, 2*this.serversPerHostedVms.length));
+			}
+
+			this.serversPerHostedVms[hostedVms]++;
+		}
+		else
+		{
+			this.hostingServersNb--;
+		}
+
+		if (this.hostingServersNb == 0)
+		{
+			this.maxHostedVms = 0;
+			this.minHostedVms = 0;
+			return;
+		}
+
+		//the maximum only moves down to the next number of hosted VMs still used by a server
+		if (hostedVms > this.maxHostedVms)
+		{
+			this.maxHostedVms = hostedVms;
+		}
+
+		while (this.serversPerHostedVms[this.maxHostedVms] == 0)
+		{
+			this.maxHostedVms--;
+		}
+
+		//the minimum only moves up to the next number of hosted VMs still used by a server
+		if (hostedVms > 0 && (this.minHostedVms == 0 || hostedVms < this.minHostedVms))
+		{
+			this.minHostedVms = hostedVms;
+		}
+
+		while (this.serversPerHostedVms[this.minHostedVms] == 0)
+		{
+			this.minHostedVms++;
+		}
+	}
+
+
+	/**
+	 * @return maximum number of primary VMs of the request hosted on a server
+	 */
+	public int getMaxHostedVms ()
+	{
+		return this.maxHostedVms;
+	}
+
+
+	/**
+	 * @return minimum number of primary VMs of the request hosted on a hosting server (0 if no server hosts primary VMs)
+	 */
+	public int getMinHostedVms ()
+	{
+		return this.minHostedVms;
+	}
+
+
+	/**
+	 * @return number of servers hosting primary VMs of the request
+	 */
+	public int getHostingServersNb ()
+	{
+		return this.hostingServersNb;
+	}
+}
@@ -1,9 +1,14 @@
 package Network;
-import java.util.ArrayList;
 
 /**
  * This class defines the physical links in the tree network
  * 
+ * Thread safety: only the residual bandwidth is a lock-free ledger (compare-and-set in the network state).
+ * tryReserveBandwidth, returnBandwidth and tryReservePath only change this ledger and can be called by several
+ * threads without any lock. reserveBandwidth and releaseBandwidth also change the reservation table of the link
+ * and the footprint of the request: when the requests are admitted concurrently they should be called while holding
+ * the lock of the link pod (see PodLocks), as the admission and release functions of the network do
+ * 
  * @author Hyame
  *
  */
@@ -24,19 +29,24 @@ public class Link {
 	//capacity of the link
 	public int capacity;
 	
-	//residual bandwidth of the link
-	public int bandwidth;
+	//network state holding the residual bandwidth of the link at index stateIndex
+	private NetworkState state;
+	
+	//index of the link in the network state: its continuous id, or 0 when the link holds its own state
+	private int stateIndex;
 	
 	//link type
 	public String type;
 	
-	//array holding requests id and the bandwidth reserved for this request on that link
-	public ArrayList <int[]> bandwidthForRequests;
+	//table holding requests id and the primary/backup bandwidth reserved for this request on that link
+	//(the shared empty table until the first reservation on the link, see getWritableReservations)
+	public ReservationTable bandwidthForRequests;
 	
 	//defining link type as constant
 	public static final String MACHINE_TO_TOR_TYPE = "PhysicalMachineToTORLink";
 	public static final String TOR_TO_AGGREGATE_TYPE = "TORToAggregateLink";
 	public static final String AGGREATE_TO_CORE_TYPE = "AggregateToCoreLink";
+	public static final String AGGREGATE_TO_AGGREGATE_TYPE = "AggregateToAggregateLink";
 	
 	public enum BandwidthType {PRIMARY, BACKUP}; 
 		
@@ -57,116 +67,166 @@ public class Link {
 	 * @param capacity
 	 */
 	public Link(int id, int continuousId, Node sourceNode, Node destinationNode, int capacity, String type)
+	{		
+		//the link is not part of a network, it holds its own state with a single link
+		this (id, continuousId, sourceNode, destinationNode, capacity, type, new NetworkState(1, 0), 0);
+	}
+	
+	
+	/**
+	 * Constructor of the link object which residual bandwidth is kept in the network state
+	 * 
+	 * @param id
+	 * @param sourceNode
+	 * @param destinationNode
+	 * @param capacity
+	 * @param state network state
+	 */
+	public Link(int id, int continuousId, Node sourceNode, Node destinationNode, int capacity, String type, NetworkState state)
+	{		
+		this (id, continuousId, sourceNode, destinationNode, capacity, type, state, continuousId);
+	}
+	
+	
+	/**
+	 * Constructor of the link object which residual bandwidth is kept in the network state at the given index
+	 * 
+	 * @param id
+	 * @param sourceNode
+	 * @param destinationNode
+	 * @param capacity
+	 * @param state network state
+	 * @param stateIndex index of the link in the network state
+	 */
+	private Link(int id, int continuousId, Node sourceNode, Node destinationNode, int capacity, String type, NetworkState state, int stateIndex)
 	{		
 		this.id = id;
 		this.continuousId = continuousId;
 		this.sourceNode = sourceNode;
 		this.destinationNode = destinationNode;
 		this.capacity = capacity;
-		this.bandwidth = this.capacity;
 		this.type = type;
-		this.bandwidthForRequests = new ArrayList<int[]>();
+		this.bandwidthForRequests = ReservationTable.NONE;
+		this.state = state;
+		this.stateIndex = stateIndex;
+		this.state.initLink(this.stateIndex, this.capacity);
 	}
 	
 	
 	/**
-	 * This function returns the link level based on its type
+	 * @return residual bandwidth of the link
+	 */
+	public int getBandwidth ()
+	{
+		return this.state.getLinkBandwidth(this.stateIndex);
+	}
+	
+	
+	/**
+	 * This function sets the residual bandwidth of the link
+	 * 
+	 * @param bandwidth
+	 */
+	void setBandwidth (int bandwidth)
+	{
+		this.state.setLinkBandwidth(this.stateIndex, bandwidth);
+	}
+	
+	
+	/**
+	 * This function returns the link level: the level of its destination switch
 	 * 
 	 * @return level link level
 	 */
 	
 	public int getLinkLevel()
 	{
-		int level = 0;
+		return this.destinationNode.level;
+	}
+	
+	
+	/**
+	 * This function returns the type of the links having a switch of the specified level as destination
+	 * 
+	 * @param level level of the destination switch
+	 * @param height height of the tree
+	 * @return link type
+	 */
+	public static String getTypePerLevel (int level, int height)
+	{
+		if (level == 1)
+		{
+			return MACHINE_TO_TOR_TYPE;
+		}
 		
-		switch (this.type) 
+		if (level == height)
 		{
-			case Link.MACHINE_TO_TOR_TYPE:
-				level = 1;
-			
-			case Link.TOR_TO_AGGREGATE_TYPE:
-				//number of links between the aggregate switches and the TOR is equal to the number of TOR switches
-				level = 2;
-			
-			case Link.AGGREATE_TO_CORE_TYPE:
-				//number of links between the core switches and the aggregate switches is equal to the number of aggregate switches
-				level = 3;
+			return AGGREATE_TO_CORE_TYPE;
 		}
 		
-		return level;
+		if (level == 2)
+		{
+			return TOR_TO_AGGREGATE_TYPE;
+		}
+		
+		return AGGREGATE_TO_AGGREGATE_TYPE;
 	}
 	
 	
 	/**
-	 * This function allows to reserve bandwidth 
+	 * This function allows to reserve bandwidth.
+	 * Only the residual bandwidth is reserved atomically, the caller should hold the lock of the link pod
+	 * when the requests are admitted concurrently
 	 * 
 	 * @param bandwidthToReserve
-	 * @param requestId
+	 * @param request request for which the bandwidth is reserved
 	 * @param bandwidthType specifies if the reserved bandwidth is {primary, backup}
 	 * @return boolean 
 	 */
-	public boolean reserveBandwidth (int bandwidthToReserve, int requestId, BandwidthType bandwidthType)
+	public boolean reserveBandwidth (int bandwidthToReserve, Request request, BandwidthType bandwidthType)
 	{
-		int [] requestReservation = new int[3];
-		boolean allocationExists = false;
-		
-		//check if there exist sufficient bandwidth to reserve
-		if (this.bandwidth < bandwidthToReserve)
+		//check if there exist sufficient bandwidth and reserve it
+		if (!this.state.tryReserveLinkBandwidth(this.stateIndex, bandwidthToReserve))
 		{
 			return false;
 		}
 		
-		this.bandwidth -= bandwidthToReserve;
+		//keep the previous reservation to be able to roll it back
+		if (this.state.getUndoLog().isActive())
+		{
+			this.state.getUndoLog().logLinkReservation(this, request.id, -bandwidthToReserve);
+		}
+		
+		this.updateServerBandwidthSummary();
 		
-		//check if we already reserved  primary or backup bandwidth for the request
-		for(int i = 0; i<this.bandwidthForRequests.size(); i++)
+		//first reservation of the request on this link, add the link to the request footprint
+		if (!this.bandwidthForRequests.contains(request.id))
 		{
-			requestReservation = this.bandwidthForRequests.get(i);
-			if (requestReservation[0] == requestId)
+			if (this.state.getUndoLog().isActive())
 			{
-				allocationExists = true;
-				if (bandwidthType == BandwidthType.PRIMARY)
-				{
-					requestReservation[1] = bandwidthToReserve;
-					
-				}
-				else
-				{
-					requestReservation[2] = bandwidthToReserve;
-					
-				}
-				
-				this.bandwidthForRequests.set(i, requestReservation);
-				break;
+				this.state.getUndoLog().logLinkFootprintAdd(request);
 			}
 			
+			request.reservedLinks.add(this);
 		}
-		requestReservation = null;
-		requestReservation = new int[3];
-		//if this is the first time we reserve bandwidth for the request we need to add it to the array
-		if (!allocationExists)
+		
+		//set the bandwidth reserved on this link for the specified request, the request is added to the table if it is the first reservation
+		if (bandwidthType == BandwidthType.PRIMARY)
 		{
-			//set the bandwidth reserved on this link for the specified request
-			requestReservation[0] = requestId;
-			if (bandwidthType == BandwidthType.PRIMARY)
-			{
-				requestReservation[1] = bandwidthToReserve;
-				
-			}
-			else
-			{
-				requestReservation[2] = bandwidthToReserve;
-				
-			}
-			this.bandwidthForRequests.add (requestReservation);
+			this.getWritableReservations().setPrimary(request.id, bandwidthToReserve);
+		}
+		else
+		{
+			this.getWritableReservations().setBackup(request.id, bandwidthToReserve);
 		}
-		requestReservation = null;
+		
 		return true;
 	}
 	
 	
 	/**
-	 * This function releases the bandwidth reserved for the specified request
+	 * This function releases the bandwidth reserved for the specified request.
+	 * The caller should hold the lock of the link pod when the requests are admitted concurrently
 	 *
 	 * @param requestId
 	 * @param bandwidthType bandwidth type to release. Set to null if we want to release 
@@ -176,45 +236,210 @@ public class Link {
 	 */
 	public void releaseBandwidth ( int requestId, BandwidthType bandwidthType)
 	{
-		int[] requestBandwidth;
+		int releasedBandwidth;
 		
-		for(int i = 0; i<this.bandwidthForRequests.size(); i++)
+		if (!this.bandwidthForRequests.contains(requestId))
 		{
-			requestBandwidth = new int[3];
-			requestBandwidth = this.bandwidthForRequests.get(i);
-			
-			if (requestBandwidth[0] != requestId)
+			return;
+		}
+		
+		if (bandwidthType == BandwidthType.PRIMARY)
+		{
+			releasedBandwidth = this.bandwidthForRequests.getPrimary(requestId);
+		}
+		else if (bandwidthType == BandwidthType.BACKUP)
+		{
+			releasedBandwidth = this.bandwidthForRequests.getBackup(requestId);
+		}
+		else
+		{
+			//release primary and backup bandwidth
+			releasedBandwidth = this.bandwidthForRequests.getPrimary(requestId)+this.bandwidthForRequests.getBackup(requestId);
+		}
+		
+		//keep the previous reservation to be able to roll it back
+		if (this.state.getUndoLog().isActive())
+		{
+			this.state.getUndoLog().logLinkReservation(this, requestId, releasedBandwidth);
+		}
+		
+		this.state.addLinkBandwidth(this.stateIndex, releasedBandwidth);
+		
+		if (bandwidthType == BandwidthType.PRIMARY)
+		{
+			this.bandwidthForRequests.setPrimary(requestId, 0);
+		}
+		else if (bandwidthType == BandwidthType.BACKUP)
+		{
+			this.bandwidthForRequests.setBackup(requestId, 0);
+		}				
+		else
+		{	
+			this.bandwidthForRequests.remove(requestId);
+		}
+		
+		this.updateServerBandwidthSummary();
+	}
+	
+	
+	/**
+	 * This function reserves bandwidth on the link without assigning it to a request (bandwidth ledger only).
+	 * The check and the reservation are atomic so it can be called by several threads without locking the link.
+	 * The reserved bandwidth should be given back with returnBandwidth()
+	 * 
+	 * @param bandwidth bandwidth to reserve
+	 * @return true if the bandwidth was reserved
+	 */
+	public boolean tryReserveBandwidth (int bandwidth)
+	{
+		if (!this.state.tryReserveLinkBandwidth(this.stateIndex, bandwidth))
+		{
+			return false;
+		}
+		
+		this.updateServerBandwidthSummary();
+		
+		return true;
+	}
+	
+	
+	/**
+	 * This function gives back bandwidth reserved with tryReserveBandwidth()
+	 * 
+	 * @param bandwidth bandwidth to give back
+	 */
+	public void returnBandwidth (int bandwidth)
+	{
+		this.state.addLinkBandwidth(this.stateIndex, bandwidth);
+		this.updateServerBandwidthSummary();
+	}
+	
+	
+	/**
+	 * This function reserves bandwidth on all the links of a path (for example PM->TOR->Aggregate->Core) or on none of them.
+	 * The links are reserved one by one with compare-and-set, if one of them does not have enough bandwidth
+	 * the bandwidth already reserved on the previous links is given back.
+	 * Other threads may see the partial reservation but never lose bandwidth because of it
+	 * 
+	 * @param path links of the path
+	 * @param bandwidth bandwidth to reserve on each link of the path (same index as the path)
+	 * @return true if the bandwidth was reserved on all the links
+	 */
+	public static boolean tryReservePath (Link path [], int bandwidth [])
+	{
+		for (int i=0; i<path.length; i++)
+		{
+			if (path[i].tryReserveBandwidth(bandwidth[i]))
 			{
 				continue;
 			}
 			
-			if (bandwidthType == BandwidthType.PRIMARY)
+			//all or nothing: give back the bandwidth reserved on the previous links
+			for (int j=i-1; j>=0; j--)
 			{
-				this.bandwidth += requestBandwidth[1];
-				
-				requestBandwidth[1] = 0;
-			}
-			else if (bandwidthType == BandwidthType.BACKUP)
-			{
-				this.bandwidth += requestBandwidth[2];
-				
-				requestBandwidth[2] = 0;
-			}				
-			else if (bandwidthType == null)
-			{	
-				//release primary and backup bandwidth
-				this.bandwidth += requestBandwidth[1]+requestBandwidth[2];
-				this.bandwidthForRequests.remove(i);
+				path[j].returnBandwidth(bandwidth[j]);
 			}
 			
-			//free memory
-			requestBandwidth = null;
+			return false;
 		}
 		
-
+		return true;
+	}
+	
+	
+	/**
+	 * This function restores the residual bandwidth of the link and the reservation of the request on it.
+	 * It is used by the undo log when rolling back the network changes
+	 * 
+	 * @param requestId
+	 * @param bandwidthVariation variation of the residual bandwidth to undo (the bandwidth is restored relatively
+	 * so that the bandwidth reserved meanwhile by other threads through the ledger is kept)
+	 * @param primaryBandwidth primary bandwidth reserved for the request
+	 * @param backupBandwidth backup bandwidth reserved for the request
+	 * @param hasReservation false if the request had no reservation on the link
+	 */
+	void restoreReservation (int requestId, int bandwidthVariation, int primaryBandwidth, int backupBandwidth, boolean hasReservation)
+	{
+		this.state.addLinkBandwidth(this.stateIndex, -bandwidthVariation);
+		
+		if (hasReservation)
+		{
+			this.getWritableReservations().setPrimary(requestId, primaryBandwidth);
+			this.getWritableReservations().setBackup(requestId, backupBandwidth);
+		}
+		else
+		{
+			this.bandwidthForRequests.remove(requestId);
+		}
+		
+		this.updateServerBandwidthSummary();
+	}
+	
+	
+	/**
+	 * This function returns the table of the reservations on the link to add a reservation to it.
+	 * The table is only allocated on the first reservation since most of the links of a large network hold none
+	 * 
+	 * @return reservations table of the link
+	 */
+	ReservationTable getWritableReservations ()
+	{
+		if (this.bandwidthForRequests == ReservationTable.NONE)
+		{
+			this.bandwidthForRequests = new ReservationTable();
+		}
+		
+		return this.bandwidthForRequests;
+	}
+	
+	
+	/**
+	 * This function updates the maximum server bandwidth summary of the switches above the link
+	 * if it is a link between a physical machine and a TOR switch
+	 */
+	private void updateServerBandwidthSummary ()
+	{
+		Switch tor;
+		
+		if (this.sourceNode == null || this.sourceNode.level != PhysicalMachine.MACHINE_LEVEL)
+		{
+			return;
+		}
+		
+		tor = (Switch)this.destinationNode;
 		
+		//the summaries are only kept once the network topology index is built
+		if (tor.childLinks != null)
+		{
+			tor.updateMaxServerBandwidth();
+		}
 	}
 	
+	
+	/**
+	 * This function returns the bandwidth reserved on this link for the specified request
+	 * 
+	 * @param requestId
+	 * @param bandwidthType type of the reserved bandwidth, null to get the primary and backup bandwidth
+	 * 
+	 * @return reserved bandwidth, 0 if nothing is reserved for the request
+	 */
+	public int getReservedBandwidth (int requestId, BandwidthType bandwidthType)
+	{
+		if (bandwidthType == BandwidthType.PRIMARY)
+		{
+			return this.bandwidthForRequests.getPrimary(requestId);
+		}
+		
+		if (bandwidthType == BandwidthType.BACKUP)
+		{
+			return this.bandwidthForRequests.getBackup(requestId);
+		}
+		
+		return this.bandwidthForRequests.getPrimary(requestId)+this.bandwidthForRequests.getBackup(requestId);
+	}
+	
+	
 	/**
 	 * This function returns a string of link information
 	 * 
@@ -224,7 +449,7 @@ public class Link {
 	{
 		String linkInformation = "";
 		
-		linkInformation +=" Link"+this.continuousId+" : capacity = "+this.capacity+" ; residualBanadiwdth = "+this.bandwidth+" \n";
+		linkInformation +=" Link"+this.continuousId+" : capacity = "+this.capacity+" ; residualBanadiwdth = "+this.getBandwidth()+" \n";
 		
 		return linkInformation;
 	}
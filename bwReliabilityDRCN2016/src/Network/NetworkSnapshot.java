@@ -0,0 +1,495 @@
+package Network;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class saves a loaded network (topology and live reservations) with its requests in a binary file
+ * and restores it, so that what-if analyses can start from a realistic loaded state without replaying the requests.
+ *
+ * The file is read through a memory mapped buffer. It holds (big endian):
+ * 1- header: MAGIC, VERSION
+ * 2- topology: height, number of physical machines, VMs per physical machine, then the number of children 
+ *    and the links capacity of each level (version 1 files hold the 8 parameters of the 3 levels constructor)
+ * 3- links (by continuous id): capacity, residual bandwidth, number of requests then {request id, primary, backup} for each
+ * 4- requests: id, N, B, admitted, process type, arrival/departure time, subtree root {level, id},
+ *    reservedBackupVms, reservedBandwidth {link continuous id, primary, backup}, rejection reasons,
+ *    footprint (physical machines ids, links continuous ids) and slot list {physical machine id, VM index}
+ * 5- slots: owner request id and type of each slot
+ *
+ * The requests are kept by id: the clones of a request (arrival/departure copies) are saved once
+ *
+ * @author Hyame
+ *
+ */
+public class NetworkSnapshot {
+
+	//first int of a snapshot file ("FTNS")
+	public static final int MAGIC = 0x46544E53;
+
+	//version of the format, to increase when the format changes
+	public static final int VERSION = 2;
+
+	//network of the snapshot
+	public FatTreeNetwork treeNetwork;
+
+	//requests embedded in the network
+	public ArrayList<Request> requests;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param treeNetwork built network
+	 * @param requests requests embedded in the network (all the owners of reserved slots and bandwidth)
+	 */
+	public NetworkSnapshot (FatTreeNetwork treeNetwork, ArrayList<Request> requests)
+	{
+		this.treeNetwork = treeNetwork;
+		this.requests = requests;
+	}
+
+
+	/**
+	 * This function writes the snapshot in the specified file
+	 *
+	 * @param fileName
+	 * @throws IOException
+	 */
+	public void save (String fileName) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			this.writeTopology(out);
+			this.writeLinks(out);
+			this.writeRequests(out);
+			this.writeSlots(out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+
+	/**
+	 * This function writes the parameters of the network
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeTopology (DataOutputStream out) throws IOException
+	{
+		out.writeInt(this.treeNetwork.height);
+		out.writeInt(this.treeNetwork.nbOfPhysicalMachines);
+		out.writeInt(this.treeNetwork.nbOfVMPerPhysicalMachine);
+
+		for (int level=1; level<=this.treeNetwork.height; level++)
+		{
+			out.writeInt(this.treeNetwork.nbOfChildrenPerLevel[level]);
+			out.writeInt(this.treeNetwork.linkCapacityPerLevel[level]);
+		}
+	}
+
+
+	/**
+	 * This function writes the bandwidth and the reservations of the links
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeLinks (DataOutputStream out) throws IOException
+	{
+		Link links [] = this.treeNetwork.linksByContinuousId;
+		ReservationTable reservations;
+
+		out.writeInt(links.length);
+
+		for (int i=0; i<links.length; i++)
+		{
+			reservations = links[i].bandwidthForRequests;
+
+			out.writeInt(links[i].capacity);
+			out.writeInt(links[i].getBandwidth());
+			out.writeInt(reservations.size());
+
+			for (int j=0; j<reservations.getSlotsNb(); j++)
+			{
+				if (reservations.getKeyAt(j) == ReservationTable.EMPTY)
+				{
+					continue;
+				}
+
+				out.writeInt(reservations.getKeyAt(j));
+				out.writeInt(reservations.getPrimaryAt(j));
+				out.writeInt(reservations.getBackupAt(j));
+			}
+		}
+	}
+
+
+	/**
+	 * This function writes the requests (once per id)
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeRequests (DataOutputStream out) throws IOException
+	{
+		HashMap<Integer, Request> savedRequests = new HashMap<Integer, Request>();
+		ArrayList<Request> distinctRequests = new ArrayList<Request>();
+		Request request;
+		int reservedBandwidth [];
+
+		for (int i=0; i<this.requests.size(); i++)
+		{
+			if (!savedRequests.containsKey(this.requests.get(i).id))
+			{
+				savedRequests.put(this.requests.get(i).id, this.requests.get(i));
+				distinctRequests.add(this.requests.get(i));
+			}
+		}
+
+		out.writeInt(distinctRequests.size());
+
+		for (int i=0; i<distinctRequests.size(); i++)
+		{
+			request = distinctRequests.get(i);
+
+			out.writeInt(request.id);
+			out.writeInt(request.N);
+			out.writeInt(request.B);
+			out.writeBoolean(request.admitted);
+			out.writeInt(request.processType == null ? -1 : request.processType.ordinal());
+			out.writeDouble(request.arrivalTime);
+			out.writeDouble(request.departureTime);
+
+			//the sub tree is found in the network index by its root node
+			out.writeInt(request.subtree == null ? -1 : request.subtree.rootNode.level);
+			out.writeInt(request.subtree == null ? -1 : request.subtree.rootNode.id);
+
+			out.writeInt(request.reservedBackupVms);
+			out.writeInt(request.reservedBandwidth.size());
+
+			for (int j=0; j<request.reservedBandwidth.size(); j++)
+			{
+				reservedBandwidth = request.reservedBandwidth.get(j);
+				out.writeInt(reservedBandwidth[0]);
+				out.writeInt(reservedBandwidth[1]);
+				out.writeInt(reservedBandwidth[2]);
+			}
+
+			out.writeInt(request.rejectionReason.size());
+
+			for (int j=0; j<request.rejectionReason.size(); j++)
+			{
+				out.writeInt(request.rejectionReason.get(j).ordinal());
+			}
+
+			out.writeInt(request.reservedPhysicalMachines.size());
+
+			for (int j=0; j<request.reservedPhysicalMachines.size(); j++)
+			{
+				out.writeInt(request.reservedPhysicalMachines.get(j).id);
+			}
+
+			out.writeInt(request.reservedLinks.size());
+
+			for (int j=0; j<request.reservedLinks.size(); j++)
+			{
+				out.writeInt(request.reservedLinks.get(j).continuousId);
+			}
+
+			out.writeInt(request.reservedSlots.size());
+
+			for (int j=0; j<request.reservedSlots.size(); j++)
+			{
+				out.writeInt(request.reservedSlots.getMachine(j).id);
+				out.writeInt(request.reservedSlots.getVmIndex(j));
+			}
+		}
+	}
+
+
+	/**
+	 * This function writes the owner and type of the slots
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeSlots (DataOutputStream out) throws IOException
+	{
+		NetworkState state = this.treeNetwork.state;
+
+		out.writeInt(state.getNbOfSlots());
+
+		for (int i=0; i<state.getNbOfSlots(); i++)
+		{
+			out.writeInt(state.getSlotOwner(i));
+			out.writeByte(state.getSlotType(i));
+		}
+	}
+
+
+	/**
+	 * This function restores a network and its requests from a snapshot file.
+	 * The topology is built from its parameters then the reservation state is loaded from the mapped file
+	 *
+	 * @param fileName
+	 * @return snapshot with the loaded network and requests
+	 * @throws IOException if the file is not a snapshot of a supported version or does not match its topology
+	 */
+	public static NetworkSnapshot load (String fileName) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		FileChannel channel = file.getChannel();
+		MappedByteBuffer buffer;
+		FatTreeNetwork treeNetwork;
+		int version;
+		HashMap<Integer, Request> requestsById = new HashMap<Integer, Request>();
+		ArrayList<Request> requests;
+
+		try
+		{
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.getInt() != MAGIC)
+			{
+				throw new IOException(fileName+" is not a network snapshot");
+			}
+
+			version = buffer.getInt();
+
+			if (version == 1)
+			{
+				treeNetwork = new FatTreeNetwork(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+						buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+			}
+			else if (version == VERSION)
+			{
+				treeNetwork = readTopology(buffer);
+			}
+			else
+			{
+				throw new IOException(fileName+" has an unsupported snapshot version");
+			}
+
+			treeNetwork.buildTreeNetwork();
+
+			readLinks(buffer, treeNetwork);
+			requests = readRequests(buffer, treeNetwork, requestsById);
+			readSlots(buffer, treeNetwork, requestsById);
+		}
+		finally
+		{
+			channel.close();
+			file.close();
+		}
+
+		//the counters and summaries are computed from the loaded slots and links
+		for (int i=0; i<treeNetwork.physicalMachinesSet.length; i++)
+		{
+			treeNetwork.physicalMachinesSet[i].refreshOccupancy();
+		}
+
+		treeNetwork.refreshSwitchesSummaries();
+
+		return new NetworkSnapshot(treeNetwork, requests);
+	}
+
+
+	/**
+	 * This function creates the network (not built) from its parameters
+	 *
+	 * @param buffer
+	 * @return network
+	 */
+	private static FatTreeNetwork readTopology (MappedByteBuffer buffer)
+	{
+		int height = buffer.getInt();
+		int nbOfPhysicalMachines = buffer.getInt();
+		int nbOfVMPerPhysicalMachine = buffer.getInt();
+		int nbOfChildrenPerSwitch [] = new int [height];
+		int linkCapacity [] = new int [height];
+
+		for (int i=0; i<height; i++)
+		{
+			nbOfChildrenPerSwitch[i] = buffer.getInt();
+			linkCapacity[i] = buffer.getInt();
+		}
+
+		return new FatTreeNetwork(nbOfPhysicalMachines, nbOfVMPerPhysicalMachine, nbOfChildrenPerSwitch, linkCapacity);
+	}
+
+
+	/**
+	 * This function loads the bandwidth and the reservations of the links
+	 *
+	 * @param buffer
+	 * @param treeNetwork
+	 * @throws IOException
+	 */
+	private static void readLinks (MappedByteBuffer buffer, FatTreeNetwork treeNetwork) throws IOException
+	{
+		Link links [] = treeNetwork.linksByContinuousId;
+		Link l;
+		int nbOfReservations;
+		int requestId;
+
+		if (buffer.getInt() != links.length)
+		{
+			throw new IOException("the number of links of the snapshot does not match its topology");
+		}
+
+		for (int i=0; i<links.length; i++)
+		{
+			l = links[i];
+
+			if (buffer.getInt() != l.capacity)
+			{
+				throw new IOException("the capacity of link "+i+" does not match the topology");
+			}
+
+			treeNetwork.state.setLinkBandwidth(i, buffer.getInt());
+			nbOfReservations = buffer.getInt();
+
+			for (int j=0; j<nbOfReservations; j++)
+			{
+				requestId = buffer.getInt();
+				l.getWritableReservations().setPrimary(requestId, buffer.getInt());
+				l.getWritableReservations().setBackup(requestId, buffer.getInt());
+			}
+		}
+	}
+
+
+	/**
+	 * This function loads the requests with their footprint and slot list
+	 *
+	 * @param buffer
+	 * @param treeNetwork
+	 * @param requestsById filled with the loaded requests
+	 * @return loaded requests
+	 */
+	private static ArrayList<Request> readRequests (MappedByteBuffer buffer, FatTreeNetwork treeNetwork, HashMap<Integer, Request> requestsById)
+	{
+		int nbOfRequests = buffer.getInt();
+		ArrayList<Request> requests = new ArrayList<Request>(nbOfRequests);
+		Request request;
+		int processType;
+		int rootLevel;
+		int rootId;
+		int size;
+		int reservedBandwidth [];
+
+		for (int i=0; i<nbOfRequests; i++)
+		{
+			request = new Request(buffer.getInt(), buffer.getInt(), buffer.getInt());
+			request.admitted = buffer.get() != 0;
+			processType = buffer.getInt();
+			request.processType = processType == -1 ? null : Request.Type.values()[processType];
+			request.arrivalTime = buffer.getDouble();
+			request.departureTime = buffer.getDouble();
+
+			rootLevel = buffer.getInt();
+			rootId = buffer.getInt();
+			request.subtree = rootLevel == -1 ? null : treeNetwork.subTreesIndex[rootLevel][rootId];
+
+			request.reservedBackupVms = buffer.getInt();
+			size = buffer.getInt();
+
+			for (int j=0; j<size; j++)
+			{
+				reservedBandwidth = new int [3];
+				reservedBandwidth[0] = buffer.getInt();
+				reservedBandwidth[1] = buffer.getInt();
+				reservedBandwidth[2] = buffer.getInt();
+				request.reservedBandwidth.add(reservedBandwidth);
+			}
+
+			size = buffer.getInt();
+
+			for (int j=0; j<size; j++)
+			{
+				request.rejectionReason.add(Request.RejectionReason.values()[buffer.getInt()]);
+			}
+
+			size = buffer.getInt();
+
+			for (int j=0; j<size; j++)
+			{
+				request.reservedPhysicalMachines.add(treeNetwork.physicalMachinesSet[buffer.getInt()]);
+			}
+
+			size = buffer.getInt();
+
+			for (int j=0; j<size; j++)
+			{
+				request.reservedLinks.add(treeNetwork.linksByContinuousId[buffer.getInt()]);
+			}
+
+			//the slots keep their order (and their position in the network state)
+			size = buffer.getInt();
+
+			for (int j=0; j<size; j++)
+			{
+				request.reservedSlots.add(treeNetwork.physicalMachinesSet[buffer.getInt()], buffer.getInt());
+			}
+
+			requests.add(request);
+			requestsById.put(request.id, request);
+		}
+
+		return requests;
+	}
+
+
+	/**
+	 * This function loads the owner and type of the slots
+	 *
+	 * @param buffer
+	 * @param treeNetwork
+	 * @param requestsById loaded requests
+	 * @throws IOException
+	 */
+	private static void readSlots (MappedByteBuffer buffer, FatTreeNetwork treeNetwork, HashMap<Integer, Request> requestsById) throws IOException
+	{
+		NetworkState state = treeNetwork.state;
+		int owner;
+		byte type;
+
+		if (buffer.getInt() != state.getNbOfSlots())
+		{
+			throw new IOException("the number of slots of the snapshot does not match its topology");
+		}
+
+		for (int i=0; i<state.getNbOfSlots(); i++)
+		{
+			owner = buffer.getInt();
+			type = buffer.get();
+
+			if (owner == NetworkState.FREE_SLOT)
+			{
+				continue;
+			}
+
+			if (!requestsById.containsKey(owner))
+			{
+				throw new IOException("slot "+i+" is reserved for request "+owner+" which is not in the snapshot");
+			}
+
+			state.setSlot(i, requestsById.get(owner), type);
+		}
+	}
+}
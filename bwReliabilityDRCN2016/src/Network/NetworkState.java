@@ -0,0 +1,326 @@
+package Network;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class holds the reservation state of the network in primitive arrays:
+ * - residual bandwidth and capacity of the links indexed by the link continuous id
+ * - owner (request id) and type (primary/backup) of the VM slots indexed by the slot index
+ *   (the slots of a physical machine are consecutive starting at its first slot)
+ * - request of each slot and position of the slot in the request slot list
+ *
+ * The Link, PhysicalMachine and VirtualMachine objects are views over this state
+ * so that large networks do not need to keep the state in millions of small objects.
+ * The VirtualMachine views are only created when a caller asks for one
+ *
+ * @author Hyame
+ *
+ */
+public class NetworkState {
+
+	//owner of a slot that is not reserved
+	public static final int FREE_SLOT = -1;
+
+	//type of the VM reserved in a slot
+	public static final byte PRIMARY_SLOT = 0;
+	public static final byte BACKUP_SLOT = 1;
+
+	//capacity of the links indexed by continuous id
+	private int linkCapacity [];
+
+	/*
+	 * residual bandwidth of the links indexed by continuous id.
+	 * It is a lock-free ledger: the bandwidth is reserved with compare-and-set so that
+	 * several threads can reserve bandwidth on the same link without losing updates
+	 */
+	private AtomicIntegerArray linkBandwidth;
+
+	//id of the request for which the slot is reserved, FREE_SLOT if it is not reserved
+	private int slotOwner [];
+
+	//type of the VM reserved in the slot (PRIMARY_SLOT if the slot is free)
+	private byte slotType [];
+
+	//request for which the slot is reserved, null if it is not reserved
+	private Request slotRequest [];
+
+	//position of the slot in the slot list of its request
+	private int slotPosition [];
+
+	//log of the changes done on the network since the first active checkpoint
+	private UndoLog undoLog;
+
+	//one log per thread when the requests are admitted concurrently (null otherwise)
+	private ThreadLocal<UndoLog> threadUndoLogs;
+
+	//index of the sub trees ordered by the residual bandwidth of their upper link (null until the network is built)
+	private UplinkBandwidthIndex bandwidthIndex;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nbOfLinks number of links of the network
+	 * @param nbOfSlots total number of VM slots of the network
+	 */
+	public NetworkState (int nbOfLinks, int nbOfSlots)
+	{
+		this.linkCapacity = new int [nbOfLinks];
+		this.linkBandwidth = new AtomicIntegerArray(nbOfLinks);
+		this.slotOwner = new int [nbOfSlots];
+		this.slotType = new byte [nbOfSlots];
+		this.slotRequest = new Request [nbOfSlots];
+		this.slotPosition = new int [nbOfSlots];
+		this.undoLog = new UndoLog();
+
+		for (int i=0; i<nbOfSlots; i++)
+		{
+			this.slotOwner[i] = FREE_SLOT;
+		}
+	}
+
+
+	/**
+	 * @return undo log of the network changes
+	 */
+	public UndoLog getUndoLog ()
+	{
+		if (this.threadUndoLogs != null)
+		{
+			return this.threadUndoLogs.get();
+		}
+
+		return this.undoLog;
+	}
+
+
+	/**
+	 * This function gives each thread its own undo log so that the checkpoints of requests
+	 * admitted concurrently (in different pods) do not mix their changes.
+	 * It should be called while no checkpoint is active
+	 */
+	public void enableThreadUndoLogs ()
+	{
+		this.threadUndoLogs = new ThreadLocal<UndoLog>()
+		{
+			@Override
+			protected UndoLog initialValue ()
+			{
+				return new UndoLog();
+			}
+		};
+	}
+
+
+	/**
+	 * This function releases all the links bandwidth and VM slots by filling the state arrays.
+	 * It should be called while no checkpoint is active
+	 */
+	public void reset ()
+	{
+		for (int i=0; i<this.linkCapacity.length; i++)
+		{
+			this.linkBandwidth.set(i, this.linkCapacity[i]);
+		}
+
+		Arrays.fill(this.slotOwner, FREE_SLOT);
+		Arrays.fill(this.slotType, PRIMARY_SLOT);
+		Arrays.fill(this.slotRequest, null);
+
+		this.undoLog = new UndoLog();
+	}
+
+
+	/**
+	 * This function sets the index updated each time the residual bandwidth of a link changes
+	 *
+	 * @param bandwidthIndex
+	 */
+	public void setBandwidthIndex (UplinkBandwidthIndex bandwidthIndex)
+	{
+		this.bandwidthIndex = bandwidthIndex;
+	}
+
+
+	/**
+	 * @return number of links held by the state
+	 */
+	public int getNbOfLinks ()
+	{
+		return this.linkBandwidth.length();
+	}
+
+
+	/**
+	 * @return number of VM slots held by the state
+	 */
+	public int getNbOfSlots ()
+	{
+		return this.slotOwner.length;
+	}
+
+
+	/**
+	 * This function sets the capacity of the link and releases all its bandwidth
+	 *
+	 * @param continuousId link continuous id
+	 * @param capacity
+	 */
+	public void initLink (int continuousId, int capacity)
+	{
+		this.linkCapacity[continuousId] = capacity;
+		this.linkBandwidth.set(continuousId, capacity);
+	}
+
+
+	/**
+	 * @param continuousId link continuous id
+	 * @return capacity of the link
+	 */
+	public int getLinkCapacity (int continuousId)
+	{
+		return this.linkCapacity[continuousId];
+	}
+
+
+	/**
+	 * @param continuousId link continuous id
+	 * @return residual bandwidth of the link
+	 */
+	public int getLinkBandwidth (int continuousId)
+	{
+		return this.linkBandwidth.get(continuousId);
+	}
+
+
+	/**
+	 * @param continuousId link continuous id
+	 * @param bandwidth new residual bandwidth of the link
+	 */
+	public void setLinkBandwidth (int continuousId, int bandwidth)
+	{
+		this.linkBandwidth.set(continuousId, bandwidth);
+		this.updateBandwidthIndex(continuousId);
+	}
+
+
+	/**
+	 * This function reserves bandwidth on the link if its residual bandwidth is sufficient.
+	 * The check and the reservation are done atomically (compare-and-set)
+	 *
+	 * @param continuousId link continuous id
+	 * @param bandwidth bandwidth to reserve
+	 * @return true if the bandwidth was reserved
+	 */
+	public boolean tryReserveLinkBandwidth (int continuousId, int bandwidth)
+	{
+		int residualBandwidth;
+
+		do
+		{
+			residualBandwidth = this.linkBandwidth.get(continuousId);
+
+			if (residualBandwidth < bandwidth)
+			{
+				return false;
+			}
+		}
+		while (!this.linkBandwidth.compareAndSet(continuousId, residualBandwidth, residualBandwidth - bandwidth));
+
+		this.updateBandwidthIndex(continuousId);
+
+		return true;
+	}
+
+
+	/**
+	 * This function atomically adds the variation to the residual bandwidth of the link
+	 *
+	 * @param continuousId link continuous id
+	 * @param variation bandwidth released (negative if bandwidth is reserved)
+	 */
+	public void addLinkBandwidth (int continuousId, int variation)
+	{
+		this.linkBandwidth.getAndAdd(continuousId, variation);
+		this.updateBandwidthIndex(continuousId);
+	}
+
+
+	/**
+	 * This function updates the position of the link in the bandwidth index (if any)
+	 *
+	 * @param continuousId link continuous id
+	 */
+	private void updateBandwidthIndex (int continuousId)
+	{
+		if (this.bandwidthIndex != null)
+		{
+			this.bandwidthIndex.update(continuousId);
+		}
+	}
+
+
+	/**
+	 * @param slot slot index
+	 * @return id of the request for which the slot is reserved, FREE_SLOT if it is not reserved
+	 */
+	public int getSlotOwner (int slot)
+	{
+		return this.slotOwner[slot];
+	}
+
+
+	/**
+	 * @param slot slot index
+	 * @return type of the VM reserved in the slot
+	 */
+	public byte getSlotType (int slot)
+	{
+		return this.slotType[slot];
+	}
+
+
+	/**
+	 * @param slot slot index
+	 * @return request for which the slot is reserved, null if it is not reserved
+	 */
+	public Request getSlotRequest (int slot)
+	{
+		return this.slotRequest[slot];
+	}
+
+
+	/**
+	 * This function sets the owner and type of the slot
+	 *
+	 * @param slot slot index
+	 * @param request request for which the slot is reserved or null to release the slot
+	 * @param type PRIMARY_SLOT or BACKUP_SLOT
+	 */
+	public void setSlot (int slot, Request request, byte type)
+	{
+		this.slotOwner[slot] = request == null ? FREE_SLOT : request.id;
+		this.slotType[slot] = type;
+		this.slotRequest[slot] = request;
+	}
+
+
+	/**
+	 * @param slot slot index
+	 * @return position of the slot in the slot list of its request
+	 */
+	int getSlotPosition (int slot)
+	{
+		return this.slotPosition[slot];
+	}
+
+
+	/**
+	 * @param slot slot index
+	 * @param position position of the slot in the slot list of its request
+	 */
+	void setSlotPosition (int slot, int position)
+	{
+		this.slotPosition[slot] = position;
+	}
+}
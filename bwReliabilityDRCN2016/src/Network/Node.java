@@ -18,6 +18,9 @@ public class Node {
 	//type of the node (physical machine, switch ...)
 	public String type;
 	
+	//parent switch of the node in the tree, null for the root switch (set when building the topology index of the network)
+	public Switch parent;
+	
 	
 	/**
 	 * general constructor 
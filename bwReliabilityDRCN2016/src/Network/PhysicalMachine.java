@@ -1,4 +1,6 @@
 package Network;
+import java.util.Arrays;
+
 import Network.VirtualMachine.Type;
 
 /**
@@ -16,12 +18,28 @@ public class PhysicalMachine extends Node {
 	//level of this node in the tree
 	public static final int MACHINE_LEVEL = 0;
 	
-	//Array of virtual machines held by this physical machine
-	public VirtualMachine virtualMachines []; 
+	//views over the VMs of this physical machine, created only when a caller asks for them (see getVirtualMachine())
+	private VirtualMachine virtualMachines []; 
 	
 	//nb of VM that can be held by this physical machine
 	public int nbOfVM;
 	
+	//index of the first VM of this physical machine in the network state (the VMs slots are consecutive)
+	public int firstSlot;
+	
+	//network state holding the owner and type of the VMs
+	private NetworkState state;
+	
+	//nb of un-reserved VMs, kept up to date by VirtualMachine.reserveRelease()
+	private int availableVMs;
+	
+	//bitmap of un-reserved VMs (bit i is set if virtualMachines[i] is not reserved)
+	private long freeSlots [];
+	
+	//occupancy of the physical machine: number of primary and backup VMs reserved on it for each request id
+	//(the shared empty table until the first VM is reserved on the physical machine)
+	private ReservationTable hostedVmsPerRequest;
+	
 	
 	/**
 	 * Default constructor
@@ -38,41 +56,315 @@ public class PhysicalMachine extends Node {
 	 * @param nbOfVM
 	 */
 	public PhysicalMachine(int id, int nbOfVM)
+	{
+		//the physical machine is not part of a network, it holds its own state with only its VMs slots (starting at slot 0)
+		this (id, nbOfVM, new NetworkState(0, nbOfVM), 0);
+	}
+	
+	
+	/**
+	 * Constructor of a physical machine which VMs are kept in the network state
+	 * 
+	 * @param id
+	 * @param nbOfVM
+	 * @param state network state
+	 * @param firstSlot index of the first VM of the physical machine in the state
+	 */
+	public PhysicalMachine(int id, int nbOfVM, NetworkState state, int firstSlot)
 	{
 		
 		super (id, MACHINE_LEVEL,PHYSICAL_MACHINE_TYPE);		
 		
 		this.nbOfVM = nbOfVM;
-		this.virtualMachines = new VirtualMachine [this.nbOfVM];
+		this.state = state;
+		this.firstSlot = firstSlot;
 		
-		//create the set of VMs
-		for(int i= 0; i<this.virtualMachines.length; i++)
+		//all the VMs are free initially
+		this.hostedVmsPerRequest = ReservationTable.NONE;
+		this.freeSlots = new long [(this.nbOfVM+63)/64];
+		this.freeAllSlots();
+	}
+	
+	
+	/**
+	 * This function marks all the VMs as free in the counter and the bitmap
+	 */
+	private void freeAllSlots ()
+	{
+		this.availableVMs = this.nbOfVM;
+		Arrays.fill(this.freeSlots, 0);
+		
+		for(int i= 0; i<this.nbOfVM; i++)
 		{
-			this.virtualMachines[i] = new VirtualMachine(i,0,this);
+			this.freeSlots[i >>> 6] |= 1L << i;
 		}
 	}
 	
 	
 	/**
-	 * This function returns the number of un-reserved VM
-	 * 
-	 * @return int availableVMs
+	 * This function frees all the VMs of the physical machine without releasing them one by one from their requests.
+	 * It is used when resetting the whole network, the network state slots are reset by the caller
 	 */
-	public int getAvailableVM()
+	void resetOccupancy ()
+	{
+		//nothing was reserved on this physical machine since the last reset
+		if (this.availableVMs == this.nbOfVM && this.hostedVmsPerRequest.size() == 0)
+		{
+			return;
+		}
+		
+		this.hostedVmsPerRequest.clear();
+		this.freeAllSlots();
+		
+		//the backups of the reset network do not protect any primary VM
+		for (int i=0; this.virtualMachines != null && i<this.nbOfVM; i++)
+		{
+			if (this.virtualMachines[i] != null)
+			{
+				this.virtualMachines[i].clearBackedUpVMs();
+			}
+		}
+	}
+	
+	
+	/**
+	 * @return network state holding the VMs of this physical machine
+	 */
+	NetworkState getState()
+	{
+		return this.state;
+	}
+	
+	
+	/**
+	 * This function recomputes the free VMs counter and bitmap and the occupancy of the physical machine
+	 * from the slots of the network state (when the state was loaded directly, see NetworkSnapshot).
+	 * The switches summaries should be refreshed after calling it
+	 */
+	void refreshOccupancy ()
 	{
+		int owner;
 		
-		int availableVMs = 0;
+		this.hostedVmsPerRequest.clear();
+		this.freeAllSlots();
 		
-		for (int i =0; i<this.virtualMachines.length; i++)
+		for (int i=0; i<this.nbOfVM; i++)
 		{
+			owner = this.getSlotOwner(i);
+			
+			if (owner == NetworkState.FREE_SLOT)
+			{
+				continue;
+			}
 			
-			if(this.virtualMachines[i].reserved == false){
-				availableVMs++;
+			this.freeSlots[i >>> 6] &= ~(1L << i);
+			this.availableVMs--;
+			this.updateOccupancy(this.state.getSlotRequest(this.firstSlot + i), this.getSlotType(i), 1);
+		}
+	}
+	
+	
+	/**
+	 * This function returns the view over the VM at the specified index.
+	 * The view is created at the first call and kept for the next ones
+	 * 
+	 * @param vmIndex index of the VM on this physical machine
+	 * @return virtual machine
+	 */
+	public VirtualMachine getVirtualMachine (int vmIndex)
+	{
+		if (this.virtualMachines == null)
+		{
+			this.virtualMachines = new VirtualMachine [this.nbOfVM];
+		}
+		
+		if (this.virtualMachines[vmIndex] == null)
+		{
+			this.virtualMachines[vmIndex] = new VirtualMachine(vmIndex, 0, this);
+		}
+		
+		return this.virtualMachines[vmIndex];
+	}
+	
+	
+	/**
+	 * @param vmIndex index of the VM on this physical machine
+	 * @return id of the request for which the VM is reserved, NetworkState.FREE_SLOT if it is not reserved
+	 */
+	public int getSlotOwner (int vmIndex)
+	{
+		return this.state.getSlotOwner(this.firstSlot + vmIndex);
+	}
+	
+	
+	/**
+	 * @param vmIndex index of the VM on this physical machine
+	 * @return type of the VM (primary if it is not reserved)
+	 */
+	public VirtualMachine.Type getSlotType (int vmIndex)
+	{
+		return this.state.getSlotType(this.firstSlot + vmIndex) == NetworkState.BACKUP_SLOT ? VirtualMachine.Type.BACKUP : VirtualMachine.Type.PRIMARY;
+	}
+	
+	
+	/**
+	 * This function reserves the free VM at the specified index for the request
+	 * 
+	 * @param vmIndex index of the VM on this physical machine
+	 * @param request
+	 * @param VMType type of the reserved VM
+	 */
+	void reserveSlot (int vmIndex, Request request, VirtualMachine.Type VMType)
+	{
+		//keep the reservation to be able to roll it back
+		if (this.state.getUndoLog().isActive())
+		{
+			this.state.getUndoLog().logVmReserve(this, vmIndex);
+		}
+		
+		this.updateSlotStatus(vmIndex, true);
+		this.state.setSlot(this.firstSlot + vmIndex, request, VMType == VirtualMachine.Type.BACKUP ? NetworkState.BACKUP_SLOT : NetworkState.PRIMARY_SLOT);
+		request.reservedSlots.add(this, vmIndex);
+		this.updateOccupancy(request, VMType, 1);
+	}
+	
+	
+	/**
+	 * This function releases the reserved VM at the specified index
+	 * 
+	 * @param vmIndex index of the VM on this physical machine
+	 */
+	void releaseSlot (int vmIndex)
+	{
+		int slot = this.firstSlot + vmIndex;
+		Request request = this.state.getSlotRequest(slot);
+		VirtualMachine.Type VMType = this.getSlotType(vmIndex);
+		int position = this.state.getSlotPosition(slot);
+		
+		//keep the release to be able to roll it back
+		if (this.state.getUndoLog().isActive())
+		{
+			this.state.getUndoLog().logVmRelease(this, vmIndex, request, position, VMType);
+		}
+		
+		//the primary VMs mapped to the released backup are not protected by it anymore
+		if (this.virtualMachines != null && this.virtualMachines[vmIndex] != null && !this.virtualMachines[vmIndex].backedUpVMs.isEmpty())
+		{
+			if (this.state.getUndoLog().isActive())
+			{
+				this.state.getUndoLog().logBackupMappingClear(this.virtualMachines[vmIndex]);
 			}
 			
+			this.virtualMachines[vmIndex].clearBackedUpVMs();
+		}
+		
+		this.updateSlotStatus(vmIndex, false);
+		this.updateOccupancy(request, VMType, -1);
+		
+		//O(1) removal from the request slot list
+		request.reservedSlots.remove(position);
+		
+		//free the slot and reset the Vm to primary Vm (if it was set as backup)
+		this.state.setSlot(slot, null, NetworkState.PRIMARY_SLOT);
+	}
+	
+	
+	/**
+	 * This function updates the free VMs counter and bitmap when a VM changes its reservation status.
+	 * 
+	 * @param slot index of the VM on this physical machine
+	 * @param reserved true if the VM became reserved, false if it became free
+	 */
+	void updateSlotStatus (int slot, boolean reserved)
+	{
+		if (reserved)
+		{
+			this.freeSlots[slot >>> 6] &= ~(1L << slot);
+			this.availableVMs--;
+		}
+		else
+		{
+			this.freeSlots[slot >>> 6] |= 1L << slot;
+			this.availableVMs++;
+		}
+		
+		//update the available VMs of the switches on the path to the root
+		if (this.parent != null)
+		{
+			this.parent.updateAvailableVMs(reserved ? -1 : 1);
+		}
+	}
+	
+	
+	/**
+	 * This function updates the occupancy of the physical machine when a VM is reserved for a request or released.
+	 * The hosted VMs statistics of the request are updated with the primary VMs
+	 * 
+	 * @param request request of the VM
+	 * @param VMType type of the VM
+	 * @param variation 1 if the VM was reserved, -1 if it is being released
+	 */
+	private void updateOccupancy (Request request, VirtualMachine.Type VMType, int variation)
+	{
+		int requestId = request.id;
+		int primaryVms = this.hostedVmsPerRequest.getPrimary(requestId);
+		int backupVms = this.hostedVmsPerRequest.getBackup(requestId);
+		
+		if (VMType == VirtualMachine.Type.PRIMARY)
+		{
+			request.hostedVmsStatistics.update(primaryVms, primaryVms + variation);
+			primaryVms += variation;
+		}
+		else
+		{
+			backupVms += variation;
+		}
+		
+		//the request has no more Vms on this server
+		if (primaryVms == 0 && backupVms == 0)
+		{
+			this.hostedVmsPerRequest.remove(requestId);
+			return;
+		}
+		
+		//first VM reserved on this physical machine
+		if (this.hostedVmsPerRequest == ReservationTable.NONE)
+		{
+			this.hostedVmsPerRequest = new ReservationTable();
+		}
+		
+		this.hostedVmsPerRequest.setPrimary(requestId, primaryVms);
+		this.hostedVmsPerRequest.setBackup(requestId, backupVms);
+	}
+	
+	
+	/**
+	 * This function returns the index of the first un-reserved VM
+	 * 
+	 * @return index of the VM on this physical machine or -1 if all the VMs are reserved
+	 */
+	public int getFirstAvailableVM()
+	{
+		for (int i=0; i<this.freeSlots.length; i++)
+		{
+			if (this.freeSlots[i] != 0)
+			{
+				return (i << 6) + Long.numberOfTrailingZeros(this.freeSlots[i]);
+			}
 		}
 		
-		return availableVMs;
+		return -1;
+	}
+	
+	
+	/**
+	 * This function returns the number of un-reserved VM
+	 * 
+	 * @return int availableVMs
+	 */
+	public int getAvailableVM()
+	{
+		return this.availableVMs;
 	}
 	
 	
@@ -95,22 +387,22 @@ public class PhysicalMachine extends Node {
 			return nbOfReservedVM;
 		}
 		
-		for (int i =0; i<this.virtualMachines.length; i++)
+		//add this server to the request footprint
+		if (VMToReserve > 0 && !request.reservedPhysicalMachines.contains(this))
 		{
-			
-			//we reserved all the needed number 
-			if (nbOfReservedVM == VMToReserve )
+			if (this.state.getUndoLog().isActive())
 			{
-				break;
+				this.state.getUndoLog().logMachineFootprintAdd(request);
 			}
 			
-			//reserve the un-reserved VM
-			if(this.virtualMachines[i].reserved == false)
-			{				
-				//reserve the VM
-				this.virtualMachines[i].reserveRelease (true, request, VMType);
-				nbOfReservedVM++;
-			}
+			request.reservedPhysicalMachines.add(this);
+		}
+		
+		//reserve the first un-reserved VM until we reserve all the needed number
+		while (nbOfReservedVM < VMToReserve)
+		{
+			this.reserveSlot(this.getFirstAvailableVM(), request, VMType);
+			nbOfReservedVM++;
 		}
 		
 		return nbOfReservedVM;
@@ -126,23 +418,22 @@ public class PhysicalMachine extends Node {
 	 */
 	public void releaseVms (int tenantId, VirtualMachine.Type vmType)
 	{
-		for (int i =0; i<this.virtualMachines.length; i++)
+		//the tenant has no VM on this server
+		if (!this.hostedVmsPerRequest.contains(tenantId))
+		{
+			return;
+		}
+		
+		for (int i =0; i<this.nbOfVM; i++)
 		{
 			// release VM reserved for the specified tenant
-			if(this.virtualMachines[i].reserved == true && this.virtualMachines[i].request.id == tenantId)
+			if(this.getSlotOwner(i) == tenantId)
 			{	
-				if (this.virtualMachines[i].vmType == vmType)
+				// if the vmType is not specified, release all the VMs of the request
+				if (vmType == null || this.getSlotType(i) == vmType)
 				{
-					//release the VM
-					this.virtualMachines[i].reserveRelease(false, null, null); 
-				
+					this.releaseSlot(i); 
 				}
-				else if (vmType ==null)
-				{
-					// if the vmType is not specified, release all the VMs of the request
-					this.virtualMachines[i].reserveRelease(false, null, null); 
-				}
-								
 			}
 		}		
 	}
@@ -156,17 +447,19 @@ public class PhysicalMachine extends Node {
 	 */
 	public int getHostedVms (Request request)
 	{
-		int hostedVms = 0;
-		
-		for ( int i=0; i<this.virtualMachines.length; i++ )
-		{
-			if (this.virtualMachines[i].reserved  && this.virtualMachines[i].request.equals(request) && this.virtualMachines[i].vmType == VirtualMachine.Type.PRIMARY )
-			{
-				hostedVms++;
-			}
-		}
-		
-		return hostedVms;
+		return this.hostedVmsPerRequest.getPrimary(request.id);
+	}
+	
+	
+	/**
+	 * This function returns the number of backup VMs hosted on this server for the specified request
+	 * 
+	 * @param request
+	 * @return nb of hosted backup Vms
+	 */
+	public int getHostedBackupVms (Request request)
+	{
+		return this.hostedVmsPerRequest.getBackup(request.id);
 	}
 	
 	
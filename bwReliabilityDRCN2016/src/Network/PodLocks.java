@@ -0,0 +1,247 @@
+package Network;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class defines the locks used to admit requests concurrently on the same network.
+ * There is one lock per switch of the level below the core (pod, the aggregate switches of a 3 levels tree):
+ * the requests embedded inside different pods never change the same links, physical machines or non core switches 
+ * so they can be admitted in parallel.
+ *
+ * A request spanning the core (sub tree rooted at a core switch or footprint on several pods) escalates
+ * by locking all the pods in the order of their ids, which avoids deadlocks between escalations.
+ * A thread holding a single pod should release it before escalating.
+ *
+ * The summaries of the core switches are shared by all the pods, they are synchronized by the switches themselves
+ *
+ * @author Hyame
+ *
+ */
+public class PodLocks {
+
+	//pod value used to lock the whole network
+	public static final int ALL_PODS = -1;
+
+	//locks indexed by the id of the pod root switch
+	private ReentrantLock locks [];
+
+	//level of the pods root switches
+	private int podLevel;
+
+	//set by a thread that needs to change a sub tree outside the pod it holds
+	private ThreadLocal<Boolean> escalationNeeded;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param nbOfPods number of switches of the pods level
+	 * @param podLevel level of the pods root switches (level below the core switches)
+	 */
+	public PodLocks (int nbOfPods, int podLevel)
+	{
+		this.locks = new ReentrantLock [nbOfPods];
+		this.podLevel = podLevel;
+
+		for (int i=0; i<nbOfPods; i++)
+		{
+			this.locks[i] = new ReentrantLock();
+		}
+
+		this.escalationNeeded = new ThreadLocal<Boolean>();
+	}
+
+
+	/**
+	 * This function returns the pod of the node
+	 *
+	 * @param node physical machine or switch
+	 * @return pod root switch id or ALL_PODS if the node is a core switch
+	 */
+	public int getPod (Node node)
+	{
+		while (node.level < this.podLevel)
+		{
+			node = node.parent;
+		}
+
+		return node.level == this.podLevel ? node.id : ALL_PODS;
+	}
+
+
+	/**
+	 * This function returns the pod of the sub tree
+	 *
+	 * @param subTree
+	 * @return pod root switch id or ALL_PODS if the sub tree spans the core
+	 */
+	public int getPod (SubTree subTree)
+	{
+		return this.getPod(subTree.rootNode);
+	}
+
+
+	/**
+	 * This function returns the pod holding the whole footprint (servers and links) of the request
+	 *
+	 * @param request
+	 * @return pod root switch id or ALL_PODS if the footprint spans several pods or the core
+	 */
+	public int getPod (Request request)
+	{
+		int pod = ALL_PODS;
+		int nodePod;
+		Node node;
+		int nbOfPhysicalMachines = request.reservedPhysicalMachines.size();
+
+		//a request with an empty footprint does not need more than its own sub tree
+		if (nbOfPhysicalMachines == 0 && request.reservedLinks.isEmpty() && request.subtree != null)
+		{
+			return this.getPod(request.subtree);
+		}
+
+		//the uplink of a pod root switch belongs to its pod so the links are checked by their source node
+		for (int i=0; i<nbOfPhysicalMachines + request.reservedLinks.size(); i++)
+		{
+			node = i < nbOfPhysicalMachines ? request.reservedPhysicalMachines.get(i) : request.reservedLinks.get(i-nbOfPhysicalMachines).sourceNode;
+			nodePod = this.getPod(node);
+
+			if (nodePod == ALL_PODS || (i > 0 && nodePod != pod))
+			{
+				return ALL_PODS;
+			}
+
+			pod = nodePod;
+		}
+
+		return pod;
+	}
+
+
+	/**
+	 * This function locks the pod, or all the pods in the order of their ids for ALL_PODS
+	 *
+	 * @param pod pod root switch id or ALL_PODS
+	 */
+	public void lock (int pod)
+	{
+		if (pod != ALL_PODS)
+		{
+			this.locks[pod].lock();
+			return;
+		}
+
+		for (int i=0; i<this.locks.length; i++)
+		{
+			this.locks[i].lock();
+		}
+	}
+
+
+	/**
+	 * This function unlocks the pod, or all the pods for ALL_PODS
+	 *
+	 * @param pod pod root switch id or ALL_PODS
+	 */
+	public void unlock (int pod)
+	{
+		if (pod != ALL_PODS)
+		{
+			this.locks[pod].unlock();
+			return;
+		}
+
+		for (int i=this.locks.length-1; i>=0; i--)
+		{
+			this.locks[i].unlock();
+		}
+	}
+
+
+	/**
+	 * This function returns true if the current thread holds the lock needed to change the sub tree
+	 *
+	 * @param subTree
+	 * @return boolean
+	 */
+	public boolean isLockedByCurrentThread (SubTree subTree)
+	{
+		return this.isLockedByCurrentThread(subTree.rootNode);
+	}
+
+
+	/**
+	 * This function returns true if the current thread holds the lock needed to change the node
+	 * (for a link, the lock of its source node)
+	 *
+	 * @param node physical machine or switch
+	 * @return boolean
+	 */
+	public boolean isLockedByCurrentThread (Node node)
+	{
+		int pod = this.getPod(node);
+
+		if (pod != ALL_PODS)
+		{
+			return this.locks[pod].isHeldByCurrentThread();
+		}
+
+		for (int i=0; i<this.locks.length; i++)
+		{
+			if (!this.locks[i].isHeldByCurrentThread())
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * This function returns true if the current thread holds the lock of a single pod and the node is outside it:
+	 * the node can only be changed after escalating. A thread holding no pod lock (sequential admission on this network)
+	 * or all of them never needs to escalate
+	 *
+	 * @param node physical machine or switch (for a link, its source node)
+	 * @return boolean
+	 */
+	public boolean needsEscalation (Node node)
+	{
+		int nbOfHeldPods = 0;
+
+		for (int i=0; i<this.locks.length; i++)
+		{
+			if (this.locks[i].isHeldByCurrentThread())
+			{
+				nbOfHeldPods++;
+			}
+		}
+
+		return nbOfHeldPods == 1 && !this.isLockedByCurrentThread(node);
+	}
+
+
+	/**
+	 * This function records that the current thread needs to lock the whole network:
+	 * the work done under its pod lock should be rolled back and done again after escalating
+	 */
+	public void requestEscalation ()
+	{
+		this.escalationNeeded.set(Boolean.TRUE);
+	}
+
+
+	/**
+	 * This function returns true if the current thread requested an escalation since the last call
+	 *
+	 * @return boolean
+	 */
+	public boolean clearEscalation ()
+	{
+		boolean needed = this.escalationNeeded.get() != null;
+
+		this.escalationNeeded.remove();
+
+		return needed;
+	}
+}
@@ -9,8 +9,8 @@ public class Request {
 	//number of primary VMs
 	public int N;
 	
-	//set of primary and backups virtual machines of the request. This is set when reserving Vms
-	public ArrayList<VirtualMachine> virtualMachinesSet;
+	//slots of the primary and backups virtual machines of the request. This is set when reserving Vms
+	public SlotList reservedSlots;
 	
 	//bandwidth needed for each Vm
 	public int B;
@@ -37,6 +37,29 @@ public class Request {
 	
 	public ArrayList <int[]> reservedBandwidth;
 	
+	/**
+	 * Footprint of the request in the network: physical machines on which Vms were reserved 
+	 * and links on which bandwidth was reserved for the request.
+	 * It is set when reserving Vms/bandwidth and emptied when the request is totally released
+	 * so that releasing the request only visits the elements it used
+	 */
+	public ArrayList <PhysicalMachine> reservedPhysicalMachines;
+	public ArrayList <Link> reservedLinks;
+	
+	/**
+	 * Number of primary Vms hosted per server (max, min, hosting servers).
+	 * It is updated by the physical machines when primary Vms are reserved or released
+	 */
+	public HostedVmsStatistics hostedVmsStatistics;
+	
+	/**
+	 * Allocation <pmId, VMs> of the primary Vms found by the last feasibility check of a sub tree and the sub tree it was found for.
+	 * It lets the allocation of the request reuse the check without visiting the sub tree again, 
+	 * so it is only valid until the network changes and it is emptied once the request is allocated
+	 */
+	public ArrayList <int[]> primaryAllocationPlan;
+	public SubTree primaryAllocationPlanSubTree;
+	
 	/**
 	 * Actual number of backup Vms reserved
 	 * This is kept set after releasing the request
@@ -72,11 +95,14 @@ public class Request {
 		this.id = id;
 		this.N = N;
 		this.B = B;
-		this.virtualMachinesSet = new ArrayList <VirtualMachine>();
+		this.reservedSlots = new SlotList();
 		this.rejectionReason =  new ArrayList<RejectionReason>();
 		this.subtree = null;
 		this.reservedBandwidth = new ArrayList<int[]>();
 		this.reservedBackupVms =0;
+		this.reservedPhysicalMachines = new ArrayList<PhysicalMachine>();
+		this.reservedLinks = new ArrayList<Link>();
+		this.hostedVmsStatistics = new HostedVmsStatistics();
 	}
 	
 	
@@ -90,7 +116,7 @@ public class Request {
 		r.id = this.id;
 		r.N = this.N;
 		r.B = this.B;
-		r.virtualMachinesSet = this.virtualMachinesSet;
+		r.reservedSlots = this.reservedSlots;
 		r.admitted =  this.admitted;
 		r.arrivalTime = this.arrivalTime;
 		r.departureTime =  this.departureTime;
@@ -99,11 +125,32 @@ public class Request {
 		r.rejectionReason = this.rejectionReason;
 		r.reservedBandwidth = this.reservedBandwidth;
 		r.reservedBackupVms = this.reservedBackupVms;
+		r.reservedPhysicalMachines = this.reservedPhysicalMachines;
+		r.reservedLinks = this.reservedLinks;
+		r.hostedVmsStatistics = this.hostedVmsStatistics;
 		return r;
 		
 	}
 	
 	
+	/**
+	 * This function returns the primary and backup virtual machines reserved for the request
+	 * 
+	 * @return views over the reserved VMs
+	 */
+	public ArrayList <VirtualMachine> getVirtualMachines ()
+	{
+		ArrayList <VirtualMachine> virtualMachines = new ArrayList <VirtualMachine>(this.reservedSlots.size());
+		
+		for (int i=0; i<this.reservedSlots.size(); i++)
+		{
+			virtualMachines.add(this.reservedSlots.getMachine(i).getVirtualMachine(this.reservedSlots.getVmIndex(i)));
+		}
+		
+		return virtualMachines;
+	}
+	
+	
 	/**
 	 * Sets the subtree information and updates the admitted attributes
 	 * 
@@ -127,46 +174,75 @@ public class Request {
 	/**
 	 * This function returns the number of needed backups as 
 	 * the maximum primary Vms hosted on a server
+	 * (the primary Vms are only hosted on the servers of the request subtree)
 	 * 
 	 * @return nb of backup needed
 	 */
 	public int getBackupNeeded()
 	{
-		PhysicalMachine pm = null;
-		int backups = 0;
-		int hostedVms = 0;
+		return this.hostedVmsStatistics.getMaxHostedVms();
+	}
+	
+	
+	/**
+	 * This function returns the minimum number of primary Vms hosted on a server hosting primary Vms of the request
+	 * 
+	 * @return minimum nb of hosted Vms, 0 if no Vms are hosted
+	 */
+	public int getMinHostedVms()
+	{
+		return this.hostedVmsStatistics.getMinHostedVms();
+	}
+	
+	
+	/**
+	 * This function returns the number of physical machines hosting primary Vms of the request
+	 * 
+	 * @return nb of hosting servers
+	 */
+	public int getNbOfHostingServers()
+	{
+		return this.hostedVmsStatistics.getHostingServersNb();
+	}
+	
+	
+	/**
+	 * This function returns the physical machines hosting primary Vms of the request
+	 * 
+	 * @return list of hosting servers
+	 */
+	public ArrayList <PhysicalMachine> getHostingServers()
+	{
+		ArrayList <PhysicalMachine> hostingServers = new ArrayList<PhysicalMachine>();
 		
-		for (int i = 0; i<this.subtree.physicalMachines.size(); i++)
+		for (int i = 0; i<this.reservedPhysicalMachines.size(); i++)
 		{
-			pm = this.subtree.physicalMachines.get(i);
-			hostedVms  =  pm.getHostedVms(this);
-			
-			if ( backups < hostedVms )
+			if (this.reservedPhysicalMachines.get(i).getHostedVms(this) != 0)
 			{
-				backups = hostedVms;
-				
+				hostingServers.add(this.reservedPhysicalMachines.get(i));
 			}
 		}
 		
-		return backups;
+		return hostingServers;
 	}
 	
 	
 	/**
-	 * This function sets the reservedBandwidth array of the request
+	 * This function sets the reservedBandwidth array of the request.
+	 * Only the links of the request footprint are visited (they are added to it when reserving bandwidth),
+	 * the entries are kept ordered by link continuous id
 	 * 
 	 * @param treeNetwork network where the request is embedded
 	 */
 	public void updateReservedBandwidth(FatTreeNetwork treeNetwork)
 	{
-		Link[] links = treeNetwork.getLinks();
 		Link l = null;
-		int[] reservedBandwidth = null;;
-		int[] bandwidthForRequest = null;
+		int[] reservedBandwidth = null;
+		int position;
 		
 		//reset the reserved bandwidth
 		this.reservedBandwidth = null;
-		this.reservedBandwidth = new ArrayList<int[]>();
+		this.reservedBandwidth = new ArrayList<int[]>(this.reservedLinks.size());
 	
 		//no need to set reserved bandwidth if request is not admitted
 		if (!this.admitted)
@@ -174,45 +250,60 @@ public class Request {
 			return;
 		}
 		
-		//loop over network links
-		for (int i = 0; i<links.length; i++)
+		//loop over the links on which bandwidth was reserved for the request
+		for (int i = 0; i<this.reservedLinks.size(); i++)
 		{
-			l = links[i];
+			l = this.reservedLinks.get(i);
 			
-			//get reserved bandwidth for the request on each link
-			for (int j=0; j<l.bandwidthForRequests.size(); j++)
+			//if no reserved bandwidth on the specified link no need to save an array for it
+			if (!l.bandwidthForRequests.contains(this.id))
 			{
-				bandwidthForRequest = new int[3];
-				bandwidthForRequest = l.bandwidthForRequests.get(j);
-				
-				if (bandwidthForRequest[0] == this.id)
-				{
-					reservedBandwidth  = new int[3];
-					reservedBandwidth[0] = l.continuousId;
-					
-					//set bandwidth reserved for primary Vms
-					reservedBandwidth[1] = bandwidthForRequest[1];
-					
-					//set the bandwidth reserved for backup Vms
-					reservedBandwidth[2] = bandwidthForRequest[2];
-					
-					
-				}
-				
-				bandwidthForRequest = null;
+				continue;
 			}
 			
-			//if no reserved bandwidth on the specified link no need to save an array for it
-			if (reservedBandwidth == null)
+			reservedBandwidth  = new int[3];
+			reservedBandwidth[0] = l.continuousId;
+			
+			//set bandwidth reserved for primary Vms
+			reservedBandwidth[1] = l.bandwidthForRequests.getPrimary(this.id);
+			
+			//set the bandwidth reserved for backup Vms
+			reservedBandwidth[2] = l.bandwidthForRequests.getBackup(this.id);
+			
+			//the footprint is mostly ordered (links are reserved from the servers up), find the position from the end
+			position = this.reservedBandwidth.size();
+			
+			while (position > 0 && this.reservedBandwidth.get(position-1)[0] > l.continuousId)
 			{
-				continue;
+				position--;
 			}
-					
 			
-			this.reservedBandwidth.add(reservedBandwidth);
+			this.reservedBandwidth.add(position, reservedBandwidth);
 			reservedBandwidth  = null;			
 		}		
 		
+		//empty memory
+		l = null;
+	}
+	
+	
+	/**
+	 * This function returns the total bandwidth (primary+backup) of the reservedBandwidth array of the request
+	 * 
+	 * @return total reserved bandwidth
+	 */
+	public int getTotalReservedBandwidth ()
+	{
+		int reservedBw = 0;
+		int[] bandwidth = null;
+		
+		for (int i=0; i<this.reservedBandwidth.size(); i++)
+		{
+			bandwidth = this.reservedBandwidth.get(i);
+			reservedBw+= bandwidth[1]+bandwidth[2];
+		}
+		
+		return reservedBw;
 	}
 	
 	
@@ -225,9 +316,9 @@ public class Request {
 	{
 		int backups =0;
 		
-		for( int i=0; i<this.virtualMachinesSet.size(); i++)
+		for( int i=0; i<this.reservedSlots.size(); i++)
 		{
-			if (this.virtualMachinesSet.get(i).vmType == VirtualMachine.Type.BACKUP)
+			if (this.reservedSlots.getMachine(i).getSlotType(this.reservedSlots.getVmIndex(i)) == VirtualMachine.Type.BACKUP)
 			{
 				backups++;
 			}
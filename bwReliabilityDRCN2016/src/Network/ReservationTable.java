@@ -0,0 +1,380 @@
+package Network;
+
+/**
+ * This class defines a table keyed by request id that holds a primary and a backup
+ * amount reserved for each request (for example the primary and backup bandwidth reserved on a link)
+ *
+ * It uses open addressing with linear probing over primitive arrays so that
+ * set, get and remove are O(1) and do not allocate any object (except when the table grows)
+ *
+ * @author Hyame
+ *
+ */
+public class ReservationTable {
+
+	//value of a key in an empty slot of the table
+	public static final int EMPTY = -1;
+
+	//initial number of slots, should be a power of 2
+	private static final int INITIAL_CAPACITY = 8;
+
+	//shared table without any entry, used by the links and physical machines until their first reservation.
+	//It can be read but no entry can be added to it
+	public static final ReservationTable NONE = new ReservationTable(1);
+
+	//requests id, EMPTY if the slot is not used
+	private int keys [];
+
+	//primary amount reserved for the request of the same slot
+	private int primary [];
+
+	//backup amount reserved for the request of the same slot
+	private int backup [];
+
+	//number of requests in the table
+	private int size;
+
+
+	/**
+	 * Constructor
+	 */
+	public ReservationTable()
+	{
+		this.allocate(INITIAL_CAPACITY);
+	}
+
+
+	/**
+	 * Constructor of a table with the specified number of slots
+	 *
+	 * @param capacity number of slots (power of 2)
+	 */
+	private ReservationTable(int capacity)
+	{
+		this.allocate(capacity);
+	}
+
+
+	/**
+	 * This function allocates empty arrays of the specified capacity
+	 *
+	 * @param capacity number of slots (power of 2)
+	 */
+	private void allocate (int capacity)
+	{
+		this.keys = new int [capacity];
+		this.primary = new int [capacity];
+		this.backup = new int [capacity];
+		this.size = 0;
+
+		for (int i=0; i<capacity; i++)
+		{
+			this.keys[i] = EMPTY;
+		}
+	}
+
+
+	/**
+	 * This function returns the slot where the search for the request id starts
+	 *
+	 * @param requestId
+	 * @return slot index
+	 */
+	private int hash (int requestId)
+	{
+		int h = requestId * 0x9E3779B9;
+
+		return (h ^ (h >>> 16)) & (this.keys.length - 1);
+	}
+
+
+	/**
+	 * This function returns the slot holding the request
+	 *
+	 * @param requestId
+	 * @return slot index or -1 if the request is not in the table
+	 */
+	private int indexOf (int requestId)
+	{
+		int mask = this.keys.length - 1;
+		int i = this.hash(requestId);
+
+		while (this.keys[i] != EMPTY)
+		{
+			if (this.keys[i] == requestId)
+			{
+				return i;
+			}
+
+			i = (i+1) & mask;
+		}
+
+		return -1;
+	}
+
+
+	/**
+	 * This function returns the slot holding the request and adds the request
+	 * with 0 primary and backup amounts if it is not in the table
+	 *
+	 * @param requestId
+	 * @return slot index
+	 */
+	private int indexOfOrInsert (int requestId)
+	{
+		int mask;
+		int i;
+
+		if (this == NONE)
+		{
+			throw new IllegalStateException("no reservation can be added to the shared empty table");
+		}
+
+		//keep the load factor under 0.5
+		if ((this.size+1)*2 > this.keys.length)
+		{
+			this.grow();
+		}
+
+		mask = this.keys.length - 1;
+		i = this.hash(requestId);
+
+		while (this.keys[i] != EMPTY)
+		{
+			if (this.keys[i] == requestId)
+			{
+				return i;
+			}
+
+			i = (i+1) & mask;
+		}
+
+		this.keys[i] = requestId;
+		this.primary[i] = 0;
+		this.backup[i] = 0;
+		this.size++;
+
+		return i;
+	}
+
+
+	/**
+	 * This function doubles the number of slots of the table
+	 */
+	private void grow ()
+	{
+		int oldKeys [] = this.keys;
+		int oldPrimary [] = this.primary;
+		int oldBackup [] = this.backup;
+		int i;
+
+		this.allocate(oldKeys.length*2);
+
+		for (int j=0; j<oldKeys.length; j++)
+		{
+			if (oldKeys[j] == EMPTY)
+			{
+				continue;
+			}
+
+			i = this.indexOfOrInsert(oldKeys[j]);
+			this.primary[i] = oldPrimary[j];
+			this.backup[i] = oldBackup[j];
+		}
+	}
+
+
+	/**
+	 * This function returns true if the request has an entry in the table
+	 *
+	 * @param requestId
+	 * @return boolean
+	 */
+	public boolean contains (int requestId)
+	{
+		return this.indexOf(requestId) != -1;
+	}
+
+
+	/**
+	 * This function returns the primary amount reserved for the request
+	 *
+	 * @param requestId
+	 * @return primary amount, 0 if the request is not in the table
+	 */
+	public int getPrimary (int requestId)
+	{
+		int i = this.indexOf(requestId);
+
+		return i == -1 ? 0 : this.primary[i];
+	}
+
+
+	/**
+	 * This function returns the backup amount reserved for the request
+	 *
+	 * @param requestId
+	 * @return backup amount, 0 if the request is not in the table
+	 */
+	public int getBackup (int requestId)
+	{
+		int i = this.indexOf(requestId);
+
+		return i == -1 ? 0 : this.backup[i];
+	}
+
+
+	/**
+	 * This function sets the primary amount reserved for the request
+	 * The request is added to the table if it does not have an entry
+	 *
+	 * @param requestId
+	 * @param amount
+	 */
+	public void setPrimary (int requestId, int amount)
+	{
+		//the slot is computed first since the table arrays may be replaced when it grows
+		int i = this.indexOfOrInsert(requestId);
+
+		this.primary[i] = amount;
+	}
+
+
+	/**
+	 * This function sets the backup amount reserved for the request
+	 * The request is added to the table if it does not have an entry
+	 *
+	 * @param requestId
+	 * @param amount
+	 */
+	public void setBackup (int requestId, int amount)
+	{
+		//the slot is computed first since the table arrays may be replaced when it grows
+		int i = this.indexOfOrInsert(requestId);
+
+		this.backup[i] = amount;
+	}
+
+
+	/**
+	 * This function removes the entry of the request from the table.
+	 * The following entries of the probe sequence are shifted back so that no tombstones are needed
+	 *
+	 * @param requestId
+	 * @return true if the request had an entry in the table
+	 */
+	public boolean remove (int requestId)
+	{
+		int mask = this.keys.length - 1;
+		int i = this.indexOf(requestId);
+		int j;
+		int home;
+
+		if (i == -1)
+		{
+			return false;
+		}
+
+		j = i;
+
+		while (true)
+		{
+			j = (j+1) & mask;
+
+			if (this.keys[j] == EMPTY)
+			{
+				break;
+			}
+
+			home = this.hash(this.keys[j]);
+
+			//move the entry of slot j to the free slot i if i is between its home slot and j (cyclically)
+			if ( ((j-home) & mask) >= ((j-i) & mask) )
+			{
+				this.keys[i] = this.keys[j];
+				this.primary[i] = this.primary[j];
+				this.backup[i] = this.backup[j];
+				i = j;
+			}
+		}
+
+		this.keys[i] = EMPTY;
+		this.primary[i] = 0;
+		this.backup[i] = 0;
+		this.size--;
+
+		return true;
+	}
+
+
+	/**
+	 * This function removes all the entries of the table
+	 */
+	public void clear ()
+	{
+		if (this.size == 0)
+		{
+			return;
+		}
+		
+		for (int i=0; i<this.keys.length; i++)
+		{
+			this.keys[i] = EMPTY;
+			this.primary[i] = 0;
+			this.backup[i] = 0;
+		}
+
+		this.size = 0;
+	}
+
+
+	/**
+	 * @return number of requests in the table
+	 */
+	public int size ()
+	{
+		return this.size;
+	}
+
+
+	/**
+	 * This function returns the number of slots of the table.
+	 * It is used with getKeyAt() to loop over the entries of the table
+	 *
+	 * @return number of slots
+	 */
+	public int getSlotsNb ()
+	{
+		return this.keys.length;
+	}
+
+
+	/**
+	 * @param slot
+	 * @return request id held by the slot or EMPTY
+	 */
+	public int getKeyAt (int slot)
+	{
+		return this.keys[slot];
+	}
+
+
+	/**
+	 * @param slot
+	 * @return primary amount held by the slot
+	 */
+	public int getPrimaryAt (int slot)
+	{
+		return this.primary[slot];
+	}
+
+
+	/**
+	 * @param slot
+	 * @return backup amount held by the slot
+	 */
+	public int getBackupAt (int slot)
+	{
+		return this.backup[slot];
+	}
+}
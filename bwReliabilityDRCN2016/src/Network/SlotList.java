@@ -0,0 +1,144 @@
+package Network;
+
+/**
+ * This class defines the list of the VM slots reserved for a request.
+ * Each entry is a physical machine and the index of the VM on it, kept in parallel arrays.
+ *
+ * The position of each slot in the list is kept in the network state so that a slot is removed in O(1)
+ * by moving the last entry of the list to its position (the order of the list is not kept)
+ *
+ * @author Hyame
+ *
+ */
+public class SlotList {
+
+	//initial number of entries of the list
+	private static final int INITIAL_CAPACITY = 8;
+
+	//physical machine of each entry
+	private PhysicalMachine machines [];
+
+	//index of the VM on the physical machine of each entry
+	private int vmIndexes [];
+
+	//number of entries in the list
+	private int size;
+
+
+	/**
+	 * Constructor
+	 */
+	public SlotList ()
+	{
+		this.machines = new PhysicalMachine [INITIAL_CAPACITY];
+		this.vmIndexes = new int [INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+
+	/**
+	 * @return number of reserved slots
+	 */
+	public int size ()
+	{
+		return this.size;
+	}
+
+
+	/**
+	 * @param position position in the list
+	 * @return physical machine of the slot
+	 */
+	public PhysicalMachine getMachine (int position)
+	{
+		return this.machines[position];
+	}
+
+
+	/**
+	 * @param position position in the list
+	 * @return index of the VM on its physical machine
+	 */
+	public int getVmIndex (int position)
+	{
+		return this.vmIndexes[position];
+	}
+
+
+	/**
+	 * This function adds the slot at the end of the list
+	 *
+	 * @param pm
+	 * @param vmIndex index of the VM on pm
+	 */
+	void add (PhysicalMachine pm, int vmIndex)
+	{
+		PhysicalMachine oldMachines [];
+		int oldVmIndexes [];
+
+		if (this.size == this.machines.length)
+		{
+			oldMachines = this.machines;
+			oldVmIndexes = this.vmIndexes;
+
+			this.machines = new PhysicalMachine [this.size*2];
+			this.vmIndexes = new int [this.size*2];
+
+			System.arraycopy(oldMachines, 0, this.machines, 0, this.size);
+			System.arraycopy(oldVmIndexes, 0, this.vmIndexes, 0, this.size);
+		}
+
+		this.set(this.size, pm, vmIndex);
+		this.size++;
+	}
+
+
+	/**
+	 * This function removes the entry at the specified position by moving the last entry to it
+	 *
+	 * @param position position of the slot to remove
+	 */
+	void remove (int position)
+	{
+		this.size--;
+
+		if (position != this.size)
+		{
+			this.set(position, this.machines[this.size], this.vmIndexes[this.size]);
+		}
+
+		//empty memory
+		this.machines[this.size] = null;
+	}
+
+
+	/**
+	 * This function swaps two entries of the list (used to restore the order of the list when rolling back a removal)
+	 *
+	 * @param position1
+	 * @param position2
+	 */
+	void swap (int position1, int position2)
+	{
+		PhysicalMachine pm = this.machines[position1];
+		int vmIndex = this.vmIndexes[position1];
+
+		this.set(position1, this.machines[position2], this.vmIndexes[position2]);
+		this.set(position2, pm, vmIndex);
+	}
+
+
+	/**
+	 * This function sets the entry at the specified position and keeps its position in the network state
+	 *
+	 * @param position
+	 * @param pm
+	 * @param vmIndex
+	 */
+	private void set (int position, PhysicalMachine pm, int vmIndex)
+	{
+		this.machines[position] = pm;
+		this.vmIndexes[position] = vmIndex;
+		pm.getState().setSlotPosition(pm.firstSlot + vmIndex, position);
+	}
+}
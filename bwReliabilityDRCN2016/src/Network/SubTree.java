@@ -19,6 +19,10 @@ public class SubTree {
 	//list of all links in the sub tree
 	public ArrayList <Link> links;
 	
+	//range of the ids of the physical machines of the sub tree (empty range if the sub tree is not built from the network)
+	public int firstPm;
+	public int lastPm;
+	
 	
 	public SubTree(Node rootNode)
 	{
@@ -34,6 +38,8 @@ public class SubTree {
 		this.physicalMachines =  new ArrayList<PhysicalMachine>();
 		this.links =  new ArrayList<Link>();
 		this.fatTreeNetwork = null;
+		this.firstPm = 0;
+		this.lastPm = -1;
 	}
 	
 	
@@ -44,6 +50,22 @@ public class SubTree {
 		this.physicalMachines = physicalMachines;
 		this.links = links;
 		this.fatTreeNetwork = fatTreeNetwork;
+		this.firstPm = 0;
+		this.lastPm = -1;
+		
+		//the physical machines of a sub tree have contiguous ids
+		for (int i=0; i<physicalMachines.size(); i++)
+		{
+			if (i == 0 || physicalMachines.get(i).id < this.firstPm)
+			{
+				this.firstPm = physicalMachines.get(i).id;
+			}
+			
+			if (physicalMachines.get(i).id > this.lastPm)
+			{
+				this.lastPm = physicalMachines.get(i).id;
+			}
+		}
 	}
 	
 	
@@ -57,15 +79,32 @@ public class SubTree {
 	public Link searchLink (Node sourceNode)
 	{
 		Link l=null;
+		Node ancestor = null;
 		
-		for(int i=0; i<links.size(); i++)
+		//the link having the root node as source does not belong to the sub tree
+		if (this.fatTreeNetwork == null || sourceNode.level >= this.rootNode.level)
 		{
-			l = links.get(i);
-			
-			if (l.sourceNode.equals(sourceNode))
-			{
-				return l;
-			}
+			return null;
+		}
+		
+		l = this.fatTreeNetwork.searchLink(sourceNode);
+		
+		if (l == null)
+		{
+			return null;
+		}
+		
+		//climb up to the level of the root node to check that the link belongs to the sub tree
+		ancestor = l.destinationNode;
+		
+		while (ancestor.level < this.rootNode.level)
+		{
+			ancestor = this.fatTreeNetwork.searchLink(ancestor).destinationNode;
+		}
+		
+		if (ancestor.equals(this.rootNode))
+		{
+			return l;
 		}
 		
 		return null;
@@ -90,7 +129,7 @@ public class SubTree {
 		{
 			allocation = physicalVMAllocation.get(i);
 			
-			if ( this.belongToSwitchSubtree (s,allocation[0], false))
+			if ( s.containsPhysicalMachine(allocation[0]))
 			{
 				allocatedVMs+= allocation[1];
 			}
@@ -112,32 +151,7 @@ public class SubTree {
 	 */
 	public boolean belongToSwitchSubtree (Switch s, int physicalMachineId, boolean belongsToSubtree)
 	{
-		//loop over the sub tree links
-		for ( int i=0; i<this.links.size(); i++)
-		{
-			//check for the link having the switch as destination node
-			if (!links.get(i).destinationNode.equals(s))
-			{
-				continue;
-			}
-			
-			//if we are not at the TOR switch then we need to call the function again
-			if (s.level != 1)
-			{
-				belongsToSubtree = this.belongToSwitchSubtree ((Switch)links.get(i).sourceNode, physicalMachineId, belongsToSubtree);
-				
-			}
-			
-			//we are at level 1 then we should check if the physical machine is under the switch
-			if (links.get(i).sourceNode.level == 0 && links.get(i).sourceNode.id == physicalMachineId)
-			{
-				belongsToSubtree = true;
-				
-			}
-		}
-		
-		return belongsToSubtree;
-		
+		return belongsToSubtree || s.containsPhysicalMachine(physicalMachineId);
 	}
 	
 	
@@ -170,7 +184,7 @@ public class SubTree {
 		}
 		
 		//if the request is embedded on one server only we can not collocate
-		if (request.subtree.getHostingServers(request).size() == 1)
+		if (request.getNbOfHostingServers() == 1)
 		{
 			return false;
 		}
@@ -206,6 +220,12 @@ public class SubTree {
 	{
 		int availableVms = 0;
 		
+		//the available Vms of a subtree built from the network are kept on its root switch
+		if (this.fatTreeNetwork != null && this.rootNode.level > 0)
+		{
+			return ((Switch)this.rootNode).getAvailableVMs();
+		}
+		
 		for (int i =0; i<this.physicalMachines.size(); i++)
 		{
 			availableVms+=this.physicalMachines.get(i).getAvailableVM();
@@ -215,6 +235,24 @@ public class SubTree {
 	}
 	
 	
+	/**
+	 * This function returns the maximum residual bandwidth of the links between the physical machines 
+	 * of the sub tree and their TOR switch
+	 * 
+	 * @return maximum server bandwidth
+	 */
+	public int getMaxServerBandwidth ()
+	{
+		//the summary is only kept on the switches of the network
+		if (this.fatTreeNetwork == null || this.rootNode.level == 0)
+		{
+			return 0;
+		}
+		
+		return ((Switch)this.rootNode).getMaxServerBandwidth();
+	}
+	
+	
 	/**
 	 * This function returns the physical machine in the subtree based on its id
 	 * @param id physical machine id
@@ -247,32 +285,19 @@ public class SubTree {
 		ArrayList<SubTree> childTrees = new ArrayList <SubTree>();
 		Link l;
 		SubTree s = null;
-		PhysicalMachine pm;
 		
-		//loop over subtree links
-		for(int i = 0; i<this.links.size(); i++)
+		//the links directly related to the rootNode specify the child trees
+		Link [] childLinks = this.fatTreeNetwork.getChildLinks(this.rootNode);
+		
+		//loop over the child links
+		for(int i = 0; i<childLinks.length; i++)
 		{ 
-			l = this.links.get(i);
+			l = childLinks[i];
 			
-			//check  the link directly related to the rootNode; they will specify the child trees
-			if (l.destinationNode.equals( this.rootNode))
-			{
-				//create subtree having link source as rootNode
-				if(this.rootNode.level != 1)
-				{
-					s = new SubTree(l.sourceNode);
-					this.fatTreeNetwork.buildSubTree(s, l.sourceNode);
-				}
-				else
-				{
-					// in this case the subtree is a physical machine, we will  only set the available Vms instead of building the tree
-					s = new SubTree(l.sourceNode);
-					pm = (PhysicalMachine)s.rootNode;
-					
-				}
-				
-				childTrees.add(s);
-			}
+			//get the subtree having link source as rootNode (if the source is a physical machine the subtree only holds the root node)
+			s = this.fatTreeNetwork.getSubTree(l.sourceNode);
+			
+			childTrees.add(s);
 		}
 		 
 		return childTrees;
@@ -295,19 +320,27 @@ public class SubTree {
 		int hostedVms = 0;
 		int leastHostedVms = 0;
 		
-		for (int i=0; i<this.physicalMachines.size(); i++)
+		//all the servers hosting primary Vms of the request are in this subtree, use the request statistics
+		if (request.subtree != null && request.subtree.rootNode.level > 0 && this.firstPm <= request.subtree.firstPm && request.subtree.lastPm <= this.lastPm)
+		{
+			return request.getMinHostedVms();
+		}
+		
+		//only the servers where the request reserved Vms can host its primary Vms
+		for (int i=0; i<request.reservedPhysicalMachines.size(); i++)
 		{
-			pm = this.physicalMachines.get(i);
+			pm = request.reservedPhysicalMachines.get(i);
 			hostedVms = pm.getHostedVms (request);
 			
-			//initialize leastHostedVms
-			if (hostedVms!=0 && leastHostedVms == 0)
+			if (hostedVms == 0 || !this.containsPhysicalMachine(pm))
 			{
-				leastHostedVms = hostedVms;
+				continue;
 			}
-			else if (hostedVms!=0 && hostedVms < leastHostedVms)
+			
+			//initialize leastHostedVms
+			if (leastHostedVms == 0 || hostedVms < leastHostedVms)
 			{
-				leastHostedVms = hostedVms;				
+				leastHostedVms = hostedVms;
 			}
 		}
 		
@@ -327,16 +360,35 @@ public class SubTree {
 	public int getHostedVms (Request request)
 	{
 		int hostedVms =0;
+		PhysicalMachine pm;
 		
-		for (int i=0; i<this.physicalMachines.size(); i++)
+		for (int i=0; i<request.reservedPhysicalMachines.size(); i++)
 		{
-			hostedVms += this.physicalMachines.get(i).getHostedVms (request);
+			pm = request.reservedPhysicalMachines.get(i);
+			
+			if (this.containsPhysicalMachine(pm))
+			{
+				hostedVms += pm.getHostedVms (request);
+			}
 		}
 		
 		return hostedVms;
 	}
 	
 	
+	/**
+	 * This function returns true if the physical machine belongs to the sub tree
+	 * 
+	 * @param pm physical machine
+	 * 
+	 * @return boolean
+	 */
+	public boolean containsPhysicalMachine (PhysicalMachine pm)
+	{
+		return pm.id >= this.firstPm && pm.id <= this.lastPm;
+	}
+	
+	
 	/**
 	 * This function return an array of physical server of this subtree
 	 * that are not hosting any primary Vms for the specified request
@@ -393,17 +445,13 @@ public class SubTree {
 	public SubTree getParentTree()
 	{
 		SubTree parentTree = null;
-		Link [] links = null;
 		
-		links = this.fatTreeNetwork.getLinksSetPerTreeLevel(this.rootNode.level+1);
-		for (int i = 0; i< links.length; i++)
+		//the link having the root node as source connects the sub tree to its parent
+		Link l = this.fatTreeNetwork.searchLink(this.rootNode);
+		
+		if (l != null)
 		{
-			if (links[i].sourceNode.equals(this.rootNode))
-			{
-				parentTree = new SubTree (links[i].destinationNode);
-				this.fatTreeNetwork.buildSubTree(parentTree, links[i].destinationNode);
-				break;
-			}
+			parentTree = this.fatTreeNetwork.getSubTree(l.destinationNode);
 		}
 		
 		return parentTree;
@@ -419,26 +467,16 @@ public class SubTree {
 	 */
 	public ArrayList<PhysicalMachine> orderMachinesByAvailableVms (ArrayList<PhysicalMachine> physicalMachinesList)
 	{
-		PhysicalMachine tempPm1, tempPm2;
-	
+		int availableVms [] = new int [physicalMachinesList.size()];
 		
+		//negative keys for a descending order
 		for (int i=0; i<physicalMachinesList.size(); i++)
 		{	
-			tempPm1 = physicalMachinesList.get(i);
-			
-			for ( int j=i+1; j< physicalMachinesList.size(); j++)
-			{	
-				tempPm2 = physicalMachinesList.get(j);
-				
-				//compare the number of available VMs
-				if (tempPm2.getAvailableVM() > tempPm1.getAvailableVM())
-				{					
-					physicalMachinesList.set (i,tempPm2);
-					physicalMachinesList.set (j,tempPm1);
-				}
-			}
+			availableVms[i] = -physicalMachinesList.get(i).getAvailableVM();
 		}
 		
+		FatTreeNetwork.sortByKeys(physicalMachinesList, availableVms);
+		
 		return physicalMachinesList;
 		
 	}
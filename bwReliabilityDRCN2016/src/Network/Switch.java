@@ -13,6 +13,22 @@ public class Switch extends Node{
 	public static final String AGGREGATE_TYPE = "AggregateSwitch";
 	public static final String CORE_TYPE = "CoreSwitch";
 	
+	//links having this switch as destination (set when building the topology index of the network)
+	public Link childLinks [];
+	
+	/*
+	 * range of the ids of the physical machines under this switch (set when building the topology index of the network)
+	 * The links are generated by consecutive blocks so the physical machines under a switch have contiguous ids
+	 */
+	public int firstPm;
+	public int lastPm;
+	
+	//nb of un-reserved VMs on the physical machines under this switch
+	private int availableVMs;
+	
+	//maximum residual bandwidth of the physical machines links under this switch (the links bandwidth may be reserved by several threads)
+	private volatile int maxServerBandwidth;
+	
 	
 	/**
 	 * General constructor
@@ -28,45 +44,229 @@ public class Switch extends Node{
 	 * 
 	 * @param id
 	 * @param type
+	 * @param level level of the switch in the tree (1 for the TOR switches)
 	 */
-	public Switch (int id, String type)
+	public Switch (int id, String type, int level)
 	{
 		
 		this.id = id;
 		this.type = type;
-		this.level = this.getLevelBasedOnType();
+		this.level = level;
 				
 		
 	}
 	
 	
 	/**
-	 * This function returns the level of the switch in the tree
-	 * based on its type
+	 * This function returns the type of the switches of a level: 
+	 * TOR switches at level 1, core switches at the highest level and aggregate switches in between
 	 * 
-	 * @return level of the switch
+	 * @param level level of the switch
+	 * @param height height of the tree
+	 * @return type of the switch
 	 */
-	public int getLevelBasedOnType()
+	public static String getTypePerLevel (int level, int height)
 	{
+		if (level == 1)
+		{
+			return TOR_TYPE;
+		}
 		
-		int level = 0;
+		if (level == height)
+		{
+			return CORE_TYPE;
+		}
 		
-		switch (this.type) 
+		return AGGREGATE_TYPE;
+	}
+	
+	
+	/**
+	 * This function returns true if the physical machine is under this switch
+	 * 
+	 * @param physicalMachineId
+	 * @return boolean
+	 */
+	public boolean containsPhysicalMachine (int physicalMachineId)
+	{
+		return physicalMachineId >= this.firstPm && physicalMachineId <= this.lastPm;
+	}
+	
+	
+	/**
+	 * This function sets the range of the physical machines ids under this switch from its children.
+	 * The ranges of the child switches should be computed before calling it
+	 */
+	void computePhysicalMachinesRange ()
+	{
+		int first;
+		int last;
+		
+		this.firstPm = Integer.MAX_VALUE;
+		this.lastPm = -1;
+		
+		for (int i=0; i<this.childLinks.length; i++)
 		{
-			case TOR_TYPE:
-				level = 1;
-				break;
-			case AGGREGATE_TYPE:
-				level = 2;
-				break;
-			case CORE_TYPE:
-				level = 3;
-				break;
+			if (this.level == 1)
+			{
+				first = this.childLinks[i].sourceNode.id;
+				last = first;
+			}
+			else
+			{
+				first = ((Switch)this.childLinks[i].sourceNode).firstPm;
+				last = ((Switch)this.childLinks[i].sourceNode).lastPm;
+			}
+			
+			this.firstPm = first < this.firstPm ? first : this.firstPm;
+			this.lastPm = last > this.lastPm ? last : this.lastPm;
+		}
+	}
+	
+	
+	/**
+	 * @return number of un-reserved VMs on the physical machines under this switch
+	 */
+	public int getAvailableVMs()
+	{
+		return this.availableVMs;
+	}
+	
+	
+	/**
+	 * @return maximum residual bandwidth of the links between the physical machines under this switch and their TOR switch
+	 */
+	public int getMaxServerBandwidth()
+	{
+		return this.maxServerBandwidth;
+	}
+	
+	
+	/**
+	 * This function updates the number of available VMs of this switch and of its ancestors
+	 * when VMs are reserved/released on a physical machine under it
+	 * 
+	 * The core switches are shared by all the pods so they are updated under their own lock
+	 * (the pods may be changed concurrently, see PodLocks)
+	 * 
+	 * @param variation number of VMs that became available (negative if VMs were reserved)
+	 */
+	void updateAvailableVMs (int variation)
+	{
+		for (Switch s = this; s != null; s = s.parent)
+		{
+			if (s.parent == null)
+			{
+				synchronized (s)
+				{
+					s.availableVMs += variation;
+				}
+			}
+			else
+			{
+				s.availableVMs += variation;
+			}
+		}
+	}
+	
+	
+	/**
+	 * This function recomputes the maximum residual bandwidth of the physical machines links 
+	 * under this switch and propagates it to the ancestors until it does not change anymore.
+	 * It is called when the bandwidth of a physical machine link changes.
+	 * 
+	 * Each switch is recomputed under its own lock since the links bandwidth may be reserved 
+	 * by several threads (ledger reservations, concurrent pods below a core switch): 
+	 * the last thread recomputing a switch sees the changes of all its children
+	 */
+	void updateMaxServerBandwidth ()
+	{
+		for (Switch s = this; s != null; s = s.parent)
+		{
+			if (!s.refreshMaxServerBandwidth())
+			{
+				return;
+			}
+		}
+	}
+	
+	
+	/**
+	 * This function recomputes the maximum residual bandwidth of the servers links of this switch
+	 * 
+	 * @return true if it changed
+	 */
+	private synchronized boolean refreshMaxServerBandwidth ()
+	{
+		int maxBandwidth = this.computeMaxServerBandwidth();
+		
+		if (maxBandwidth == this.maxServerBandwidth)
+		{
+			return false;
 		}
 		
-		return level;
+		this.maxServerBandwidth = maxBandwidth;
 		
+		return true;
 	}
 	
 	
+	/**
+	 * This function computes the maximum residual bandwidth of the physical machines links
+	 * under this switch from its child links (TOR switch) or from its child switches
+	 * 
+	 * @return maximum residual bandwidth
+	 */
+	private int computeMaxServerBandwidth ()
+	{
+		int maxBandwidth = 0;
+		int bandwidth;
+		
+		for (int i=0; i<this.childLinks.length; i++)
+		{
+			if (this.level == 1)
+			{
+				bandwidth = this.childLinks[i].getBandwidth();
+			}
+			else
+			{
+				bandwidth = ((Switch)this.childLinks[i].sourceNode).maxServerBandwidth;
+			}
+			
+			if (bandwidth > maxBandwidth)
+			{
+				maxBandwidth = bandwidth;
+			}
+		}
+		
+		return maxBandwidth;
+	}
+	
+	
+	/**
+	 * This function recomputes the available VMs and the maximum residual bandwidth of the servers links
+	 * of this switch from its children. The children summaries should be computed before calling it
+	 */
+	void refreshSummaries ()
+	{
+		Node child;
+		
+		this.availableVMs = 0;
+		
+		for (int i=0; i<this.childLinks.length; i++)
+		{
+			child = this.childLinks[i].sourceNode;
+			
+			if (this.level == 1)
+			{
+				this.availableVMs += ((PhysicalMachine)child).getAvailableVM();
+			}
+			else
+			{
+				this.availableVMs += ((Switch)child).availableVMs;
+			}
+		}
+		
+		this.maxServerBandwidth = this.computeMaxServerBandwidth();
+	}
 }
@@ -0,0 +1,404 @@
+package Network;
+import java.util.ArrayList;
+
+/**
+ * This class defines the undo log of the network state.
+ * When a checkpoint is marked, each change done on the network (VM reservation/release, link bandwidth
+ * reservation/release, request footprint update, backup to primary VM mapping) is recorded so that it can be undone exactly by a rollback.
+ * A commit keeps the changes and forgets them once no checkpoint is active anymore.
+ *
+ * The entries are kept in parallel arrays so that logging a change does not allocate any object
+ * (except when the log grows or when the whole footprint of a request is cleared)
+ *
+ * @author Hyame
+ *
+ */
+public class UndoLog {
+
+	//types of the logged changes
+	private static final int LINK_RESERVATION = 0;
+	private static final int LINK_FOOTPRINT_ADD = 1;
+	private static final int MACHINE_FOOTPRINT_ADD = 2;
+	private static final int VM_RESERVE = 3;
+	private static final int VM_RELEASE = 4;
+	private static final int FOOTPRINT_CLEAR = 5;
+	private static final int BACKUP_MAPPING_ADD = 6;
+	private static final int BACKUP_MAPPING_REMOVE = 7;
+	private static final int BACKUP_MAPPING_CLEAR = 8;
+
+	//initial number of entries of the log
+	private static final int INITIAL_CAPACITY = 64;
+
+	//type of each entry
+	private int changeType [];
+
+	//changed element (link, physical machine or request) of each entry
+	private Object target [];
+
+	//additional element of each entry (request of the released VM, footprint copies, mapped primary VMs)
+	private Object extra [];
+
+	//values needed to undo the entry (bandwidth variation, old reserved amounts, index in the request VM list, VM type...)
+	private int value1 [];
+	private int value2 [];
+	private int value3 [];
+	private int value4 [];
+
+	//number of entries in the log
+	private int size;
+
+	//number of active checkpoints
+	private int depth;
+
+	//size of the log when each active checkpoint was marked, from the outermost to the innermost
+	private int checkpoints [];
+
+	//true while the log is undoing changes, the undo operations are not logged
+	private boolean rollingBack;
+
+
+	/**
+	 * Constructor
+	 */
+	public UndoLog ()
+	{
+		this.allocate(INITIAL_CAPACITY);
+		this.size = 0;
+		this.depth = 0;
+		this.checkpoints = new int [8];
+		this.rollingBack = false;
+	}
+
+
+	/**
+	 * This function allocates the entries arrays with the specified capacity and copies the existing entries
+	 *
+	 * @param capacity
+	 */
+	private void allocate (int capacity)
+	{
+		int oldChangeType [] = this.changeType;
+		Object oldTarget [] = this.target;
+		Object oldExtra [] = this.extra;
+		int oldValue1 [] = this.value1;
+		int oldValue2 [] = this.value2;
+		int oldValue3 [] = this.value3;
+		int oldValue4 [] = this.value4;
+
+		this.changeType = new int [capacity];
+		this.target = new Object [capacity];
+		this.extra = new Object [capacity];
+		this.value1 = new int [capacity];
+		this.value2 = new int [capacity];
+		this.value3 = new int [capacity];
+		this.value4 = new int [capacity];
+
+		if (oldChangeType == null)
+		{
+			return;
+		}
+
+		System.arraycopy(oldChangeType, 0, this.changeType, 0, this.size);
+		System.arraycopy(oldTarget, 0, this.target, 0, this.size);
+		System.arraycopy(oldExtra, 0, this.extra, 0, this.size);
+		System.arraycopy(oldValue1, 0, this.value1, 0, this.size);
+		System.arraycopy(oldValue2, 0, this.value2, 0, this.size);
+		System.arraycopy(oldValue3, 0, this.value3, 0, this.size);
+		System.arraycopy(oldValue4, 0, this.value4, 0, this.size);
+	}
+
+
+	/**
+	 * This function adds an entry to the log
+	 */
+	private void add (int type, Object target, Object extra, int value1, int value2, int value3, int value4)
+	{
+		if (this.size == this.changeType.length)
+		{
+			this.allocate(this.size*2);
+		}
+
+		this.changeType[this.size] = type;
+		this.target[this.size] = target;
+		this.extra[this.size] = extra;
+		this.value1[this.size] = value1;
+		this.value2[this.size] = value2;
+		this.value3[this.size] = value3;
+		this.value4[this.size] = value4;
+		this.size++;
+	}
+
+
+	/**
+	 * @return true if the changes done on the network should be logged
+	 */
+	public boolean isActive ()
+	{
+		return this.depth > 0 && !this.rollingBack;
+	}
+
+
+	/**
+	 * This function marks a checkpoint. The changes done after it can be rolled back or committed
+	 *
+	 * @return checkpoint to pass to rollback() or commit()
+	 */
+	public int checkpoint ()
+	{
+		if (this.depth == this.checkpoints.length)
+		{
+			int oldCheckpoints [] = this.checkpoints;
+			this.checkpoints = new int [this.depth*2];
+			System.arraycopy(oldCheckpoints, 0, this.checkpoints, 0, this.depth);
+		}
+
+		this.checkpoints[this.depth] = this.size;
+		this.depth++;
+
+		return this.size;
+	}
+
+
+	/**
+	 * This function checks that the checkpoint is the innermost active one:
+	 * the checkpoints are rolled back or committed in the reverse order of their marking
+	 *
+	 * @param checkpoint value returned by checkpoint()
+	 */
+	private void checkInnermost (int checkpoint)
+	{
+		if (this.depth == 0 || this.checkpoints[this.depth-1] != checkpoint)
+		{
+			throw new IllegalStateException("checkpoint "+checkpoint+" is not the innermost active checkpoint");
+		}
+	}
+
+
+	/**
+	 * This function undoes all the changes done since the checkpoint, in the reverse order
+	 *
+	 * @param checkpoint value returned by checkpoint()
+	 */
+	public void rollback (int checkpoint)
+	{
+		this.checkInnermost(checkpoint);
+		this.rollingBack = true;
+
+		while (this.size > checkpoint)
+		{
+			this.size--;
+			this.undo(this.size);
+
+			//empty memory
+			this.target[this.size] = null;
+			this.extra[this.size] = null;
+		}
+
+		this.rollingBack = false;
+		this.depth--;
+	}
+
+
+	/**
+	 * This function keeps the changes done since the checkpoint.
+	 * They are kept in the log while an outer checkpoint is active so that it can still roll them back
+	 *
+	 * @param checkpoint value returned by checkpoint()
+	 */
+	public void commit (int checkpoint)
+	{
+		this.checkInnermost(checkpoint);
+		this.depth--;
+
+		if (this.depth == 0)
+		{
+			this.clear();
+		}
+	}
+
+
+	/**
+	 * This function removes all the entries of the log
+	 */
+	private void clear ()
+	{
+		for (int i=0; i<this.size; i++)
+		{
+			this.target[i] = null;
+			this.extra[i] = null;
+		}
+
+		this.size = 0;
+	}
+
+
+	/**
+	 * This function logs the reservation entry of the request on the link before it is changed
+	 *
+	 * @param link
+	 * @param requestId
+	 * @param bandwidthVariation variation of the link residual bandwidth (negative for a reservation)
+	 */
+	void logLinkReservation (Link link, int requestId, int bandwidthVariation)
+	{
+		this.add(LINK_RESERVATION, link, null, requestId, bandwidthVariation, link.bandwidthForRequests.getPrimary(requestId),
+				link.bandwidthForRequests.contains(requestId) ? link.bandwidthForRequests.getBackup(requestId) : -1);
+	}
+
+
+	/**
+	 * This function logs the addition of a link to the request footprint
+	 *
+	 * @param request
+	 */
+	void logLinkFootprintAdd (Request request)
+	{
+		this.add(LINK_FOOTPRINT_ADD, request, null, 0, 0, 0, 0);
+	}
+
+
+	/**
+	 * This function logs the addition of a physical machine to the request footprint
+	 *
+	 * @param request
+	 */
+	void logMachineFootprintAdd (Request request)
+	{
+		this.add(MACHINE_FOOTPRINT_ADD, request, null, 0, 0, 0, 0);
+	}
+
+
+	/**
+	 * This function logs the reservation of a VM
+	 *
+	 * @param pm
+	 * @param vmIndex index of the VM on pm
+	 */
+	void logVmReserve (PhysicalMachine pm, int vmIndex)
+	{
+		this.add(VM_RESERVE, pm, null, vmIndex, 0, 0, 0);
+	}
+
+
+	/**
+	 * This function logs the release of a VM before it is released
+	 *
+	 * @param pm
+	 * @param vmIndex index of the VM on pm
+	 * @param request request of the VM
+	 * @param position position of the VM in the request slot list
+	 * @param VMType type of the VM
+	 */
+	void logVmRelease (PhysicalMachine pm, int vmIndex, Request request, int position, VirtualMachine.Type VMType)
+	{
+		this.add(VM_RELEASE, pm, request, vmIndex, position, VMType.ordinal(), 0);
+	}
+
+
+	/**
+	 * This function logs the footprint of the request before it is cleared
+	 *
+	 * @param request
+	 */
+	void logFootprintClear (Request request)
+	{
+		Object footprint [] = new Object [2];
+
+		footprint[0] = new ArrayList<PhysicalMachine>(request.reservedPhysicalMachines);
+		footprint[1] = new ArrayList<Link>(request.reservedLinks);
+
+		this.add(FOOTPRINT_CLEAR, request, footprint, 0, 0, 0, 0);
+	}
+
+
+	/**
+	 * This function logs the mapping of a primary VM to the backup VM (added at the end of its backed up VMs)
+	 *
+	 * @param backupVM
+	 */
+	void logBackupMappingAdd (VirtualMachine backupVM)
+	{
+		this.add(BACKUP_MAPPING_ADD, backupVM, null, 0, 0, 0, 0);
+	}
+
+
+	/**
+	 * This function logs the mapping of a primary VM to the backup VM before it is removed
+	 *
+	 * @param backupVM
+	 * @param primaryVM
+	 * @param position position of the primary VM in the backed up VMs of the backup
+	 */
+	void logBackupMappingRemove (VirtualMachine backupVM, VirtualMachine primaryVM, int position)
+	{
+		this.add(BACKUP_MAPPING_REMOVE, backupVM, primaryVM, position, 0, 0, 0);
+	}
+
+
+	/**
+	 * This function logs the mappings of the backup VM before they are cleared
+	 *
+	 * @param backupVM
+	 */
+	void logBackupMappingClear (VirtualMachine backupVM)
+	{
+		this.add(BACKUP_MAPPING_CLEAR, backupVM, new ArrayList<VirtualMachine>(backupVM.backedUpVMs), 0, 0, 0, 0);
+	}
+
+
+	/**
+	 * This function undoes the specified entry of the log
+	 *
+	 * @param i entry index
+	 */
+	@SuppressWarnings("unchecked")
+	private void undo (int i)
+	{
+		Request request;
+		PhysicalMachine pm;
+		Object footprint [];
+
+		switch (this.changeType[i])
+		{
+			case LINK_RESERVATION:
+				//value4 is -1 if the request had no entry on the link
+				((Link)this.target[i]).restoreReservation(this.value1[i], this.value2[i], this.value3[i], this.value4[i], this.value4[i] != -1);
+				break;
+			case LINK_FOOTPRINT_ADD:
+				request = (Request)this.target[i];
+				request.reservedLinks.remove(request.reservedLinks.size()-1);
+				break;
+			case MACHINE_FOOTPRINT_ADD:
+				request = (Request)this.target[i];
+				request.reservedPhysicalMachines.remove(request.reservedPhysicalMachines.size()-1);
+				break;
+			case VM_RESERVE:
+				//the VM is the last one of the request slot list since the later changes are already undone
+				((PhysicalMachine)this.target[i]).releaseSlot(this.value1[i]);
+				break;
+			case VM_RELEASE:
+				pm = (PhysicalMachine)this.target[i];
+				request = (Request)this.extra[i];
+				pm.reserveSlot(this.value1[i], request, VirtualMachine.Type.values()[this.value3[i]]);
+
+				//put the VM back at its position in the request slot list (the release moved the last slot there)
+				request.reservedSlots.swap(this.value2[i], request.reservedSlots.size()-1);
+				break;
+			case FOOTPRINT_CLEAR:
+				request = (Request)this.target[i];
+				footprint = (Object [])this.extra[i];
+				request.reservedPhysicalMachines.addAll((ArrayList<PhysicalMachine>)footprint[0]);
+				request.reservedLinks.addAll((ArrayList<Link>)footprint[1]);
+				break;
+			case BACKUP_MAPPING_ADD:
+				((VirtualMachine)this.target[i]).removeLastBackedUpVM();
+				break;
+			case BACKUP_MAPPING_REMOVE:
+				((VirtualMachine)this.target[i]).restoreBackedUpVM((VirtualMachine)this.extra[i], this.value1[i]);
+				break;
+			case BACKUP_MAPPING_CLEAR:
+				((VirtualMachine)this.target[i]).restoreBackedUpVMs((ArrayList<VirtualMachine>)this.extra[i]);
+				break;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package Network;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * This class keeps, for each switches level of the tree below the core, the sub trees ordered (ascending) by the residual bandwidth
+ * of the link connecting their root node to the rest of the network. Sub trees with the same residual bandwidth are ordered by root id.
+ * The physical machines are not indexed: the placement starts with the sub trees of the TOR switches.
+ *
+ * The index is updated by the network state each time the residual bandwidth of a switch upper link changes,
+ * so that the placement iterates the candidate sub trees in order without sorting them for each request.
+ * The reservations on the servers links and slots do not move the sub trees: the placement skips the candidates
+ * that can not host the request with the summaries of their root switch (see Switch.getAvailableVMs and Switch.getMaxServerBandwidth).
+ * Each entry is a long key: residual bandwidth in the high 32 bits and root id in the low 32 bits
+ *
+ * @author Hyame
+ *
+ */
+public class UplinkBandwidthIndex {
+
+	//lowest indexed level (sub trees of the TOR switches)
+	private static final int FIRST_LEVEL = 1;
+
+	//indexed network
+	private FatTreeNetwork treeNetwork;
+
+	//ordered keys of the sub trees of each level (from the TOR switches level to the level below the core, the lower levels are null)
+	private ArrayList<ConcurrentSkipListSet<Long>> levels;
+
+	//residual bandwidth with which each link is indexed, indexed by continuous id (changed while holding the link)
+	private int indexedBandwidth [];
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param treeNetwork built network
+	 */
+	public UplinkBandwidthIndex (FatTreeNetwork treeNetwork)
+	{
+		this.treeNetwork = treeNetwork;
+		this.indexedBandwidth = new int [treeNetwork.linksByContinuousId.length];
+		this.rebuild();
+	}
+
+
+	/**
+	 * This function indexes all the links of the switches again from their current residual bandwidth.
+	 * It should be called while no request is being placed
+	 */
+	public void rebuild ()
+	{
+		Link links [] = this.treeNetwork.linksByContinuousId;
+
+		this.levels = new ArrayList<ConcurrentSkipListSet<Long>>();
+
+		for (int level=0; level<this.treeNetwork.height; level++)
+		{
+			this.levels.add(level < FIRST_LEVEL ? null : new ConcurrentSkipListSet<Long>());
+		}
+
+		for (int i=0; i<links.length; i++)
+		{
+			if (links[i].sourceNode.level < FIRST_LEVEL)
+			{
+				continue;
+			}
+
+			this.indexedBandwidth[i] = links[i].getBandwidth();
+			this.levels.get(links[i].sourceNode.level).add(key(this.indexedBandwidth[i], links[i].sourceNode.id));
+		}
+
+		//empty memory
+		links = null;
+	}
+
+
+	/**
+	 * This function moves the sub tree of the link source node to its new position after its residual bandwidth changed
+	 *
+	 * @param continuousId link continuous id
+	 */
+	public void update (int continuousId)
+	{
+		Link l = this.treeNetwork.linksByContinuousId[continuousId];
+		ConcurrentSkipListSet<Long> level;
+		int bandwidth;
+
+		//the links of the physical machines are not indexed
+		if (l.sourceNode.level < FIRST_LEVEL)
+		{
+			return;
+		}
+
+		level = this.levels.get(l.sourceNode.level);
+
+		//the bandwidth is read while holding the link so that the last update of concurrent changes indexes the final bandwidth
+		synchronized (l)
+		{
+			bandwidth = l.getBandwidth();
+
+			if (bandwidth == this.indexedBandwidth[continuousId])
+			{
+				return;
+			}
+
+			//the new key is added before removing the old one so that a concurrent iteration does not miss the sub tree
+			level.add(key(bandwidth, l.sourceNode.id));
+			level.remove(key(this.indexedBandwidth[continuousId], l.sourceNode.id));
+			this.indexedBandwidth[continuousId] = bandwidth;
+		}
+	}
+
+
+	/**
+	 * This function iterates the sub trees of the level in ascending order of the residual bandwidth of their upper link.
+	 * While the index is updated concurrently, a sub tree may be returned twice
+	 *
+	 * @param level level of the sub trees root (from 1 to the height of the tree excluded)
+	 * @return iterator of the sub trees
+	 */
+	public Iterator<SubTree> iterator (int level)
+	{
+		final Iterator<Long> keys = this.levels.get(level).iterator();
+		final SubTree subTrees [] = this.treeNetwork.subTreesIndex[level];
+
+		return new Iterator<SubTree>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return keys.hasNext();
+			}
+
+			@Override
+			public SubTree next()
+			{
+				return subTrees[(int)(keys.next().longValue())];
+			}
+		};
+	}
+
+
+	/**
+	 * @param bandwidth residual bandwidth of the upper link
+	 * @param rootId id of the sub tree root node
+	 * @return key of the sub tree in its level
+	 */
+	private static long key (int bandwidth, int rootId)
+	{
+		return ((long)bandwidth << 32) | (rootId & 0xFFFFFFFFL);
+	}
+}
@@ -12,7 +12,6 @@ public class VirtualMachine extends Node{
 	
 	// specifies the type of virtual machines
 	public enum Type {PRIMARY, BACKUP};
-	public Type vmType;
 	
 	//physical machine that the VM belongs to
 	public PhysicalMachine pm;
@@ -20,23 +19,17 @@ public class VirtualMachine extends Node{
 	//cpu capacity of the VM
 	public int capacity;
 	
-	//specify if the VM is reserved or not
-	public boolean reserved;
+	//network state holding the owner and type of the VM at index slot
+	private NetworkState state;
 	
-	//the request for Which the VM is reserved for; null if it is not reserved
-	public Request request;
+	//index of the VM in the network state
+	private int slot;
 	
 	//list of vms backed up by this
 	public ArrayList <VirtualMachine> backedUpVMs;
 	
-	/**
-	 * default constructor
-	 */
-	VirtualMachine ()
-	{
-		//virtual machine is not reserved initially
-		this.request = null;
-	}
+	//bitset of the servers (physical machine ids) hosting a primary VM backed up by this (bit i of word i/64, null if none)
+	private long protectedServers [];
 	
 	
 	/**
@@ -51,16 +44,40 @@ public class VirtualMachine extends Node{
 		this.pm = pm;
 		this.capacity = capacity;
 		
-		//set the type of Vm to primary by default
-		this.vmType = Type.PRIMARY;
-		
-		//virtual machine is not reserved initially
-		this.request = null;
-		this.reserved = false;
+		//the VM is a view over the slot of the physical machine in the network state
+		this.state = pm.getState();
+		this.slot = pm.firstSlot + id;
 		
+		this.backedUpVMs = new ArrayList <VirtualMachine>();
+	}
+	
+	
+	/**
+	 * @return true if the VM is reserved
+	 */
+	public boolean isReserved ()
+	{
+		return this.state.getSlotOwner(this.slot) != NetworkState.FREE_SLOT;
+	}
+	
+	
+	/**
+	 * @return type of the VM (primary if it is not reserved)
+	 */
+	public Type getType ()
+	{
+		return this.state.getSlotType(this.slot) == NetworkState.BACKUP_SLOT ? Type.BACKUP : Type.PRIMARY;
 	}
 	
 	
+	/**
+	 * @return the request for which the VM is reserved; null if it is not reserved
+	 */
+	public Request getRequest ()
+	{
+		return this.state.getSlotRequest(this.slot);
+	}
+	
 	
 	/**
 	 * 
@@ -72,28 +89,16 @@ public class VirtualMachine extends Node{
 	 */
 	public void reserveRelease (boolean reserve, Request request, Type VMType)
 	{
-		this.reserved =  reserve;
-		
-		if (!reserve)
-		{	
-			//remove this VM from the request VM list it was assigned to
-			this.request.virtualMachinesSet.remove(this);
-			
-			//reset the Vm to primary Vm (if it was set as backup)
-			this.vmType = Type.PRIMARY;
-		}
-		else
-		{	
-			//set the vm type to backup since it is set to primary by default
-			this.vmType = VMType;
-			
-			//add the VM to the VM request list
-			request.virtualMachinesSet.add(this);			
+		//the slot is released first if it is reserved again for another request/type
+		if (this.isReserved())
+		{
+			this.pm.releaseSlot(this.id);
 		}
 		
-		// set this after adding/removing the vm from the request list specially that the request can be null
-		this.request = request;
-		
+		if (reserve)
+		{
+			this.pm.reserveSlot(this.id, request, VMType);
+		}
 	}
 	
 	
@@ -113,7 +118,7 @@ public class VirtualMachine extends Node{
 		}
 		
 		//checking on request
-		if ( vm.request.id != this.request.id )
+		if ( vm.getRequest().id != this.getRequest().id )
 		{
 			return false;
 		}
@@ -125,7 +130,7 @@ public class VirtualMachine extends Node{
 		}
 		
 		//checking on type
-		if (vm.vmType !=this.vmType)
+		if (vm.getType() !=this.getType())
 		{
 			return false;
 		}
@@ -140,35 +145,189 @@ public class VirtualMachine extends Node{
 	 * 1- it is not backing up another VM of the same request hosted on the same server as v
 	 * 2- if the backup and v are not hosted on the same server
 	 * 
+	 * The first rule is a single bit test on the servers protected by this backup
+	 * 
 	 * @return true if the current VM can backup the one passed as parameter
 	 */
 	public boolean canBackup (VirtualMachine primaryVM)
 	{
-		VirtualMachine vm;
 		// if primary and backup are hosted on the same server the backup can not backup this primary vm
 		if (this.pm.id == primaryVM.pm.id)
 		{
 			return false;
 		}
 		
-		for(int i=0; i<this.request.virtualMachinesSet.size(); i++)
+		//the backup does not protect any primary VM on the server of v
+		if (!this.isProtectingServer(primaryVM.pm.id))
 		{
-			vm = this.request.virtualMachinesSet.get(i);
-			
-			//we dont want to check the Vm against itself
-			if (vm.equals(primaryVM))
+			return true;
+		}
+		
+		//the protected VM of this server can only be v itself
+		return this.isBackinUp(primaryVM);
+	}
+	
+	
+	/**
+	 * This function returns true if the current backup is backing up a primary VM hosted on the specified server
+	 * 
+	 * @param pmId physical machine id
+	 * @return boolean
+	 */
+	public boolean isProtectingServer (int pmId)
+	{
+		int word = pmId >>> 6;
+		
+		return this.protectedServers != null && word < this.protectedServers.length 
+				&& (this.protectedServers[word] & (1L << pmId)) != 0;
+	}
+	
+	
+	/**
+	 * This function maps the primary VM to the current backup
+	 * 
+	 * @param primaryVM
+	 */
+	public void addBackedUpVM (VirtualMachine primaryVM)
+	{
+		//keep the mapping to be able to roll it back
+		if (this.state.getUndoLog().isActive())
+		{
+			this.state.getUndoLog().logBackupMappingAdd(this);
+		}
+		
+		this.backedUpVMs.add(primaryVM);
+		this.setProtectedServer(primaryVM.pm.id);
+	}
+	
+	
+	/**
+	 * This function removes the mapping of the primary VM to the current backup
+	 * 
+	 * @param primaryVM
+	 */
+	public void removeBackedUpVM (VirtualMachine primaryVM)
+	{
+		int position = -1;
+		
+		//the views of a physical machine are unique, the primary VM is found by reference
+		for (int i=0; i<this.backedUpVMs.size() && position == -1; i++)
+		{
+			if (this.backedUpVMs.get(i) == primaryVM)
 			{
-				continue;
+				position = i;
 			}
+		}
+		
+		if (position == -1)
+		{
+			return;
+		}
+		
+		//keep the mapping to be able to roll back its removal
+		if (this.state.getUndoLog().isActive())
+		{
+			this.state.getUndoLog().logBackupMappingRemove(this, primaryVM, position);
+		}
+		
+		this.backedUpVMs.remove(position);
+		this.refreshProtectedServer(primaryVM.pm.id);
+	}
+	
+	
+	/**
+	 * This function removes the last primary VM mapped to the current backup (undo of addBackedUpVM)
+	 */
+	void removeLastBackedUpVM ()
+	{
+		VirtualMachine primaryVM = this.backedUpVMs.remove(this.backedUpVMs.size()-1);
+		
+		this.refreshProtectedServer(primaryVM.pm.id);
+	}
+	
+	
+	/**
+	 * This function maps again the primary VM to the current backup at its previous position (undo of removeBackedUpVM)
+	 * 
+	 * @param primaryVM
+	 * @param position position of the primary VM in backedUpVMs
+	 */
+	void restoreBackedUpVM (VirtualMachine primaryVM, int position)
+	{
+		this.backedUpVMs.add(position, primaryVM);
+		this.setProtectedServer(primaryVM.pm.id);
+	}
+	
+	
+	/**
+	 * This function removes all the primary VMs mapped to the current backup (when its slot is released).
+	 * The caller logs the mappings if they should be rolled back
+	 */
+	void clearBackedUpVMs ()
+	{
+		this.backedUpVMs.clear();
+		this.protectedServers = null;
+	}
+	
+	
+	/**
+	 * This function maps again the primary VMs to the current backup after its mappings were cleared (undo of clearBackedUpVMs)
+	 * 
+	 * @param primaryVMs
+	 */
+	void restoreBackedUpVMs (ArrayList <VirtualMachine> primaryVMs)
+	{
+		for (int i=0; i<primaryVMs.size(); i++)
+		{
+			this.backedUpVMs.add(primaryVMs.get(i));
+			this.setProtectedServer(primaryVMs.get(i).pm.id);
+		}
+	}
+	
+	
+	/**
+	 * This function sets the bit of the server, the bitset grows up to the word of the server
+	 * 
+	 * @param pmId physical machine id
+	 */
+	private void setProtectedServer (int pmId)
+	{
+		int word = pmId >>> 6;
+		long oldProtectedServers [] = this.protectedServers;
+		
+		if (oldProtectedServers == null || word >= oldProtectedServers.length)
+		{
+			this.protectedServers = new long [word+1];
 			
-			//if backup vm is not backing up another VM of the same request hosted on the same server as v
-			if (vm.pm.id == this.pm.id && this.isBackinUp(vm))
+			if (oldProtectedServers != null)
 			{
-				return false;
+				System.arraycopy(oldProtectedServers, 0, this.protectedServers, 0, oldProtectedServers.length);
 			}
 		}
 		
-		return true;
+		this.protectedServers[word] |= 1L << pmId;
+	}
+	
+	
+	/**
+	 * This function clears the bit of the server if no primary VM backed up by the current backup is hosted on it anymore
+	 * 
+	 * @param pmId physical machine id
+	 */
+	private void refreshProtectedServer (int pmId)
+	{
+		for (int i=0; i<this.backedUpVMs.size(); i++)
+		{
+			if (this.backedUpVMs.get(i).pm.id == pmId)
+			{
+				return;
+			}
+		}
+		
+		if (this.isProtectingServer(pmId))
+		{
+			this.protectedServers[pmId >>> 6] &= ~(1L << pmId);
+		}
 	}
 	
 	
@@ -183,6 +342,13 @@ public class VirtualMachine extends Node{
 	public boolean isBackinUp(VirtualMachine vm)
 	{
 		VirtualMachine v;
+		
+		//no VM of the server of vm is backed up
+		if (!this.isProtectingServer(vm.pm.id))
+		{
+			return false;
+		}
+		
 		for (int i=0; i<this.backedUpVMs.size(); i++)
 		{
 			v = this.backedUpVMs.get(i);
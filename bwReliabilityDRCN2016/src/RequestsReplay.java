@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import Network.FatTreeNetwork;
+import Network.Request;
+
+/**
+ * This class replays a stream of requests on a network for the benchmarks and checks of the placement:
+ * the requests arrive one after the other and each admitted request leaves the network REQUEST_DURATION arrivals later.
+ * The same generated requests can be replayed on several copies of the network built by buildNetwork()
+ *
+ * @author Hyame
+ *
+ */
+public class RequestsReplay {
+
+	//number of arrivals after which an admitted request leaves the network
+	public static final int REQUEST_DURATION = 200;
+
+	//numbers of physical machines of the networks on which the requests are replayed
+	public static final int NB_OF_PHYSICAL_MACHINES [] = {1024, 4096};
+
+	//placement of a request replayed on the network
+	public interface Placement
+	{
+		/**
+		 * @param request
+		 * @return array list of physical machines id and the number of VMs allocated for the request, null if the request is rejected
+		 */
+		ArrayList <int []> placeRequest (Request request);
+	}
+
+	//network where the requests are replayed
+	public FatTreeNetwork treeNetwork;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param treeNetwork built network
+	 */
+	public RequestsReplay (FatTreeNetwork treeNetwork)
+	{
+		this.treeNetwork = treeNetwork;
+	}
+
+
+	/**
+	 * This function places the requests one after the other and releases each admitted request REQUEST_DURATION arrivals later
+	 *
+	 * @param requests array of [requestId, nbOfVMs, bandwidthPerVM]
+	 * @param placement placement of each request
+	 * @return long [] {admitted requests, placement time in nanoseconds}
+	 */
+	public long [] replay (ArrayList <int []> requests, Placement placement)
+	{
+		ArrayList <Request> admittedRequests = new ArrayList <Request>();
+		Request request;
+		long results [] = new long [2];
+		long startTime;
+
+		for (int i=0; i<requests.size(); i++)
+		{
+			request = new Request(requests.get(i)[0], requests.get(i)[1], requests.get(i)[2]);
+
+			startTime = System.nanoTime();
+
+			if (placement.placeRequest(request) != null)
+			{
+				results[0]++;
+				admittedRequests.add(request);
+			}
+
+			results[1] += System.nanoTime() - startTime;
+
+			//release the requests that arrived REQUEST_DURATION arrivals ago
+			while (!admittedRequests.isEmpty() && admittedRequests.get(0).id <= i - REQUEST_DURATION)
+			{
+				this.treeNetwork.releaseAllocatedRequest(admittedRequests.remove(0), null);
+			}
+		}
+
+		return results;
+	}
+
+
+	/**
+	 * This function builds the network on which the requests are replayed
+	 *
+	 * @param nbOfPhysicalMachines
+	 * @return built network
+	 */
+	public static FatTreeNetwork buildNetwork (int nbOfPhysicalMachines)
+	{
+		FatTreeNetwork treeNetwork = new FatTreeNetwork(nbOfPhysicalMachines, 8, 16, 16, nbOfPhysicalMachines/256, 1000, 10000, 40000);
+
+		treeNetwork.buildTreeNetwork();
+
+		return treeNetwork;
+	}
+
+
+	/**
+	 * This function generates requests with an exponential number of VMs around the mean (at least 1)
+	 *
+	 * @param nbRequests
+	 * @param mean mean number of VMs
+	 * @param bandwidthRange [min, max] bandwidth per VM
+	 * @param seed
+	 * @return array list of [requestId, nbOfVMs, bandwidthPerVM]
+	 */
+	public static ArrayList <int []> generateRequests (int nbRequests, int mean, int bandwidthRange [], long seed)
+	{
+		ArrayList <int []> requests = new ArrayList <int []>();
+		Random rand = new Random(seed);
+		int request [];
+
+		for (int i=0; i<nbRequests; i++)
+		{
+			request = new int [3];
+			request[0] = i;
+			request[1] = Math.max(1, (int)(Math.log(1-rand.nextDouble())*(-mean)));
+			request[2] = rand.nextInt((bandwidthRange[1] - bandwidthRange[0]) + 1) + bandwidthRange[0];
+			requests.add(request);
+		}
+
+		return requests;
+	}
+}
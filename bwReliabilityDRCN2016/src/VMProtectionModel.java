@@ -23,7 +23,6 @@ import Network.FatTreeNetwork;
 import Network.Link;
 import Network.PhysicalMachine;
 import Network.Request;
-import Network.Switch;
 import Network.VirtualMachine;
 import ilog.concert.IloException;
 import ilog.concert.IloIntVar;
@@ -64,12 +63,12 @@ public class VMProtectionModel {
 		ArrayList<int[][]> parameters =  new ArrayList<int[][]>();
 			
 		int P = this.treeNetwork.nbOfPhysicalMachines;
-		int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-		int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-		int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-		int V = P+torSwitchesNb + aggCoreSwitchesNb;
+		int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+		int V = this.treeNetwork.getNbOfNodes();
+		
+		//number of switches above the TOR switches (aggregate and core switches of all the levels)
+		int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 		
-		int count = 0;
 		
 		//x specifies if vm n is hosted on server p
 		int [][] x = new int [this.request.N][P];
@@ -101,64 +100,23 @@ public class VMProtectionModel {
 		parameters.add(x);
 		
 		
-		//Working on links between TOR and physical servers
-		//looping over TOR switches 
-		for (int i=P; i<(P+torSwitchesNb); i++)
-		{			
-			l[0][i] = 1;
-			for(int j=0; j<treeNetwork.nbOfPhysicalMachinesPerTor; j++)
-			{
-				
-				//setting physical server count is under TOR switch i 
-				v[count][i] = 1;
-			
-				//setting link capacity between TOR i and physical server count
-				c[count][i] = treeNetwork.pmToTorLinkCapacity;
-				
-				//will hold the total number of physical machines
-				count++;
-			}		
-			
-		}
-		
+		Link [] networkLinks = this.treeNetwork.getLinks();
+		int sourceIndex;
+		int destinationIndex;
 		
-		
-		//Working on links between Aggregate switches and TOR
-		//looping over aggregate switches
-		for (int i=P+torSwitchesNb; i<(V-coreSwitchesNb); i++)
-		{			
-			l[0][i] = 2;
-			for(int j=0; j<treeNetwork.nbOfTorPerAgg; j++)
-			{
-				//setting TOR switch 'count' is under Aggregate switch i 
-				v[count][i]= 1;
-				
-				//setting link capacity between Aggregate i and TOR switch count
-				c[count][i] = treeNetwork.torToAggregateLinkCapacity;
-				
-				//will hold the total number of TOR
-				count++;
-			}		
+		//Working on the links between each node (physical server or switch) and its parent switch, level by level
+		for (int i=0; i<networkLinks.length; i++)
+		{
+			sourceIndex = this.treeNetwork.getNodeIndex(networkLinks[i].sourceNode);
+			destinationIndex = this.treeNetwork.getNodeIndex(networkLinks[i].destinationNode);
 			
-		}
-		
-		//Working on links between Core switches and Aggregate switches 
-		//looping over core switches
-		for (int i=V-coreSwitchesNb; i<V ; i++)
-		{	
-			l[0][i] = 3;
-			for(int j=0; j<treeNetwork.nbOfAggPerCore; j++)
-			{
-				//setting Aggregate switch count is under Core switch i 
-				v[count][i]= 1;
-				
-				//setting link capacity between core switch i and aggregate switch count
-				c[count][i] = treeNetwork.aggregateToCoreLinkCapacity;
-				
-				//will hold the total number of aggregate switch
-				count++;
-			}		
+			l[0][destinationIndex] = networkLinks[i].destinationNode.level;
+			
+			//setting node sourceIndex is under switch destinationIndex
+			v[sourceIndex][destinationIndex] = 1;
 			
+			//setting link capacity between switch destinationIndex and node sourceIndex
+			c[sourceIndex][destinationIndex] = networkLinks[i].capacity;
 		}
 						
 		parameters.add(c);
@@ -209,10 +167,10 @@ public class VMProtectionModel {
 		{
 			physicalMachine = this.treeNetwork.physicalMachinesSet[i];
 			
-			for (int j=0; j<physicalMachine.virtualMachines.length; j++)
+			for (int j=0; j<physicalMachine.nbOfVM; j++)
 			{
 				//verify that the VM of the specified server is reserved for the specified request (tenant)
-				if (physicalMachine.virtualMachines[j].reserved && physicalMachine.virtualMachines[j].request.id == this.request.id)
+				if (physicalMachine.getSlotOwner(j) == this.request.id)
 				{
 					x[n][i] = 1;
 					n++;
@@ -240,35 +198,28 @@ public class VMProtectionModel {
 	public int[][] populateLinkCapacity ()
 	{
 		int P = this.treeNetwork.nbOfPhysicalMachines;
-		int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-		int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-		int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-		int V = P+torSwitchesNb + aggCoreSwitchesNb;
+		int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+		int V = this.treeNetwork.getNbOfNodes();
+		
+		//number of switches above the TOR switches (aggregate and core switches of all the levels)
+		int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 		int[][] c = new int [V][V];
 		Link l;
 		int [][] f = this.populateReservedLinkBandwidth();
 		
-		//Set the residual bandwidth for links between physical machines(source) and TOR  switches (Destination)
-		for (int i=0; i<treeNetwork.pmToTorLinkSet.length; i++)
+		Link [] networkLinks = this.treeNetwork.getLinks();
+		int sourceIndex;
+		int destinationIndex;
+		
+		//Set the residual bandwidth for the links between each node (Source) and its parent switch (Destination), level by level
+		for (int i=0; i<networkLinks.length; i++)
 		{
-			l = treeNetwork.pmToTorLinkSet[i];
+			l = networkLinks[i];
+			sourceIndex = this.treeNetwork.getNodeIndex(l.sourceNode);
+			destinationIndex = this.treeNetwork.getNodeIndex(l.destinationNode);
 			
 			//we need to add the bandwidth reserved for this request because of constraint 16
-			c[l.sourceNode.id][l.destinationNode.id + P] = l.bandwidth+f[l.sourceNode.id][l.destinationNode.id + P];
-		}
-		
-		//Set the residual bandwidth for links between TOR  switches (Source) and Aggregate switches (Destination)
-		for (int i=0; i<treeNetwork.torToAggregateLinkSet.length; i++)
-		{
-			l = treeNetwork.torToAggregateLinkSet[i];
-			c[l.sourceNode.id+P][l.destinationNode.id + P+torSwitchesNb] = l.bandwidth+f[l.sourceNode.id+P][l.destinationNode.id + P+torSwitchesNb] ;
-		}
-		
-		//Set the residual bandwidth for links between Aggregate  switches (Source) and Core switches (Destination)
-		for (int i=0; i<treeNetwork.aggregateToCoreLinkset.length; i++)
-		{
-			l = treeNetwork.aggregateToCoreLinkset[i];
-			c[l.sourceNode.id + P + torSwitchesNb][l.destinationNode.id +V-coreSwitchesNb] = l.bandwidth+f[l.sourceNode.id + P + torSwitchesNb][l.destinationNode.id +V-coreSwitchesNb];
+			c[sourceIndex][destinationIndex] = l.getBandwidth()+f[sourceIndex][destinationIndex];
 		}
 		
 		return c;
@@ -283,64 +234,28 @@ public class VMProtectionModel {
 	public int[][] populateReservedLinkBandwidth ()
 	{
 		int P = this.treeNetwork.nbOfPhysicalMachines;
-		int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-		int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-		int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-		int V = P+torSwitchesNb + aggCoreSwitchesNb;
+		int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+		int V = this.treeNetwork.getNbOfNodes();
+		
+		//number of switches above the TOR switches (aggregate and core switches of all the levels)
+		int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 		
 		int [][] f = new int [V][V];
-		int[] requestBandwidth;
 		Link l;
 		
-		//Set the reserved bandwidth for links between physical machines(source) and TOR  switches (Destination)
-		for (int i=0; i<treeNetwork.pmToTorLinkSet.length; i++)
-		{
-			l = treeNetwork.pmToTorLinkSet[i];
-			
-			for (int j=0; j<l.bandwidthForRequests.size();j++)
-			{
-				requestBandwidth = l.bandwidthForRequests.get(j);
-				
-				//check if a bandwidth is reserved for the specified request
-				if (requestBandwidth[0] == this.request.id)
-				{
-					f[l.sourceNode.id][l.destinationNode.id + P] = requestBandwidth[1];
-					break;
-				}
-				
-			}
-			
-		}
+		Link [] networkLinks = this.treeNetwork.getLinks();
+		int sourceIndex;
+		int destinationIndex;
 		
-		//Set the reserved bandwidth for links between TOR  switches (Source) and Aggregate switches (Destination)
-		for (int i=0; i<treeNetwork.torToAggregateLinkSet.length; i++)
+		//Set the reserved bandwidth for the links between each node (Source) and its parent switch (Destination), level by level
+		for (int i=0; i<networkLinks.length; i++)
 		{
-			l = treeNetwork.torToAggregateLinkSet[i];
-			for (int j=0; j<l.bandwidthForRequests.size();j++)
-			{
-				requestBandwidth = l.bandwidthForRequests.get(j);
-				if (requestBandwidth[0] == this.request.id)
-				{
-					f[l.sourceNode.id+P][l.destinationNode.id + P+torSwitchesNb] = requestBandwidth[1];
-					break;
-				}
-			}
+			l = networkLinks[i];
+			sourceIndex = this.treeNetwork.getNodeIndex(l.sourceNode);
+			destinationIndex = this.treeNetwork.getNodeIndex(l.destinationNode);
 			
-		}
-		
-		//Set the reserved bandwidth for links between Aggregate  switches (Source) and Core switches (Destination)
-		for (int i=0; i<treeNetwork.aggregateToCoreLinkset.length; i++)
-		{
-			l = treeNetwork.aggregateToCoreLinkset[i];
-			for (int j=0; j<l.bandwidthForRequests.size();j++)
-			{
-				requestBandwidth = l.bandwidthForRequests.get(j);
-				if (requestBandwidth[0] == this.request.id)
-				{
-					f[l.sourceNode.id + P + torSwitchesNb][l.destinationNode.id +V-coreSwitchesNb] = requestBandwidth[1];
-					break;
-				}
-			}
+			//primary bandwidth reserved for the specified request (0 if nothing is reserved)
+			f[sourceIndex][destinationIndex] = l.bandwidthForRequests.getPrimary(this.request.id);
 			
 		}
 		
@@ -387,11 +302,11 @@ public class VMProtectionModel {
 	public ArrayList<int[][]> populateNodesInformation()
 	{
 		int P = this.treeNetwork.nbOfPhysicalMachines;
-		int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-		int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-		int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-		int V = P+torSwitchesNb + aggCoreSwitchesNb;
-		int count =0;
+		int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+		int V = this.treeNetwork.getNbOfNodes();
+		
+		//number of switches above the TOR switches (aggregate and core switches of all the levels)
+		int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 		
 		ArrayList<int[][]> nodeInformation =  new ArrayList<int[][]>();
 		
@@ -402,52 +317,20 @@ public class VMProtectionModel {
 		int [][] l = new int [1][V];
 				
 				
-		//Working on links between TOR and physical servers
-		//looping over TOR switches 
-		for (int i=P; i<(P+torSwitchesNb); i++)
-		{			
-			l[0][i] = 1;
-			for(int j=0; j<treeNetwork.nbOfPhysicalMachinesPerTor; j++)
-			{			
-				//setting physical server count is under TOR switch i 
-				v[count][i] = 1;
-						
-				//will hold the total number of physical machines
-				count++;
-			}		
-			
-		}
+		Link [] networkLinks = this.treeNetwork.getLinks();
+		int sourceIndex;
+		int destinationIndex;
 		
-		//Working on links between Aggregate switches and TOR
-		//looping over aggregate switches
-		for (int i=P+torSwitchesNb; i<(V-coreSwitchesNb); i++)
-		{			
-			l[0][i] = 2;
-			for(int j=0; j<treeNetwork.nbOfTorPerAgg; j++)
-			{
-				//setting TOR switch 'count' is under Aggregate switch i 
-				v[count][i]= 1;
-				
-				//will hold the total number of TOR
-				count++;
-			}		
+		//Working on the links between each node (physical server or switch) and its parent switch, level by level
+		for (int i=0; i<networkLinks.length; i++)
+		{
+			sourceIndex = this.treeNetwork.getNodeIndex(networkLinks[i].sourceNode);
+			destinationIndex = this.treeNetwork.getNodeIndex(networkLinks[i].destinationNode);
 			
-		}
-		
-		//Working on links between Core switches and Aggregate switches 
-		//looping over core switches
-		for (int i=V-coreSwitchesNb; i<V ; i++)
-		{	
-			l[0][i] = 3;
-			for(int j=0; j<treeNetwork.nbOfAggPerCore; j++)
-			{
-				//setting Aggregate switch count is under Core switch i 
-				v[count][i]= 1;
-				
-				//will hold the total number of aggregate switch
-				count++;
-			}		
+			l[0][destinationIndex] = networkLinks[i].destinationNode.level;
 			
+			//setting node sourceIndex is under switch destinationIndex
+			v[sourceIndex][destinationIndex] = 1;
 		}
 						
 		nodeInformation.add(v);
@@ -518,10 +401,11 @@ public class VMProtectionModel {
 		ArrayList<int[][]> parameters =  new ArrayList<int[][]>();
 			
 		int P = treeNetwork.nbOfPhysicalMachines;
-		int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-		int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-		int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-		int V = P+torSwitchesNb + aggCoreSwitchesNb;
+		int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+		int V = this.treeNetwork.getNbOfNodes();
+		
+		//number of switches above the TOR switches (aggregate and core switches of all the levels)
+		int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 			
 		
 		
@@ -1289,10 +1173,11 @@ public class VMProtectionModel {
 	public void updateNetwork (IloIntVar[][] y,IloIntVar[][] tc ) throws UnknownObjectException, IloException
 	{
 		int P = treeNetwork.nbOfPhysicalMachines;
-		int torSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.TOR_TYPE); 
-		int coreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.CORE_TYPE);
-		int aggCoreSwitchesNb = this.treeNetwork.getNbOfSwitchPerType(Switch.AGGREGATE_TYPE) + coreSwitchesNb; 
-		int V = P+torSwitchesNb + aggCoreSwitchesNb;
+		int torSwitchesNb = this.treeNetwork.getNbOfSwitchesPerLevel(1); 
+		int V = this.treeNetwork.getNbOfNodes();
+		
+		//number of switches above the TOR switches (aggregate and core switches of all the levels)
+		int aggCoreSwitchesNb = V-P-torSwitchesNb; 
 		
 		PhysicalMachine pm;
 		Link l;
@@ -1313,42 +1198,25 @@ public class VMProtectionModel {
 			}
 		}
 		
-		//Set the reserved bandwidth for links between servers (Source) and TOR switches (Destination)
-		for (int i=0; i<treeNetwork.pmToTorLinkSet.length; i++)
+		Link [] networkLinks = this.treeNetwork.getLinks();
+		int sourceIndex;
+		int destinationIndex;
+		
+		//Set the reserved bandwidth for the links between each node (Source) and its parent switch (Destination), level by level
+		for (int i=0; i<networkLinks.length; i++)
 		{
-			l = treeNetwork.pmToTorLinkSet[i];
-			bandwidthToReserve = (int)cplex.getValue(tc[l.sourceNode.id][l.destinationNode.id + P] );
+			l = networkLinks[i];
+			sourceIndex = this.treeNetwork.getNodeIndex(l.sourceNode);
+			destinationIndex = this.treeNetwork.getNodeIndex(l.destinationNode);
+			bandwidthToReserve = (int)cplex.getValue(tc[sourceIndex][destinationIndex] );
 			
 			//check if a bandwidth is reserved for the specified request
 			if (bandwidthToReserve!= 0)
 			{
-				l.reserveBandwidth(bandwidthToReserve, this.request.id,Link.BandwidthType.BACKUP);			
+				l.reserveBandwidth(bandwidthToReserve, this.request,Link.BandwidthType.BACKUP);			
 			}
 		}
 		
-		//Set the reserved bandwidth for links between TOR  switches (Source) and Aggregate switches (Destination)
-		for (int i=0; i<treeNetwork.torToAggregateLinkSet.length; i++)
-		{
-			l = treeNetwork.torToAggregateLinkSet[i];
-			bandwidthToReserve = (int)cplex.getValue(tc[l.sourceNode.id+P][l.destinationNode.id + P+torSwitchesNb]  );
-			if (bandwidthToReserve!= 0)
-			{
-				l.reserveBandwidth(bandwidthToReserve, this.request.id,Link.BandwidthType.BACKUP);			
-			}
-			
-		}
-		
-		//Set the reserved bandwidth for links between Aggregate  switches (Source) and Core switches (Destination)
-		for (int i=0; i<treeNetwork.aggregateToCoreLinkset.length; i++)
-		{
-			l = treeNetwork.aggregateToCoreLinkset[i];
-			bandwidthToReserve = (int)cplex.getValue(tc[l.sourceNode.id + P + torSwitchesNb][l.destinationNode.id +V-coreSwitchesNb] );
-			if (bandwidthToReserve!= 0)
-			{
-				l.reserveBandwidth(bandwidthToReserve, this.request.id,Link.BandwidthType.BACKUP);			
-			}			
-		}
-		
 	}
 	
 	
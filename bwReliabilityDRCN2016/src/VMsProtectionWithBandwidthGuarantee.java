@@ -28,6 +28,7 @@ import HelperClasses.FileManipulation;
 import Network.FatTreeNetwork;
 import Network.Link;
 import Network.PhysicalMachine;
+import Network.PodLocks;
 import Network.Request;
 import Network.SubTree;
 import Network.Switch;
@@ -38,9 +39,20 @@ import Network.VirtualMachine;
 
 public class VMsProtectionWithBandwidthGuarantee {
 	
+	//network shared by the automated tests
+	static FatTreeNetwork testNetwork;
+	
 	FatTreeNetwork treeNetwork;
 	ArrayList<Request> requests;
 	
+	/**
+	 * Batch admission of the event loops: the consecutive arrivals (not separated by a departure) that arrive 
+	 * at most batchTimeWindow after the first one are placed together, up to batchSize arrivals.
+	 * A batch size of 1 admits the arrivals one at a time
+	 */
+	int batchSize;
+	double batchTimeWindow;
+	
 	
 	/**
 	 * Constructor
@@ -52,6 +64,53 @@ public class VMsProtectionWithBandwidthGuarantee {
 		
 		this.treeNetwork = treeNetwork;
 		this.requests = requests;
+		this.batchSize = 1;
+		this.batchTimeWindow = 0;
+	}
+	
+	
+	/**
+	 * This function sets the batch admission window of the event loops
+	 * 
+	 * @param batchSize maximum number of arrivals placed together (1 to admit the arrivals one at a time)
+	 * @param batchTimeWindow maximum time between the first and the last arrivals of a batch
+	 */
+	public void setBatchAdmission (int batchSize, double batchTimeWindow)
+	{
+		this.batchSize = batchSize;
+		this.batchTimeWindow = batchTimeWindow;
+	}
+	
+	
+	/**
+	 * This function returns the arrivals of the sorted requests that are placed in the same batch as the given arrival:
+	 * the next consecutive arrivals that arrive at most batchTimeWindow after it, up to batchSize arrivals
+	 * 
+	 * @param first position of the first arrival of the batch
+	 * 
+	 * @return arrivals of the batch
+	 */
+	public ArrayList<Request> getBatchWindow (int first)
+	{
+		ArrayList<Request> batch = new ArrayList<Request>();
+		Request request;
+		
+		batch.add(this.requests.get(first));
+		
+		for (int i=first+1; i<this.requests.size() && batch.size()<this.batchSize; i++)
+		{
+			request = this.requests.get(i);
+			
+			//a departure closes the window since it must be processed before the next arrivals
+			if (request.processType != Request.Type.ARRIVAL || request.arrivalTime - batch.get(0).arrivalTime > this.batchTimeWindow)
+			{
+				break;
+			}
+			
+			batch.add(request);
+		}
+		
+		return batch;
 	}
 	
 	
@@ -72,6 +131,12 @@ public class VMsProtectionWithBandwidthGuarantee {
 		Request request = null;	
 		ArrayList <int []> physicalMachinesAllocation;
 				
+		//arrivals placed together and their allocations
+		ArrayList <Request> batch;
+		ArrayList <ArrayList <int []>> batchAllocation;
+		long batchStart;
+		int batchNb = 0;
+				
 		//create a vmPlacement object
 		VirtualMachinesPlacement vmPlacement = new VirtualMachinesPlacement(this.treeNetwork);
 
@@ -83,28 +148,47 @@ public class VMsProtectionWithBandwidthGuarantee {
 					
 			 //if we are dealing with an arrival, we need to allocate
 			 if (request.processType == Request.Type.ARRIVAL)
-			 {mainFile.writeInFile("Request "+k+"-----\n"); k++;
-				 System.out.println(" ---------------------------------------Allocate Request "+ request.id+"--------------------------------------");
-				//allocate requests to the smallest subTree based on hose model
-				physicalMachinesAllocation = vmPlacement.hoseVMPlacementAlgorithmSingleRequest(request);
+			 {
+				//allocate the arrivals of the batch window (only this request if the batch size is 1) to the smallest subTree based on hose model
+				batch = this.getBatchWindow(j);
+				batchStart = System.currentTimeMillis();
+				batchAllocation = vmPlacement.hoseVMPlacementAlgorithmBatch(batch);
+				j += batch.size()-1;
 				
-				//check if request was not admitted
-				if (physicalMachinesAllocation == null|| physicalMachinesAllocation.size() == 0)
+				if (this.batchSize > 1)
 				{
-					//specify that the request is rejected
-					request.admitted = false;
-					request.rejectionReason.add(Request.RejectionReason.PRIMARY_EMBEDDING);
+					mainFile.writeInFile("Batch "+batchNb+" : "+batch.size()+" arrivals, latency "+(System.currentTimeMillis()-batchStart)+"\n");
+					batchNb++;
+				}
+				
+				for (int b=0; b<batch.size(); b++)
+				{
+					request = batch.get(b);
+					physicalMachinesAllocation = batchAllocation.get(b);
+					mainFile.writeInFile("Request "+k+"-----\n"); k++;
+					System.out.println(" ---------------------------------------Allocate Request "+ request.id+"--------------------------------------");
+				
+					//check if request was not admitted
+					if (physicalMachinesAllocation == null|| physicalMachinesAllocation.size() == 0)
+					{
+						//specify that the request is rejected
+						request.admitted = false;
+						request.rejectionReason.add(Request.RejectionReason.PRIMARY_EMBEDDING);
+						
+						//print request information
+						vmPlacement.printAllocationForRequest(request, physicalMachinesAllocation);					
+						continue;
+					}			
 					
 					//print request information
-					vmPlacement.printAllocationForRequest(request, physicalMachinesAllocation);					
-					continue;
-				}			
+					vmPlacement.printAllocationForRequest(request, physicalMachinesAllocation);
 				
-				//print request information
-				vmPlacement.printAllocationForRequest(request, physicalMachinesAllocation);
-			
-				//protect the request by embedding backups on random  servers + mapping backup to Vm+reserving backup bandwidth
-				this.randomRequestProtection(request, enumerationNb);
+					//protect the request by embedding backups on random  servers + mapping backup to Vm+reserving backup bandwidth
+					this.randomRequestProtection(request, enumerationNb);
+					
+					//this thread holds no pod lock, it never escalates
+					this.clearEscalation();
+				}
 							
 			 }
 			//release request; note that all the departure request has admitted = false (we only update arrival requests)
@@ -155,10 +239,10 @@ public class VMsProtectionWithBandwidthGuarantee {
 		ArrayList<Integer> bestUsedPm = new ArrayList<Integer>();
 		BackupToVmMappingModelEnhanced backupToVmMappingModel = null;	
 		Double allocationValue = null;
+		int checkpoint;
 		
-		//create a subtree that has the level 3 switch as rootNode
-		SubTree network = new SubTree (this.treeNetwork.getSwitchSetPerTreeLevel(3)[0]);
-		this.treeNetwork.buildSubTree(network, network.rootNode);
+		//get the subtree that has the core switch as rootNode
+		SubTree network = this.treeNetwork.getSubTree(this.treeNetwork.getSwitchSetPerTreeLevel(this.treeNetwork.height)[0]);
 	
 		//check if the network has enough availableVms to admit the backup of the request
 		if (network.getAvailableVms() < remainingBackups)
@@ -188,59 +272,67 @@ public class VMsProtectionWithBandwidthGuarantee {
 			//reset the remaining backup since we are trying a new allocation
 			remainingBackups = backupNeeded;
 			
-			/**
-			 * Try embedding all backup nodes. 
-			 * Because we are trying to embed on random servers, we want to prevent infinite loops
-			 * since the same server may be selected randomly multiple times.
-			 * So we stop the loop either when all backups are embedded or when we tried embedding on nbOfPhysicalMachines
-			 */
-			startPlacement = System.currentTimeMillis();
-			mainFile.writeInFile("----Starting placement loop for enumeration "+ i +" -----");
-			while (remainingBackups!=0 && testedpm <= this.treeNetwork.nbOfPhysicalMachines)
+			//the backups and their bandwidth reserved for this enumeration are rolled back after evaluating it
+			checkpoint = this.treeNetwork.checkpoint();
+			
+			try
 			{
-				//choose random server to allocate backups, nextInt is normally exclusive of the top value,
-				randomServer = rand.nextInt(this.treeNetwork.nbOfPhysicalMachines);
-				pm = this.treeNetwork.physicalMachinesSet[randomServer];
+				/**
+				 * Try embedding all backup nodes. 
+				 * Because we are trying to embed on random servers, we want to prevent infinite loops
+				 * since the same server may be selected randomly multiple times.
+				 * So we stop the loop either when all backups are embedded or when we tried embedding on nbOfPhysicalMachines
+				 */
+				startPlacement = System.currentTimeMillis();
+				mainFile.writeInFile("----Starting placement loop for enumeration "+ i +" -----");
+				while (remainingBackups!=0 && testedpm <= this.treeNetwork.nbOfPhysicalMachines)
+				{
+					//choose random server to allocate backups, nextInt is normally exclusive of the top value,
+					randomServer = rand.nextInt(this.treeNetwork.nbOfPhysicalMachines);
+					pm = this.treeNetwork.physicalMachinesSet[randomServer];
 				
-				//allocate backup based on server available vms
-				vmsToAllocateOnPm = pm.getAvailableVM();
-				vmsToAllocateOnPm =	vmsToAllocateOnPm > remainingBackups ? remainingBackups : vmsToAllocateOnPm ;				
+					//allocate backup based on server available vms
+					vmsToAllocateOnPm = pm.getAvailableVM();
+					vmsToAllocateOnPm =	vmsToAllocateOnPm > remainingBackups ? remainingBackups : vmsToAllocateOnPm ;				
 				
-				if(vmsToAllocateOnPm!=0)
-				{						
-					pm.reserveVM(vmsToAllocateOnPm, request, VirtualMachine.Type.BACKUP);					
-					remainingBackups -= vmsToAllocateOnPm;
+					if(vmsToAllocateOnPm!=0)
+					{						
+						pm.reserveVM(vmsToAllocateOnPm, request, VirtualMachine.Type.BACKUP);					
+						remainingBackups -= vmsToAllocateOnPm;
 					
-					//add server where Vms are allocated to the usedPm list
-					usedPm.add(pm.id);
+						//add server where Vms are allocated to the usedPm list
+						usedPm.add(pm.id);
 				
-				}
+					}
 					
-				testedpm++;
-			}
-			endPlacement = System.currentTimeMillis();
-			placementExecutionTime =  endPlacement-startPlacement;
-			mainFile.writeInFile(" ExecutionTime:" +placementExecutionTime +"-----\n");
+					testedpm++;
+				}
+				endPlacement = System.currentTimeMillis();
+				placementExecutionTime =  endPlacement-startPlacement;
+				mainFile.writeInFile(" ExecutionTime:" +placementExecutionTime +"-----\n");
 			
-			//Prevent running the model and having error if all the checked pm were not allocated any backups (no available vms)
-			if (usedPm.size() == 0)
-			{
-				continue;
-			}
+				//Prevent running the model and having error if all the checked pm were not allocated any backups (no available vms)
+				if (usedPm.size() == 0)
+				{
+					continue;
+				}
 			
-			//get the cost of mapping backup to Vm based on the done allocation and reserve the backup bandwidth
-			backupToVmMappingModel = new BackupToVmMappingModelEnhanced(request, this.treeNetwork);	
+				//get the cost of mapping backup to Vm based on the done allocation and reserve the backup bandwidth
+				backupToVmMappingModel = new BackupToVmMappingModelEnhanced(request, this.treeNetwork);	
 			
-			startModelRun = System.currentTimeMillis();
-			mainFile.writeInFile("----Starting model run for enumeration "+ i +" -----");
-			objectiveValue =  backupToVmMappingModel.modelFormulation(null,null,null,true);
-			endModelRun = System.currentTimeMillis();
-			modelRunExecutionTime = endModelRun-startModelRun;
-			mainFile.writeInFile(" ExecutionTime:" +modelRunExecutionTime +"-----\n");
+				startModelRun = System.currentTimeMillis();
+				mainFile.writeInFile("----Starting model run for enumeration "+ i +" -----");
+				objectiveValue =  backupToVmMappingModel.modelFormulation(null,null,null,true);
+				endModelRun = System.currentTimeMillis();
+				modelRunExecutionTime = endModelRun-startModelRun;
+				mainFile.writeInFile(" ExecutionTime:" +modelRunExecutionTime +"-----\n");
+			}
+			finally
+			{
+				//release the already reserved backup with their bandwidth to try another allocation (also when the model fails)
+				this.treeNetwork.rollback(checkpoint);
+			}
 			
-			//release the already reserved backup with their bandwidth to try another allocation 
-			 this.treeNetwork.releaseAllocatedRequest(request,VirtualMachine.Type.BACKUP);
-			 
 			 //get the value of the best embedding
 			 if (bestObjectiveValue == null && objectiveValue>=0)
 			 {
@@ -378,7 +470,7 @@ public class VMsProtectionWithBandwidthGuarantee {
 	{
 		int backupNeeded = 0;
 		int backupToAllocate = 0;
-		int minNbOfHostedVms = request.subtree.getMinNbOfHostedVMs(request);	
+		int minNbOfHostedVms = request.getMinHostedVms();	
 		int hostedBackupOnNonHostingServers = 0;
 		int hostedBackups = 0;
 		
@@ -536,7 +628,7 @@ public class VMsProtectionWithBandwidthGuarantee {
 	{
 		int backupNeeded = 0;
 		int backupToAllocate = 0;
-		int minNbOfHostedVms = request.subtree.getMinNbOfHostedVMs(request);	
+		int minNbOfHostedVms = request.getMinHostedVms();	
 		int hostedBackupOnNonHostingServers = 0;
 		int hostedBackups = 0;
 		
@@ -556,6 +648,13 @@ public class VMsProtectionWithBandwidthGuarantee {
 			}
 		}
 		
+		//when the requests are admitted concurrently a subtree outside the locked pod needs to lock the whole network
+		if (this.treeNetwork.podLocks != null && this.treeNetwork.podLocks.needsEscalation(subtree.rootNode))
+		{
+			this.treeNetwork.podLocks.requestEscalation();
+			return null;
+		}
+		
 		//get the needed number of backups
 		backupNeeded = request.getBackupNeeded();
 				
@@ -773,14 +872,51 @@ public class VMsProtectionWithBandwidthGuarantee {
 		//BackupToVMMappingModel backupToVmMappingModel;
 		BackupToVmMappingModelEnhanced backupToVmMappingModel;
 		double objectiveValue = 0;
+		boolean accurateMapping = false;
+		
+		//the backups and their bandwidth reserved by this attempt are rolled back if the attempt fails
+		int checkpoint = this.treeNetwork.checkpoint();
+		
+		try
+		{
+			//add backups for the protected requests
+			//s = this.addBackupForRequest(request, subTree);	
+			startPlacement = System.currentTimeMillis();
+			s = this.addBackupForRequestEnhanced(request, subTree,subTree, collocate);	
+			endPlacement = System.currentTimeMillis();
+			placementExecutionTime = endPlacement - startPlacement;
+			mainFile.writeInFile("-----Starting Placement -- execution time "+placementExecutionTime+"--\n");
 			
-		//add backups for the protected requests
-		//s = this.addBackupForRequest(request, subTree);	
-		startPlacement = System.currentTimeMillis();
-		s = this.addBackupForRequestEnhanced(request, subTree,subTree, collocate);	
-		endPlacement = System.currentTimeMillis();
-		placementExecutionTime = endPlacement - startPlacement;
-		mainFile.writeInFile("-----Starting Placement -- execution time "+placementExecutionTime+"--\n");
+			/**
+			 * initial allocation for the backups is available we try mapping backup to primary
+			 * and check on bandwidth by running the model that will directly update the network with the bandwidth
+			 * 
+			 */
+			if (s != null)
+			{
+				//backupToVmMappingModel = new BackupToVMMappingModel(request, treeNetwork);
+				backupToVmMappingModel = new BackupToVmMappingModelEnhanced(request, treeNetwork);
+				startModel = System.currentTimeMillis();
+				objectiveValue =  backupToVmMappingModel.modelFormulation(null,null,null,true);
+				endModel = System.currentTimeMillis();
+				modelExecutionTime = endModel - startModel;
+				mainFile.writeInFile("-----Starting Model --- ExectionTime "+modelExecutionTime+"--\n");
+				accurateMapping = objectiveValue >= 0;
+			}
+		}
+		finally
+		{
+			//keep the backups only if the mapping is accurate, an exception of the model also releases them
+			if (accurateMapping)
+			{
+				this.treeNetwork.commit(checkpoint);
+			}
+			else
+			{
+				this.treeNetwork.rollback(checkpoint);
+			}
+		}
+		
 		//at this point the main network can not admit the backups needed
 		if (s == null)
 		{	
@@ -796,21 +932,8 @@ public class VMsProtectionWithBandwidthGuarantee {
 			return false;
 		}
 		
-		/**
-		 * initial allocation for the backups is available we try mapping backup to primary
-		 * and check on bandwidth by running the model that will directly update the network with the bandwidth
-		 * 
-		 */
-		
-		//backupToVmMappingModel = new BackupToVMMappingModel(request, treeNetwork);
-		backupToVmMappingModel = new BackupToVmMappingModelEnhanced(request, treeNetwork);
-		startModel = System.currentTimeMillis();
-		objectiveValue =  backupToVmMappingModel.modelFormulation(null,null,null,true);
-		endModel = System.currentTimeMillis();
-		modelExecutionTime = endModel - startModel;
-		mainFile.writeInFile("-----Starting Model --- ExectionTime "+modelExecutionTime+"--\n");
 		 //backup and bandwidth allocation and mapping is accurate
-		 if (objectiveValue >= 0)
+		 if (accurateMapping)
 		 { 
 			request.admitted = true;
 			request.updateReservedBandwidth(this.treeNetwork);
@@ -823,11 +946,10 @@ public class VMsProtectionWithBandwidthGuarantee {
 		
 		
 		 //At this point the bandwidth is not available based on the backup embedding, try another embedding
-		 if (s.rootNode.level < FatTreeNetwork.HEIGHT)
+		 if (s.rootNode.level < this.treeNetwork.height)
 		 { 
-			 //release the already reserved backup to try another allocation since the bandwidth 
+			 //the already reserved backups were released to try another allocation since the bandwidth 
 			 //for the existing allocation is not accurate
-			 this.treeNetwork.releaseAllocatedRequest(request,VirtualMachine.Type.BACKUP);
 			 
 			 /**
 			  * try to allocate in parent tree (more non hosting servers, allocation may change based on server ordering)
@@ -844,9 +966,8 @@ public class VMsProtectionWithBandwidthGuarantee {
 		  */
 		 if (collocate)
 		 {
-			//release the already reserved backup to try another allocation since the bandwidth 
+			//the already reserved backups were released to try another allocation since the bandwidth 
 			 //for the existing allocation is not accurate
-			 this.treeNetwork.releaseAllocatedRequest(request,VirtualMachine.Type.BACKUP);
 			 
 			 return this.protectRequest(request, request.subtree, false); 
 		 }
@@ -864,6 +985,104 @@ public class VMsProtectionWithBandwidthGuarantee {
 	}
 	
 	
+	/**
+	 * Same as protectRequest but for a network shared by several admission threads
+	 * (see FatTreeNetwork.enableConcurrentAdmission).
+	 * 
+	 * The request is first protected under the lock of its pod. If the backups or their bandwidth need servers or links
+	 * outside the pod, the attempt is rolled back and the request is protected again after locking the whole network
+	 * 
+	 * @param request request to protect (already placed in the network)
+	 * @param collocate true to try collocating the backups first
+	 * 
+	 * @return boolean true is request was protected
+	 * @throws IloException 
+	 * @throws IOException 
+	 */
+	public boolean protectRequestConcurrently (Request request, boolean collocate) throws IloException, IOException
+	{
+		PodLocks podLocks = this.treeNetwork.podLocks;
+		int pod = podLocks.getPod(request);
+		int nbOfRejectionReasons = request.rejectionReason.size();
+		boolean admitted = request.admitted;
+		boolean isProtected;
+		boolean escalate;
+		int checkpoint;
+		
+		if (pod != PodLocks.ALL_PODS)
+		{
+			podLocks.lock(pod);
+			
+			try
+			{
+				checkpoint = this.treeNetwork.checkpoint();
+				
+				//the attempt is rolled back if it throws
+				escalate = true;
+				
+				try
+				{
+					isProtected = this.protectRequest(request, request.subtree, collocate);
+					
+					//the backups or their bandwidth may need the links and servers of other pods
+					escalate = podLocks.clearEscalation();
+					
+					if (!escalate)
+					{
+						this.treeNetwork.commit(checkpoint);
+						return isProtected;
+					}
+				}
+				finally
+				{
+					if (escalate)
+					{
+						this.treeNetwork.rollback(checkpoint);
+					}
+				}
+				
+				//put back the request as it was before the attempt
+				request.admitted = admitted;
+				
+				while (request.rejectionReason.size() > nbOfRejectionReasons)
+				{
+					request.rejectionReason.remove(request.rejectionReason.size()-1);
+				}
+			}
+			finally
+			{
+				podLocks.clearEscalation();
+				podLocks.unlock(pod);
+			}
+		}
+		
+		//escalate: the backups can be embedded anywhere in the network
+		podLocks.lock(PodLocks.ALL_PODS);
+		
+		try
+		{
+			return this.protectRequest(request, request.subtree, collocate);
+		}
+		finally
+		{
+			podLocks.unlock(PodLocks.ALL_PODS);
+		}
+	}
+	
+	
+	/**
+	 * This function clears the escalation flag of the current thread when the requests can be admitted concurrently
+	 * (see FatTreeNetwork.enableConcurrentAdmission)
+	 */
+	private void clearEscalation ()
+	{
+		if (this.treeNetwork.podLocks != null)
+		{
+			this.treeNetwork.podLocks.clearEscalation();
+		}
+	}
+	
+	
 	/**
 	 * Generates the specified number of requests and set the requests attribute
 	 * to the generated requests
@@ -1040,20 +1259,20 @@ public class VMsProtectionWithBandwidthGuarantee {
 		pm = this.treeNetwork.physicalMachinesSet[0];		
 		pm.reserveVM(3, r1, VirtualMachine.Type.PRIMARY);
 		l = s.searchLink(pm);				
-		l.reserveBandwidth(1, r1.id, Link.BandwidthType.PRIMARY);
+		l.reserveBandwidth(1, r1, Link.BandwidthType.PRIMARY);
 		
 		//reserve TOr to agg bw
 		l=s.searchLink(l.destinationNode);
-		l.reserveBandwidth(1, r1.id, Link.BandwidthType.PRIMARY);
+		l.reserveBandwidth(1, r1, Link.BandwidthType.PRIMARY);
 		
 		pm = this.treeNetwork.physicalMachinesSet[4];		
 		pm.reserveVM(1, r1,  VirtualMachine.Type.PRIMARY);
 		l = s.searchLink(pm);
-		l.reserveBandwidth(1, r1.id, Link.BandwidthType.PRIMARY);
+		l.reserveBandwidth(1, r1, Link.BandwidthType.PRIMARY);
 		
 		//reserve TOr to agg bw
 		l=s.searchLink(l.destinationNode);
-		l.reserveBandwidth(1, r1.id, Link.BandwidthType.PRIMARY);
+		l.reserveBandwidth(1, r1, Link.BandwidthType.PRIMARY);
 		
 		
 		subtreesRoots = treeNetwork.getSwitchSetPerTreeLevel(1);
@@ -1065,17 +1284,17 @@ public class VMsProtectionWithBandwidthGuarantee {
 		pm = this.treeNetwork.physicalMachinesSet[1];
 		pm.reserveVM(4, r2, VirtualMachine.Type.PRIMARY);
 		l = s.searchLink(pm);
-		l.reserveBandwidth(4, r2.id, Link.BandwidthType.PRIMARY);
+		l.reserveBandwidth(4, r2, Link.BandwidthType.PRIMARY);
 		
 		pm = this.treeNetwork.physicalMachinesSet[2];
 		pm.reserveVM(3, r2, VirtualMachine.Type.PRIMARY);
 		l = s.searchLink(pm);
-		l.reserveBandwidth(3, r2.id, Link.BandwidthType.PRIMARY);	
+		l.reserveBandwidth(3, r2, Link.BandwidthType.PRIMARY);	
 		
 		pm = this.treeNetwork.physicalMachinesSet[3];
 		pm.reserveVM(2, r2, VirtualMachine.Type.PRIMARY);
 		l = s.searchLink(pm);
-		l.reserveBandwidth(2, r2.id, Link.BandwidthType.PRIMARY);
+		l.reserveBandwidth(2, r2, Link.BandwidthType.PRIMARY);
 		
 		
 		/*subtreesRoots = treeNetwork.getSwitchSetPerTreeLevel(1);
@@ -1088,22 +1307,22 @@ public class VMsProtectionWithBandwidthGuarantee {
 		pm = this.treeNetwork.physicalMachinesSet[4];
 		pm.reserveVM(3, r3, VirtualMachine.Type.PRIMARY);
 		l = s.searchLink(pm);
-		l.reserveBandwidth(3, r3.id, Link.BandwidthType.PRIMARY);
+		l.reserveBandwidth(3, r3, Link.BandwidthType.PRIMARY);
 		
 		pm = this.treeNetwork.physicalMachinesSet[5];
 		pm.reserveVM(4, r3, VirtualMachine.Type.PRIMARY);
 		l = s.searchLink(pm);
-		l.reserveBandwidth(4, r3.id, Link.BandwidthType.PRIMARY);
+		l.reserveBandwidth(4, r3, Link.BandwidthType.PRIMARY);
 		
 		pm = this.treeNetwork.physicalMachinesSet[6];
 		pm.reserveVM(4, r3, VirtualMachine.Type.PRIMARY);
 		l = s.searchLink(pm);
-		l.reserveBandwidth(4, r3.id, Link.BandwidthType.PRIMARY);
+		l.reserveBandwidth(4, r3, Link.BandwidthType.PRIMARY);
 		
 		pm = this.treeNetwork.physicalMachinesSet[7];
 		pm.reserveVM(4, r3, VirtualMachine.Type.PRIMARY);
 		l = s.searchLink(pm);
-		l.reserveBandwidth(4, r3.id, Link.BandwidthType.PRIMARY);*/
+		l.reserveBandwidth(4, r3, Link.BandwidthType.PRIMARY);*/
 		
 		System.out.println("Protecting request 1");
 		//allocationTree = this.addBackupForRequest(r1, r1.subtree);
@@ -1324,6 +1543,10 @@ public class VMsProtectionWithBandwidthGuarantee {
 		Request request;
 		ArrayList <int []> physicalMachinesAllocation;
 		
+		//arrivals placed together and their allocations
+		ArrayList <Request> batch;
+		ArrayList <ArrayList <int []>> batchAllocation;
+		int batchNb = 0;
 				
 		//create a vmPlacement object
 		VirtualMachinesPlacement vmPlacement = new VirtualMachinesPlacement(this.treeNetwork);
@@ -1337,32 +1560,51 @@ public class VMsProtectionWithBandwidthGuarantee {
 			
 			 //if we are dealing with an arrival, we need to allocate
 			 if (request.processType == Request.Type.ARRIVAL)
-			 {mainFile.writeInFile("Request "+k+":----------------------\n");k++;
-				//allocate requests to the smallest subTree based on hose model
-				physicalMachinesAllocation = vmPlacement.hoseVMPlacementAlgorithmSingleRequest(request);
+			 {
+				//allocate the arrivals of the batch window (only this request if the batch size is 1) to the smallest subTree based on hose model
+				batch = this.getBatchWindow(i);
+				start = System.currentTimeMillis();
+				batchAllocation = vmPlacement.hoseVMPlacementAlgorithmBatch(batch);
+				i += batch.size()-1;
 				
-				//check if request was not admitted
-				if (physicalMachinesAllocation == null|| physicalMachinesAllocation.size() == 0)
-				{	
-					//specify that the request is rejected
-					request.admitted = false;
-					request.rejectionReason.add(Request.RejectionReason.PRIMARY_EMBEDDING);
+				if (this.batchSize > 1)
+				{
+					mainFile.writeInFile("Batch "+batchNb+" : "+batch.size()+" arrivals, latency "+(System.currentTimeMillis()-start)+"\n");
+					batchNb++;
+				}
+				
+				for (int b=0; b<batch.size(); b++)
+				{
+					request = batch.get(b);
+					physicalMachinesAllocation = batchAllocation.get(b);
+					mainFile.writeInFile("Request "+k+":----------------------\n");k++;
 					
+					//check if request was not admitted
+					if (physicalMachinesAllocation == null|| physicalMachinesAllocation.size() == 0)
+					{	
+						//specify that the request is rejected
+						request.admitted = false;
+						request.rejectionReason.add(Request.RejectionReason.PRIMARY_EMBEDDING);
+						
+						//print request information
+						vmPlacement.printAllocationForRequest(request, physicalMachinesAllocation);
+						
+						continue;
+					}			
+				
 					//print request information
 					vmPlacement.printAllocationForRequest(request, physicalMachinesAllocation);
-					
-					continue;
-				}			
-			
-				//print request information
-				vmPlacement.printAllocationForRequest(request, physicalMachinesAllocation);
-				mainFile.writeInFile("----Main protection starting-----------\n");
-				start = System.currentTimeMillis();
-				//protect the request				
-				 this.protectRequest(request, request.subtree, true);
-				 end = System.currentTimeMillis();
-				 execution = end - start;
-				 mainFile.writeInFile("----Main protection ending "+execution +"-----------\n\n\n");
+					mainFile.writeInFile("----Main protection starting-----------\n");
+					start = System.currentTimeMillis();
+					//protect the request				
+					 this.protectRequest(request, request.subtree, true);
+					 
+					 //this thread holds no pod lock, it never escalates
+					 this.clearEscalation();
+					 end = System.currentTimeMillis();
+					 execution = end - start;
+					 mainFile.writeInFile("----Main protection ending "+execution +"-----------\n\n\n");
+				}
 			 }
 			 //release request; note that all the departure request has admitted = false (we only update arrival requests)
 			 else if (request.processType == Request.Type.DEPARTURE )
@@ -1469,6 +1711,30 @@ public class VMsProtectionWithBandwidthGuarantee {
 		}
 	}
 	
+	/**
+	 * This function returns the network used by the automated tests.
+	 * It is built at the first call, the next calls reset its reservation state 
+	 * instead of building the same topology again for each test
+	 * 
+	 * @return network with no reservation
+	 */
+	static FatTreeNetwork getTestNetwork ()
+	{
+		if (testNetwork != null)
+		{
+			testNetwork.reset();
+			return testNetwork;
+		}
+		
+		//testNetwork = new FatTreeNetwork(12,4,2,2,3,500,1000,1000);
+		testNetwork = new FatTreeNetwork(128,6,2,2,32,1000,10000,10000);
+		//testNetwork = new FatTreeNetwork(256,6,2,2,64,1000,10000,10000);
+		testNetwork.buildTreeNetwork();
+		
+		return testNetwork;
+	}
+	
+	
 	/**
 	 * This is a helper function to automate the test of the 2 main algorithms
 	 * 1-BackupToVmMappingModelTest()
@@ -1515,10 +1781,8 @@ public class VMsProtectionWithBandwidthGuarantee {
 		FileManipulation revenueTimeFile = new FileManipulation(revenueOverTimeFile);
 		
 		
-		//FatTreeNetwork treeNetwork1 = new FatTreeNetwork(12,4,2,2,3,500,1000,1000);
-		FatTreeNetwork treeNetwork1 = new FatTreeNetwork(128,6,2,2,32,1000,10000,10000);
-		//FatTreeNetwork treeNetwork1 = new FatTreeNetwork(256,6,2,2,64,1000,10000,10000);
-		treeNetwork1.buildTreeNetwork();	
+		//the topology is built once for all the tests, only its reservation state is reset
+		FatTreeNetwork treeNetwork1 = VMsProtectionWithBandwidthGuarantee.getTestNetwork();
 
 		mainFile.writeInFile("\n\n==================================================================================================================================\n");
 		mainFile.writeInFile(treeNetwork1.toString());	
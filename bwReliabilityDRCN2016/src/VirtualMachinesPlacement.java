@@ -2,11 +2,22 @@ import ilog.concert.IloException;
 
 import java.nio.file.LinkOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import Network.FatTreeNetwork;
 import Network.Link;
+import Network.Node;
 import Network.PhysicalMachine;
+import Network.PodLocks;
 import Network.Request;
 import Network.SubTree;
 import Network.Switch;
@@ -23,7 +34,13 @@ import Network.VirtualMachine;
  */
 public class VirtualMachinesPlacement{
 	
+	//number of placements searched without lock before locking the whole network (concurrent admission)
+	static final int MAX_OPTIMISTIC_ATTEMPTS = 3;
+	
 	FatTreeNetwork treeNetwork;
+	
+	//pool of the threads checking the candidate sub trees of a level in parallel (null to check them one after the other)
+	ForkJoinPool candidatesPool;
 
 	VirtualMachinesPlacement(FatTreeNetwork treeNetwork)
 	{
@@ -32,6 +49,18 @@ public class VirtualMachinesPlacement{
 	}
 	
 	
+	/**
+	 * This function makes the placement check the candidate sub trees of each level in parallel on the threads of the pool.
+	 * The chosen sub tree is the same as when the candidates are checked one after the other
+	 * 
+	 * @param candidatesPool pool of the threads checking the candidates (null to check them one after the other)
+	 */
+	public void setCandidatesPool (ForkJoinPool candidatesPool)
+	{
+		this.candidatesPool = candidatesPool;
+	}
+	
+	
 	/**
 	 * Main requests placement algorithm that places VMs and guarantee them bandwidth
 	 * based on the hose model
@@ -116,95 +145,219 @@ public class VirtualMachinesPlacement{
 		return  physicalVMAllocation;
 	}
 	
-		
+	
 	/**
-	 * This function allocates the request to the given subtree by allocating 
-	 * VMs and reserving bandwidth over all the links of the subtree
+	 * Same as hoseVMPlacementAlgorithm but the requests are admitted in consecutive batches of batchSize requests
+	 * (see hoseVMPlacementAlgorithmBatch). The placement time of each batch is kept in batchLatencies
 	 * 
-	 * @param request request to allocate
-	 * @param subTree best subtree where to allocate the request
+	 * @param requests requests to place in the network
+	 * @param batchSize number of requests placed together
+	 * @param batchLatencies list to which the placement time of each batch is added (in nanoseconds), null if it is not needed
+	 * 
+	 * @return an array list indexed by the request id with allocations for its VMs
+	 */
+	public ArrayList <ArrayList <int []>> hoseVMPlacementAlgorithm( ArrayList<Request> requests, int batchSize, ArrayList <Long> batchLatencies)
+	{
+		//array list of physical machine with VM allocated on them for each request
+		ArrayList <ArrayList <int []>> requestsAllocation = new ArrayList <ArrayList <int []>>();
+		ArrayList <ArrayList <int []>> batchAllocation;
+		ArrayList <Request> batch;
+		long startTime;
+		
+		for (int i=0; i<requests.size(); i+=batchSize)
+		{
+			batch = new ArrayList <Request>(requests.subList(i, Math.min(i+batchSize, requests.size())));
+			
+			startTime = System.nanoTime();
+			batchAllocation = this.hoseVMPlacementAlgorithmBatch(batch);
+			
+			if (batchLatencies != null)
+			{
+				batchLatencies.add(System.nanoTime()-startTime);
+			}
+			
+			requestsAllocation.addAll(batchAllocation);
+		}
+		
+		return requestsAllocation;
+	}
+	
+	
+	/**
+	 * This function places a batch of requests that arrived together in the network.
+	 * The requests are placed from the smallest bandwidth demand (N*B) to the largest one: the small requests fill the 
+	 * sub trees left by the previous requests and a large request that can not be admitted does not take the place of several small ones.
+	 * All of them are placed on the same network state: the whole network is locked for the batch when the admission is concurrent 
+	 * (see FatTreeNetwork.enableConcurrentAdmission)
 	 * 
-	 * @return array list of physical machines id and the number of VMs allocated for the request
+	 * @param batch requests to place in the network
 	 * 
+	 * @return an array list of the allocations of the requests in the order of the batch (null for the rejected requests)
 	 */
-	public ArrayList<int[]> allocateRequest (Request request, SubTree subTree)
-	{	
-		PhysicalMachine pm;
-		Link l;
+	public ArrayList <ArrayList <int []>> hoseVMPlacementAlgorithmBatch (final ArrayList <Request> batch)
+	{
+		ArrayList <ArrayList <int []>> requestsAllocation = new ArrayList <ArrayList <int []>>();
+		PodLocks podLocks = this.treeNetwork.podLocks;
+		Integer order [] = new Integer [batch.size()];
 		
-		//remaining VM that are not yet allocated
-		int remainingVMs = request.N;
+		for (int i=0; i<batch.size(); i++)
+		{
+			order[i] = i;
+			requestsAllocation.add(null);
+		}
 		
-		//VMs to allocate to this physical machine
-		int VMToAllocate = 0;
+		//smallest demand first, the requests with the same demand keep their arrival order
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer request1, Integer request2)
+			{
+				return Long.compare((long)batch.get(request1).N*batch.get(request1).B, (long)batch.get(request2).N*batch.get(request2).B);
+			}
+		});
 		
-		//array of <pmId, VMAllocated for the request> that hold the number of Vm allocated to the specified pm
-		ArrayList <int []> physicalVMAllocation = new ArrayList<int[]>();
+		if (podLocks != null)
+		{
+			podLocks.lock(PodLocks.ALL_PODS);
+		}
 		
-		//temporary array that holds <pmId, VMAllocated for the request>
-		int[] allocation;
+		try
+		{
+			for (int i=0; i<order.length; i++)
+			{
+				requestsAllocation.set(order[i], this.hoseVMPlacementAlgorithmSingleRequest(batch.get(order[i])));
+			}
+		}
+		finally
+		{
+			if (podLocks != null)
+			{
+				podLocks.unlock(PodLocks.ALL_PODS);
+			}
+		}
 		
-		//bandwidth needed to reserve on link
-		int bandwidthNeeded = 0 ;
+		return requestsAllocation;
+	}
+	
+	
+	/**
+	 * Same as hoseVMPlacementAlgorithmSingleRequest but for a network shared by several admission threads
+	 * (see FatTreeNetwork.enableConcurrentAdmission).
+	 * 
+	 * The best subtree is searched without lock then its pod is locked and the subtree is checked again
+	 * before allocating the request, so requests placed in different pods are admitted in parallel.
+	 * If the best subtree spans the core, if no subtree is found or if the pod keeps changing
+	 * the whole network is locked and the request is placed as by a single thread
+	 * 
+	 * @param request request to place in the network
+	 * 
+	 * @return an array list of physicalMachines with the number of VMs allocated on each of them for their requests
+	 */
+	public ArrayList <int []> hoseVMPlacementAlgorithmConcurrentRequest (Request request)
+	{
+		PodLocks podLocks = this.treeNetwork.podLocks;
+		SubTree subTree = null;
+		int pod;
 		
-		//loop over the subtree physical machines
-		for(int i=0; i<subTree.physicalMachines.size(); i++)
+		for (int i=0; i<MAX_OPTIMISTIC_ATTEMPTS; i++)
 		{
-			pm = subTree.physicalMachines.get(i);
+			//the pods may be changed by other threads during the search
+			subTree = this.getBestPlacementForRequest(request, 1);
 			
-			//stop looping through physical machines if no remaining VMs to allocate
-			if( remainingVMs ==0 )
+			if (subTree == null)
 			{
 				break;
 			}
 			
-			//if the current pm have no available VM continue to the next one
-			if (pm.getAvailableVM()==0)
+			pod = podLocks.getPod(subTree);
+			
+			if (pod == PodLocks.ALL_PODS)
 			{
-				continue;
+				break;
 			}
 			
-			//search for the link having the physical machine as source node
-			l = subTree.searchLink(pm);
+			podLocks.lock(pod);
 			
-			//if there is empty slots in pm but the link has bandwidth<bandwith needed for one VM we continue
-			if (l.bandwidth < request.B)
+			try
 			{
-				continue;
+				//check the subtree again since it may have changed before locking its pod
+				if (subTree.getAvailableVms() >= request.N && this.isBandwidthAvailable(subTree, request))
+				{
+					return this.allocateRequest(request, subTree);
+				}
 			}
-			
-			//get the VM that should be allocated to the physical machine pm
-			VMToAllocate = remainingVMs<pm.getAvailableVM() ? remainingVMs:pm.getAvailableVM();
-			
-			//if l can not guarantee bandwidth for all VMToAllocate we allocate only the number it can guarantee admit
-			bandwidthNeeded =  VMToAllocate < (request.N-VMToAllocate) ? VMToAllocate*request.B :  (request.N-VMToAllocate)*request.B;
-			
-			if(l.bandwidth < bandwidthNeeded)
+			finally
 			{
-				VMToAllocate = l.bandwidth/request.B;
-				
+				podLocks.unlock(pod);
 			}
+		}
+		
+		//escalate: no other thread can change the network while searching at all the levels
+		podLocks.lock(PodLocks.ALL_PODS);
+		
+		try
+		{
+			return this.hoseVMPlacementAlgorithmSingleRequest(request);
+		}
+		finally
+		{
+			podLocks.unlock(PodLocks.ALL_PODS);
+		}
+	}
+	
+	
+	/**
+	 * This function allocates the request to the given subtree by allocating 
+	 * VMs and reserving bandwidth over all the links of the subtree.
+	 * The allocation found by the last isBandwidthAvailable() check of the subtree for the request is reused,
+	 * otherwise the subtree is checked again
+	 * 
+	 * @param request request to allocate
+	 * @param subTree best subtree where to allocate the request
+	 * 
+	 * @return array list of physical machines id and the number of VMs allocated for the request, null if the subtree can not admit the request
+	 * 
+	 */
+	public ArrayList<int[]> allocateRequest (Request request, SubTree subTree)
+	{	
+		PhysicalMachine pm;
+		Link l;
+		
+		//array of <pmId, VMAllocated for the request> that hold the number of Vm allocated to the specified pm
+		ArrayList <int []> physicalVMAllocation;
+		
+		//VMs to allocate to the physical machine
+		int VMToAllocate;
+		
+		//bandwidth needed to reserve on link
+		int bandwidthNeeded = 0 ;
+		
+		if ((request.primaryAllocationPlanSubTree != subTree || request.primaryAllocationPlan == null) && !this.isBandwidthAvailable(subTree, request))
+		{
+			return null;
+		}
+		
+		physicalVMAllocation = request.primaryAllocationPlan;
+		
+		//the plan is only valid until the network changes
+		request.primaryAllocationPlan = null;
+		request.primaryAllocationPlanSubTree = null;
+		
+		//loop over the physical machines of the allocation
+		for(int i=0; i<physicalVMAllocation.size(); i++)
+		{
+			pm = this.treeNetwork.physicalMachinesSet[physicalVMAllocation.get(i)[0]];
+			VMToAllocate = physicalVMAllocation.get(i)[1];
+			
+			//search for the link having the physical machine as source node
+			l = this.treeNetwork.searchLink(pm);
 			
 			//reserve VMs
 			pm.reserveVM(VMToAllocate,request, VirtualMachine.Type.PRIMARY);
 			
-			//reduce the amount of remaining VMs to allocate
-			remainingVMs-=VMToAllocate;
-			
 			//reserve bandwidth
 			bandwidthNeeded =  VMToAllocate < (request.N-VMToAllocate) ? VMToAllocate*request.B :  (request.N-VMToAllocate)*request.B;
-			l.reserveBandwidth(bandwidthNeeded,request.id,Link.BandwidthType.PRIMARY);
-			
-			//reset bandwidth for the next iteration
-			bandwidthNeeded = 0;
-			
-			//add the allocation to physicalVMAllocation array list
-			allocation = new int[2];
-			allocation[0] = pm.id;
-			allocation[1] = VMToAllocate;
-			physicalVMAllocation.add(allocation);
-			allocation = null;
-			
+			l.reserveBandwidth(bandwidthNeeded, request,Link.BandwidthType.PRIMARY);
 		}
 		
 		//allocate bandwidth on the upper levels link (2,3)
@@ -235,7 +388,13 @@ public class VirtualMachinesPlacement{
 		Link l = null;
 		int bandwidth = 0;
 		int allocatedVMs = 0;
-		System.out.println("switches size "+subTree.switches.size());
+		
+		//only the switches above the allocated physical machines need bandwidth when checking the sub tree
+		if (!reserve)
+		{
+			return this.isUpperLevelBandwidthAvailable(subTree, request, physicalVMAllocation);
+		}
+		
 		for (int i=0; i<subTree.switches.size(); i++)
 		{ 
 			//get link having the switch as source node, this ensures not getting the link related to Pm
@@ -247,17 +406,15 @@ public class VirtualMachinesPlacement{
 				continue;
 			}
 			
-			//get the number of VMs allocated under the switch
+			//get the number of VMs allocated under the switch (O(1) range check per allocated physical machine)
 			allocatedVMs = subTree.getAllocatedVM(physicalVMAllocation, subTree.switches.get(i));
 			
 			//get the bandwidth that need to be reserved on the link
 			bandwidth = allocatedVMs*request.B<(request.N-allocatedVMs)*request.B ? 
 					allocatedVMs*request.B:(request.N-allocatedVMs)*request.B;
 			
-			System.out.println("Switch "+subTree.switches.get(i).id+" level "+subTree.switches.get(i).level+" allocatedVms "+allocatedVMs+" bw "+bandwidth);
-			
 			//return false if the link can not guarantee the bandwidth
-			if ( l.bandwidth < bandwidth)
+			if ( l.getBandwidth() < bandwidth)
 			{
 				return false;
 			}
@@ -265,7 +422,7 @@ public class VirtualMachinesPlacement{
 			//reserve the minimum bandwidth on the link
 			if (reserve)
 			{
-				l.reserveBandwidth(bandwidth,request.id,Link.BandwidthType.PRIMARY);
+				l.reserveBandwidth(bandwidth, request,Link.BandwidthType.PRIMARY);
 			}
 		}		
 		
@@ -274,6 +431,101 @@ public class VirtualMachinesPlacement{
 	}
 	
 	
+	/**
+	 * This function checks if the upper levels links of the sub tree can guarantee the bandwidth of the allocation.
+	 * The switches without allocated VMs need no bandwidth, so only the ancestors of the allocated physical machines are checked.
+	 * The allocations are in the order of the sub tree physical machines, so the allocations under a switch are consecutive
+	 * 
+	 * @param subTree subtree where we want to allocate the bandwidth
+	 * @param request request to allocate bandwidth for
+	 * @param physicalVMAllocation <pmId, VMsAllocated> the physical machines where we allocated the request
+	 * 
+	 * @return true if the bandwidth can be reserved on this subtree
+	 */
+	private boolean isUpperLevelBandwidthAvailable (SubTree subTree, Request request, ArrayList <int[]> physicalVMAllocation)
+	{
+		//switch of each level (below the root) above the current allocations and the VMs allocated under it
+		Switch currentSwitch [] = new Switch [subTree.rootNode.level];
+		int allocatedVMs [] = new int [subTree.rootNode.level];
+		Switch s;
+		
+		for (int i=0; i<physicalVMAllocation.size(); i++)
+		{
+			s = this.treeNetwork.physicalMachinesSet[physicalVMAllocation.get(i)[0]].parent;
+			
+			for (; s.level < subTree.rootNode.level; s = s.parent)
+			{
+				//all the allocations under the previous switch of this level were counted
+				if (s != currentSwitch[s.level])
+				{
+					if (currentSwitch[s.level] != null && !this.isUplinkBandwidthAvailable(currentSwitch[s.level], allocatedVMs[s.level], request))
+					{
+						return false;
+					}
+					
+					currentSwitch[s.level] = s;
+					allocatedVMs[s.level] = 0;
+				}
+				
+				allocatedVMs[s.level] += physicalVMAllocation.get(i)[1];
+			}
+		}
+		
+		for (int level=1; level<currentSwitch.length; level++)
+		{
+			if (currentSwitch[level] != null && !this.isUplinkBandwidthAvailable(currentSwitch[level], allocatedVMs[level], request))
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	
+	/**
+	 * This function checks if the link having the switch as source can guarantee the bandwidth of the VMs allocated under the switch
+	 * 
+	 * @param s switch
+	 * @param allocatedVMs number of VMs allocated under the switch
+	 * @param request
+	 * 
+	 * @return true if the link has enough residual bandwidth
+	 */
+	private boolean isUplinkBandwidthAvailable (Switch s, int allocatedVMs, Request request)
+	{
+		//get the bandwidth that need to be reserved on the link
+		int bandwidth = allocatedVMs*request.B<(request.N-allocatedVMs)*request.B ? 
+				allocatedVMs*request.B:(request.N-allocatedVMs)*request.B;
+		
+		return this.treeNetwork.searchLink(s).getBandwidth() >= bandwidth;
+	}
+	
+	
+	/**
+	 * This function returns the sub trees of the level that can fit the request in ascending order of the residual bandwidth 
+	 * on the link connecting the subtree to the rest of the network.
+	 * 
+	 * The sub trees below the core are iterated from the bandwidth index of the network without sorting them for each request, 
+	 * the caller skips the ones that do not have enough available VMs for the request.
+	 * The sub trees of the core switches have no upper link, the ones with enough available VMs are returned in their order
+	 * 
+	 * @param level level of the sub trees root
+	 * @param request
+	 * 
+	 * @return iterator of the candidate sub trees
+	 */
+	public Iterator <SubTree> getCandidateSubTrees (int level, Request request)
+	{
+		if (level < this.treeNetwork.height)
+		{
+			return this.treeNetwork.bandwidthIndex.iterator(level);
+		}
+		
+		return this.getSubtreesWithAvailableSlots (level,  request).iterator();
+	}
+	
+	
 	/**
 	 * This function returns the list of subtrees that can fit the request
 	 * 
@@ -294,10 +546,8 @@ public class VirtualMachinesPlacement{
 		//loop over the switches
 		for (int i = 0; i< subtreesRoots.length; i++)
 		{	
-			subTree = new SubTree(subtreesRoots[i]) ;	
-			
-			//build the subTree
-			subTree = this.treeNetwork.buildSubTree(subTree, subTree.rootNode);
+			//get the subTree built with the network
+			subTree = this.treeNetwork.getSubTree(subtreesRoots[i]);
 			
 			//check for the available VMs
 			if ( subTree.getAvailableVms() < request.N)
@@ -324,7 +574,9 @@ public class VirtualMachinesPlacement{
 	
 	/**
 	 * This function checks if the bandwidth of the request can be satisfied 
-	 * by the sub tree
+	 * by the sub tree (see getAllocationPlan()).
+	 * 
+	 * The allocation is kept in the request (primaryAllocationPlan) to be reserved by allocateRequest()
 	 *
 	 * @param subTree 
 	 * @param request array [requestId, nbOfVMs, bandwidthPerVM]
@@ -333,227 +585,572 @@ public class VirtualMachinesPlacement{
 	 */
 	public boolean isBandwidthAvailable (SubTree subTree, Request request)
 	{	
-		PhysicalMachine pm;
-		Link l;
+		request.primaryAllocationPlan = this.getAllocationPlan(subTree, request);
+		request.primaryAllocationPlanSubTree = request.primaryAllocationPlan != null ? subTree : null;
 		
-		//remaining VM that are not yet allocated
-		int remainingVMs = request.N;
-		
-		//VMs to allocate to this physical machine
-		int VMToAllocate = 0;
+		return request.primaryAllocationPlan != null;
+	}
+	
+	
+	/**
+	 * This function returns the allocation of the VMs of the request in the sub tree that satisfies its bandwidth.
+	 * It only reads the network so the sub trees can be checked by several threads at the same time.
+	 * 
+	 * The numbers of VMs of the request that each sub tree of the subtree can host are computed in one bottom-up pass: 
+	 * m VMs can be hosted below a node if they can be split between its children 
+	 * and each child link can guarantee min(m, N-m)*B to the VMs hosted below it (hose model).
+	 * The children of a node are visited in the sub tree order until no other number of VMs can be hosted below the node
+	 * (or until N VMs can be hosted below the root), then the allocation is built top-down 
+	 * by giving to each visited child the VMs that the previous children can not host.
+	 * As before, a physical machine whose link can not guarantee the bandwidth of one VM is not used.
+	 *
+	 * @param subTree 
+	 * @param request array [requestId, nbOfVMs, bandwidthPerVM]
+	 * 
+	 * @return array of <pmId, VMAllocated for the request> that hold the number of Vm allocated to the specified pm, 
+	 * null if the bandwidth of the request can not be admitted in the subtree
+	 */
+	public ArrayList <int []> getAllocationPlan (SubTree subTree, Request request)
+	{	
+		//numbers of VMs that the visited children of each visited switch can host
+		HashMap <Node, long [][]> childrenVmCounts = new HashMap <Node, long [][]>();
 		
 		//array of <pmId, VMAllocated for the request> that hold the number of Vm allocated to the specified pm
-		ArrayList <int []> physicalVMAllocation = new ArrayList<int[]>();
+		ArrayList <int []> physicalVMAllocation;
 		
-		//temporary array that holds <pmId, VMAllocated for the request>
-		int[] allocation = new int[2];
-		
-		//bandwidth needed to reserve on link
-		int bandwidthNeeded = 0 ;
+		long vmCounts [];
 		
-		//loop over the subtree physical machines
-		for(int i=0; i<subTree.physicalMachines.size(); i++)
+		if (!this.canHostVms(subTree.rootNode, request))
 		{
-			pm = subTree.physicalMachines.get(i);
-
-			//stop looping through physical machines if no remaining VMs to allocate
-			if( remainingVMs ==0 )
-			{
-				break;
-			}
-			
-			//if the current pm have no available VM continue to the next one
-			if (pm.getAvailableVM()==0)
-			{
-				continue;
-			}
-			
-			//search for the link having the physical machine as source node
-			l = subTree.searchLink(pm);
-			
-			//if there is empty slots in pm but the link has bandwidth<bandwith needed for one VM we continue
-			if (l.bandwidth < request.B)
-			{				
-				continue;
-			}
-			
-			//get the VM that should be allocated to the physical machine pm
-			VMToAllocate = remainingVMs<pm.getAvailableVM() ? remainingVMs:pm.getAvailableVM();
-		
-			//if l can not guarantee bandwidth for all VMToAllocate we allocate only the number it can guarantee admit
-			
-			bandwidthNeeded =  VMToAllocate < (request.N-VMToAllocate) ? VMToAllocate*request.B :  (request.N-VMToAllocate)*request.B;
-			
-			if(l.bandwidth < bandwidthNeeded)
-			{
-				//this is valid because at most we will VMToAllocate*B bandwidth to allocate or less
-				VMToAllocate = l.bandwidth/request.B;
-				
-			}
-			
-			bandwidthNeeded =0;
-			
-			//allocate VMs since we are sure the link can support it
-			//reduce the amount of remaining VMs to allocate
-			remainingVMs-=VMToAllocate;
-	
-			//add the allocation to physicalVMAllocation array list
-			allocation = new int [2];
-			allocation[0] = pm.id;
-			allocation[1] = VMToAllocate;
-			physicalVMAllocation.add(allocation);		
-			allocation = null;
-			
+			return null;
 		}
 		
-		/**
-		 *  if the loop through physical machines ends with remaining VM to allocate, this means that
-		 *  some of the links related to the physical machines can not support the requested bandwidth
-		 *  and so the subTree is not a valid one for this request
-		 */
-		if (remainingVMs !=0)
+		vmCounts = this.getHostableVmCounts(subTree.rootNode, request, true, childrenVmCounts);
+		
+		if (!isVmCountSet(vmCounts, request.N))
 		{	
-			return false;
+			return null;
 		}
 		
-			
-		/**
-		 * we need to check bandwidth on the upper level links related to switches
-		 * 
-		 */		
-		if (subTree.rootNode.level!=1)
-		{
-			return this.allocateUpperLevelBandwidth (subTree, request, physicalVMAllocation, false);
-		}
+		physicalVMAllocation = new ArrayList <int []>();
+		this.buildAllocation(subTree.rootNode, request.N, childrenVmCounts, physicalVMAllocation);
 		
-		return	true;		
+		//empty memory
+		childrenVmCounts = null;
 		
-	}
+		return physicalVMAllocation;
 		
+	}
+	
+	
 	/**
-	 * Check if bandwidth available in a subtree starting with the highest level.
-	 * This takes into consideration not rejecting a request after the first attempt but trying
-	 * to allocate the minimum number of VMs possible
-	 * @TODO fix mentioned issue (at the last iteration)
+	 * This function computes the numbers of VMs of the request (from 0 to N) that the sub tree of the node can host
+	 * without considering the link above the node. The node must be able to host VMs (see canHostVms())
 	 * 
-	 * @param subTree the main sub tree
-	 * @param request the request
-	 * @param vmToAllocate the actual number of vms to allocate (should be equal to N initially)
-	 * @return
+	 * @param node switch or physical machine
+	 * @param request
+	 * @param root true if the node is the root of the checked sub tree (only N VMs are needed)
+	 * @param childrenVmCounts for each visited switch, the numbers of VMs hosted by the sub tree of its child i (considering its link)
+	 * at index 2*i (null if the child can not host VMs) and by the sub trees of its children 0..i at index 2*i+1 
+	 * (null for the children that were not visited). The sets are shared and never changed once computed
+	 * 
+	 * @return set of the numbers of VMs (bit m is set if m VMs can be hosted)
 	 */
-	public int[] isBandwidthAvailableUpdated (SubTree subTree, Request request, int vmToAllocate)
+	private long [] getHostableVmCounts (Node node, Request request, boolean root, HashMap <Node, long [][]> childrenVmCounts)
 	{
-		ArrayList<SubTree> childTrees;
-		int [] returnValues = new int [2];
-		SubTree s = null;
-		Link l;
-		int bandwidthToReserve;
-		int childRemainingVms = -1;
-		//this holds the VMs that we should try to allocate to each child tree
-		int remainingVms = vmToAllocate;
+		long vmCounts [] = new long [(request.N >> 6) + 1];
+		long childVmCounts [][];
+		long previousVmCounts [];
+		Link [] childLinks;
+		int maxVms;
 		
+		//0 VMs can always be hosted
+		vmCounts[0] = 1L;
 		
-		/** 
-		 * this holds the total number of remaining VMs to allocate to the next child tree 
-		 * (considering only child trees of the initial subTree od the base call of the function)
-		 */		
-		int totalRemaining = request.N;
-				
-		System.out.println("MAIN SUBTREE :" + subTree.rootNode.id+ " level : "+subTree.rootNode.level);
-		System.out.println("MAIN REQUEST :" +vmToAllocate);
+		if (node.level == PhysicalMachine.MACHINE_LEVEL)
+		{
+			addVmCountsRange(vmCounts, 1, Math.min(((PhysicalMachine)node).getAvailableVM(), request.N));
+			return vmCounts;
+		}
 		
-		//get child trees on level below
-		childTrees = subTree.getChildTrees ();
+		//no sub tree of the node can host more than the available VMs of the node
+		maxVms = Math.min(((Switch)node).getAvailableVMs(), request.N);
 		
-		//order child trees by residual link bandwidth
-		this.treeNetwork.orderSubtreesByUpperLinkResidualBandwidth(childTrees);
+		childLinks = this.treeNetwork.getChildLinks(node);
+		childVmCounts = new long [2*childLinks.length][];
+		childrenVmCounts.put(node, childVmCounts);
+		previousVmCounts = vmCounts;
 		
-		//loop over child trees
-		for (int i = 0; i< childTrees.size(); i++)
-		{	
-					
-			//get child tree
-			s = childTrees.get(i);
-			
-			
-			//keep looping through the same sub tree until we get childRemainingVms=0; so we are able to allocate the minimum nb of VM that can be admit it
-			if ( childRemainingVms >0 )
+		for (int i=0; i<childLinks.length; i++)
+		{
+			if (this.canHostVms(childLinks[i].sourceNode, request))
 			{
-				//decrease i to make sure it will be called for all sub trees
-				i--;
+				childVmCounts[2*i] = this.getHostableVmCounts(childLinks[i].sourceNode, request, false, childrenVmCounts);
 				
-				//get the previous sub tree that couldn't accommodate the request
-				s = childTrees.get(i);	
+				//the child link must guarantee min(m, N-m)*B to the m VMs hosted below it
+				childVmCounts[2*i] = removeVmCountsRange(childVmCounts[2*i], childLinks[i].getBandwidth()/request.B + 1, request.N - childLinks[i].getBandwidth()/request.B - 1);
 				
-				//try allocating the nb of VMs that were able to be admitted in the previous iteration
-				remainingVms = vmToAllocate - childRemainingVms;
+				previousVmCounts = addVmCounts(childVmCounts[2*i], previousVmCounts, request.N);
 			}
 			
-			System.out.println("		CHILD :" + s.rootNode.id+ " level : "+s.rootNode.level+" initial allocation "+ remainingVms);	
+			childVmCounts[2*i+1] = previousVmCounts;
 			
-			vmToAllocate = remainingVms < s.getAvailableVms() ? remainingVms : s.getAvailableVms();				
-			bandwidthToReserve =  vmToAllocate < (request.N-vmToAllocate) ? vmToAllocate*request.B :  (request.N-vmToAllocate)*request.B;
+			//the next children are not needed if the visited ones can already host any number of VMs (or N VMs for the root)
+			if (root ? isVmCountSet(previousVmCounts, request.N) : isVmCountsRange(previousVmCounts, maxVms))
+			{
+				break;
+			}
+		}
+		
+		return previousVmCounts;
+	}
+	
+	
+	/**
+	 * This function checks if the node can host VMs of the request:
+	 * the switches without available VMs or without a server link that can guarantee the bandwidth of one VM can not
+	 * and, as before, a physical machine whose link can not guarantee the bandwidth of one VM is not used
+	 * 
+	 * @param node switch or physical machine
+	 * @param request
+	 * 
+	 * @return true if VMs of the request may be hosted below the node
+	 */
+	private boolean canHostVms (Node node, Request request)
+	{
+		if (node.level == PhysicalMachine.MACHINE_LEVEL)
+		{
+			return ((PhysicalMachine)node).getAvailableVM() != 0 && this.treeNetwork.searchLink(node).getBandwidth() >= request.B;
+		}
+		
+		return ((Switch)node).getAvailableVMs() != 0 && ((Switch)node).getMaxServerBandwidth() >= request.B;
+	}
+	
+	
+	/**
+	 * This function allocates the VMs on the physical machines under the node, the node sub tree must be able to host them
+	 * 
+	 * @param node switch or physical machine
+	 * @param vms number of VMs to allocate under the node
+	 * @param childrenVmCounts numbers of VMs hosted by the children of the switches (see getHostableVmCounts())
+	 * @param physicalVMAllocation array of <pmId, VMAllocated for the request> where the allocations are added
+	 */
+	private void buildAllocation (Node node, int vms, HashMap <Node, long [][]> childrenVmCounts, ArrayList <int []> physicalVMAllocation)
+	{
+		long childVmCounts [][];
+		Link [] childLinks;
+		int childVms [];
+		int last;
+		
+		//temporary array that holds <pmId, VMAllocated for the request>
+		int[] allocation;
+		
+		if (node.level == PhysicalMachine.MACHINE_LEVEL)
+		{
+			allocation = new int [2];
+			allocation[0] = node.id;
+			allocation[1] = vms;
+			physicalVMAllocation.add(allocation);		
+			allocation = null;
 			
-			//get the link in the main subTree that have the child subtree rootNode as source node
-			l = subTree.searchLink(s.rootNode);
+			return;
+		}
+		
+		childLinks = this.treeNetwork.getChildLinks(node);
+		childVmCounts = childrenVmCounts.get(node);
+		childVms = new int [childLinks.length];
+		
+		//last visited child
+		for (last = childLinks.length-1; childVmCounts[2*last+1] == null; last--);
+		
+		//from the last child, give to each child the fewest VMs that the previous children can complete
+		for (int i=last; i>0 && vms != 0; i--)
+		{
+			if (childVmCounts[2*i] == null)
+			{
+				continue;
+			}
 			
-			if (l.bandwidth < bandwidthToReserve)					
-			{	
-				//if l can not guarantee bandwidth for all VMToAllocate we allocate only the number it can guarantee admit		
-				vmToAllocate = l.bandwidth/request.B;													
-			}	
+			while (!isVmCountSet(childVmCounts[2*i], childVms[i]) || !isVmCountSet(childVmCounts[2*i-1], vms-childVms[i]))
+			{
+				childVms[i]++;
+			}
 			
-			//decrease the nb of vm that should be allocated to next child tree
-			remainingVms -=  vmToAllocate;
+			vms -= childVms[i];
+		}
+		
+		childVms[0] = vms;
+		
+		//the physical machines are allocated in the sub tree order
+		for (int i=0; i<=last; i++)
+		{
+			if (childVms[i] != 0)
+			{
+				this.buildAllocation(childLinks[i].sourceNode, childVms[i], childrenVmCounts, physicalVMAllocation);
+			}
+		}
+	}
+	
+	
+	/**
+	 * @param vmCounts set of numbers of VMs
+	 * @param m number of VMs
+	 * 
+	 * @return true if m is in the set
+	 */
+	private static boolean isVmCountSet (long vmCounts [], int m)
+	{
+		return (vmCounts[m >> 6] & (1L << m)) != 0;
+	}
+	
+	
+	/**
+	 * @param vmCounts set of numbers of VMs
+	 * @param maxVms
+	 * 
+	 * @return true if all the numbers from 0 to maxVms are in the set
+	 */
+	private static boolean isVmCountsRange (long vmCounts [], int maxVms)
+	{
+		for (int w=0; w<(maxVms >> 6); w++)
+		{
+			if (vmCounts[w] != -1L)
+			{
+				return false;
+			}
+		}
+		
+		return (~vmCounts[maxVms >> 6] & (-1L >>> (63 - (maxVms & 63)))) == 0;
+	}
+	
+	
+	/**
+	 * This function adds the numbers of VMs from first to last to the set
+	 * 
+	 * @param vmCounts set of numbers of VMs
+	 * @param first
+	 * @param last
+	 */
+	private static void addVmCountsRange (long vmCounts [], int first, int last)
+	{
+		for (int w=first >> 6; first<=last && w<=(last >> 6); w++)
+		{
+			vmCounts[w] |= getRangeMask(w, first, last);
+		}
+	}
+	
+	
+	/**
+	 * This function removes the numbers of VMs from first to last from the set.
+	 * The set is not changed since it may be shared, a copy is returned if it contains numbers to remove
+	 * 
+	 * @param vmCounts set of numbers of VMs
+	 * @param first
+	 * @param last
+	 * 
+	 * @return set without the numbers from first to last
+	 */
+	private static long [] removeVmCountsRange (long vmCounts [], int first, int last)
+	{
+		long result [] = vmCounts;
+		
+		for (int w=first >> 6; first<=last && w<=(last >> 6); w++)
+		{
+			if ((result[w] & getRangeMask(w, first, last)) == 0)
+			{
+				continue;
+			}
 			
-			System.out.println("			actual allocation "+ vmToAllocate+" remianing "+remainingVms);	
+			if (result == vmCounts)
+			{
+				result = vmCounts.clone();
+			}
 			
-			//if we are not at the pm level we need to check if the child tree can accommodate the vmToAllocate
-			if (s.rootNode.level != 0)
+			result[w] &= ~getRangeMask(w, first, last);
+		}
+		
+		return result;
+	}
+	
+	
+	/**
+	 * @param w word of a set of numbers of VMs
+	 * @param first
+	 * @param last
+	 * 
+	 * @return bits of the word for the numbers from first to last
+	 */
+	private static long getRangeMask (int w, int first, int last)
+	{
+		long mask = -1L;
+		
+		if (w == (first >> 6))
+		{
+			mask &= -1L << (first & 63);
+		}
+		
+		if (w == (last >> 6))
+		{
+			mask &= -1L >>> (63 - (last & 63));
+		}
+		
+		return mask;
+	}
+	
+	
+	/**
+	 * This function returns the numbers of VMs that two disjoint sub trees can host together
+	 * 
+	 * @param vmCounts1 numbers of VMs hosted by the first sub trees
+	 * @param vmCounts2 numbers of VMs hosted by the second sub trees
+	 * @param N maximum number of VMs
+	 * 
+	 * @return set of the sums lower or equal to N
+	 */
+	private static long [] addVmCounts (long vmCounts1 [], long vmCounts2 [], int N)
+	{
+		long sum [] = new long [vmCounts2.length];
+		long word;
+		int m;
+		int wordShift;
+		int bitShift;
+		
+		for (int v=0; v<vmCounts1.length; v++)
+		{
+			//visit the numbers of the first set
+			for (word = vmCounts1[v]; word != 0; word &= word-1)
+			{
+				m = (v << 6) + Long.numberOfTrailingZeros(word);
+				
+				//sum |= vmCounts2 << m
+				wordShift = m >> 6;
+				bitShift = m & 63;
+				
+				for (int w=sum.length-1; w>=wordShift; w--)
+				{
+					sum[w] |= vmCounts2[w-wordShift] << bitShift;
+					
+					if (bitShift != 0 && w-wordShift-1 >= 0)
+					{
+						sum[w] |= vmCounts2[w-wordShift-1] >>> (64-bitShift);
+					}
+				}
+			}
+		}
+		
+		//the numbers above N are not needed
+		if (((N+1) & 63) != 0)
+		{
+			sum[sum.length-1] &= getRangeMask(sum.length-1, 0, N);
+		}
+		
+		return sum;
+	}
+	
+	
+	/**
+	 * Check if bandwidth available in a subtree starting with the highest level.
+	 * This takes into consideration not rejecting a request after the first attempt but trying
+	 * to allocate the minimum number of VMs possible: when a child can not host the VMs given to it, 
+	 * fewer VMs are given to it and the next children host the remaining ones.
+	 * 
+	 * The search goes down the topology index and keeps, for each switch, whether its children i, i+1, ... can host m VMs
+	 * so that each case is searched once (the VMs hosted below a child must be guaranteed min(m, N-m)*B on its link).
+	 * As in isBandwidthAvailable(), a physical machine whose link can not guarantee the bandwidth of one VM is not used.
+	 * 
+	 * @param subTree the main sub tree
+	 * @param request the request
+	 * @param vmToAllocate the actual number of vms to allocate (should be equal to N initially)
+	 * @return array of <pmId, VMAllocated for the request> that hold the number of Vm allocated to the specified pm, 
+	 * null if the sub tree can not host the VMs
+	 */
+	public ArrayList <int []> isBandwidthAvailableUpdated (SubTree subTree, Request request, int vmToAllocate)
+	{
+		//for each visited switch, 1 if its children i, i+1, ... can host m VMs, 2 if they can not, 0 if not searched yet
+		HashMap <Node, byte [][]> searchedAllocations = new HashMap <Node, byte [][]>();
+		
+		//array of <pmId, VMAllocated for the request> that hold the number of Vm allocated to the specified pm
+		ArrayList <int []> physicalVMAllocation;
+		
+		if (!this.canHostVms(subTree.rootNode, request) || !this.canHostVms(subTree.rootNode, vmToAllocate, request, searchedAllocations))
+		{
+			return null;
+		}
+		
+		physicalVMAllocation = new ArrayList <int []>();
+		this.buildMinimumAllocation(subTree.rootNode, vmToAllocate, request, searchedAllocations, physicalVMAllocation);
+		
+		//empty memory
+		searchedAllocations = null;
+		
+		return physicalVMAllocation;
+	}
+	
+	
+	/**
+	 * This function checks if the sub tree of the node can host the VMs without considering the link above the node.
+	 * The node must be able to host VMs (see canHostVms(Node, Request))
+	 * 
+	 * @param node switch or physical machine
+	 * @param vms number of VMs to host
+	 * @param request
+	 * @param searchedAllocations searched cases of the visited switches (see isBandwidthAvailableUpdated())
+	 * 
+	 * @return true if the VMs can be hosted below the node
+	 */
+	private boolean canHostVms (Node node, int vms, Request request, HashMap <Node, byte [][]> searchedAllocations)
+	{
+		if (node.level == PhysicalMachine.MACHINE_LEVEL)
+		{
+			return vms <= ((PhysicalMachine)node).getAvailableVM();
+		}
+		
+		return this.canChildrenHostVms(node, 0, ((Switch)node).getAvailableVMs(), vms, request, searchedAllocations);
+	}
+	
+	
+	/**
+	 * This function checks if the children of the switch from the given one can host the VMs
+	 * 
+	 * @param node switch
+	 * @param child first child
+	 * @param availableVMs available VMs of the children from the first one
+	 * @param vms number of VMs to host
+	 * @param request
+	 * @param searchedAllocations searched cases of the visited switches (see isBandwidthAvailableUpdated())
+	 * 
+	 * @return true if the VMs can be hosted below the children
+	 */
+	private boolean canChildrenHostVms (Node node, int child, int availableVMs, int vms, Request request, HashMap <Node, byte [][]> searchedAllocations)
+	{
+		Link [] childLinks;
+		byte [][] searched;
+		boolean canHost = false;
+		
+		if (vms == 0)
+		{
+			return true;
+		}
+		
+		childLinks = this.treeNetwork.getChildLinks(node);
+		
+		if (vms > availableVMs || child == childLinks.length)
+		{
+			return false;
+		}
+		
+		searched = searchedAllocations.get(node);
+		
+		if (searched == null)
+		{
+			searched = new byte [childLinks.length][request.N+1];
+			searchedAllocations.put(node, searched);
+		}
+		
+		if (searched[child][vms] != 0)
+		{
+			return searched[child][vms] == 1;
+		}
+		
+		//give to the child as many VMs as it can host while the next children host the remaining ones
+		canHost = this.getChildVms(node, child, availableVMs, vms, request, searchedAllocations) >= 0;
+		
+		searched[child][vms] = (byte)(canHost ? 1 : 2);
+		
+		return canHost;
+	}
+	
+	
+	/**
+	 * This function returns the most VMs that the child of the switch can host while the next children host the remaining ones
+	 * 
+	 * @param node switch
+	 * @param child child
+	 * @param availableVMs available VMs of the children from the child
+	 * @param vms number of VMs to host below the children from the child
+	 * @param request
+	 * @param searchedAllocations searched cases of the visited switches (see isBandwidthAvailableUpdated())
+	 * 
+	 * @return VMs of the child (can be 0), -1 if the children can not host the VMs
+	 */
+	private int getChildVms (Node node, int child, int availableVMs, int vms, Request request, HashMap <Node, byte [][]> searchedAllocations)
+	{
+		Link l = this.treeNetwork.getChildLinks(node)[child];
+		int childAvailableVMs = l.sourceNode.level == PhysicalMachine.MACHINE_LEVEL ? 
+				((PhysicalMachine)l.sourceNode).getAvailableVM() : ((Switch)l.sourceNode).getAvailableVMs();
+		
+		if (this.canHostVms(l.sourceNode, request))
+		{
+			for (int childVms = Math.min(vms, childAvailableVMs); childVms > 0; childVms--)
 			{
-				/**
-				 * if childRemainingVms == 0 this means that we are checking if the next child of the main SubTree can accommodate the request
-				 * So it should try to allocate all VMs that were not allocated by the previous child (totalRemaining)
-				 */
-				if (childRemainingVms == 0)
+				//the link of the child must guarantee the bandwidth of the VMs hosted below it
+				if (Math.min(childVms, request.N-childVms)*request.B > l.getBandwidth())
 				{
-					vmToAllocate = totalRemaining;					
+					continue;
 				}
 				
-				//call the function again to check on the child sub tree
-				returnValues = isBandwidthAvailableUpdated (s, request, vmToAllocate);
-				childRemainingVms = returnValues[0];
-			
-				System.out.println(" here childRemainingVms "+childRemainingVms);
+				if (this.canHostVms(l.sourceNode, childVms, request, searchedAllocations) 
+						&& this.canChildrenHostVms(node, child+1, availableVMs-childAvailableVMs, vms-childVms, request, searchedAllocations))
+				{
+					return childVms;
+				}
 			}
+		}
+		
+		return this.canChildrenHostVms(node, child+1, availableVMs-childAvailableVMs, vms, request, searchedAllocations) ? 0 : -1;
+	}
+	
+	
+	/**
+	 * This function allocates the VMs on the physical machines under the node, the node sub tree must be able to host them
+	 * (searched by canHostVms(Node, int, Request, HashMap))
+	 * 
+	 * @param node switch or physical machine
+	 * @param vms number of VMs to allocate under the node
+	 * @param request
+	 * @param searchedAllocations searched cases of the visited switches (see isBandwidthAvailableUpdated())
+	 * @param physicalVMAllocation array of <pmId, VMAllocated for the request> where the allocations are added
+	 */
+	private void buildMinimumAllocation (Node node, int vms, Request request, HashMap <Node, byte [][]> searchedAllocations, ArrayList <int []> physicalVMAllocation)
+	{
+		Link [] childLinks;
+		int availableVMs;
+		int childVms;
+		
+		//temporary array that holds <pmId, VMAllocated for the request>
+		int[] allocation;
+		
+		if (node.level == PhysicalMachine.MACHINE_LEVEL)
+		{
+			allocation = new int [2];
+			allocation[0] = node.id;
+			allocation[1] = vms;
+			physicalVMAllocation.add(allocation);		
+			allocation = null;
 			
-			//here we know we allocated the minimum nb of VM to the child tree and the next loop is for a new one so we need to decrease the totalRemaining
-			if (childRemainingVms == 0)
+			return;
+		}
+		
+		childLinks = this.treeNetwork.getChildLinks(node);
+		availableVMs = ((Switch)node).getAvailableVMs();
+		
+		for (int i=0; i<childLinks.length && vms != 0; i++)
+		{
+			//the cases searched before are found again in searchedAllocations
+			childVms = this.getChildVms(node, i, availableVMs, vms, request, searchedAllocations);
+			
+			if (childVms > 0)
 			{
-				totalRemaining-= vmToAllocate;
-				
-				/*allocation[0] = s.rootNode.id;
-				allocation[1] = vmToAllocate;
-				physicalVMAllocation.add(allocation);*/
-				
-				/**
-				 * @TODO
-				 * Problem here is at the the total remaining will not include the last child tree if that one is not able to accommodate the initial request
-				 * but no problem because this means that the whole main sub tree can not embed the request 
-				 * however the problem is that at the last child iteration it is not calling the same child again to allocate the min number until having childRemainingVms =0
-				 * this is needed specially when having a 3rd level tree
-				 */
-				System.out.println(" here totalRemaining "+totalRemaining);
+				this.buildMinimumAllocation(childLinks[i].sourceNode, childVms, request, searchedAllocations, physicalVMAllocation);
+				vms -= childVms;
 			}
 			
+			availableVMs -= childLinks[i].sourceNode.level == PhysicalMachine.MACHINE_LEVEL ? 
+					((PhysicalMachine)childLinks[i].sourceNode).getAvailableVM() : ((Switch)childLinks[i].sourceNode).getAvailableVMs();
 		}
-		System.out.println(" return totalRemaining "+totalRemaining);
-		returnValues = new int [2];
-		returnValues [0] = remainingVms;
-		returnValues [1] =  totalRemaining;
-		return returnValues;
 	}
 	
+	
 	/**
 	 * Find the smallest subtree that can fit the request in the tree network and 
 	 * provide it with the needed number of VMs and bandwidth
@@ -567,43 +1164,57 @@ public class VirtualMachinesPlacement{
 	public SubTree getBestPlacementForRequest ( Request request,  int level)
 	{
 		SubTree subTree = null;
-		int i = 0;
 		boolean bestSubTreePlacement = false;
-		ArrayList <SubTree> subTreesWithAvailableSlots ;
+		Iterator <SubTree> subTrees ;
 
-		subTreesWithAvailableSlots = this.getSubtreesWithAvailableSlots (level,  request);
-		
-		//ascending sort the subtrees that can fit the request
-		//subTreesWithAvailableSlots = this.treeNetwork.orderSubtreesByVMs(subTreesWithAvailableSlots);
+		//the sub trees of the level in ascending order of the residual bandwidth on the link connecting the subtree to the rest of the network
+		subTrees = this.getCandidateSubTrees(level, request);
 		
-		//ascending sort the subtrees that can fit the request based on the residual bandwidth on the link connecting the subtree to the rest of the network
-		subTreesWithAvailableSlots = this.treeNetwork.orderSubtreesByUpperLinkResidualBandwidth(subTreesWithAvailableSlots);
+		/*
+		 * the candidates are checked in parallel, all of them were checked if no sub tree is returned
+		 * unless the thread was interrupted: the pool is not used anymore and the remaining candidates are checked below
+		 */
+		if (this.candidatesPool != null && !Thread.currentThread().isInterrupted())
+		{
+			subTree = this.getFirstSubTreeWithBandwidth(subTrees, request);
+			
+			if (subTree != null)
+			{
+				return subTree;
+			}
+		}
 		
-		// getting the first subtree from the sub tree list with available VMS that can fit the request in term of bandwidth
-		while ( i < subTreesWithAvailableSlots.size() && !bestSubTreePlacement )
+		// getting the first subtree with available VMS that can fit the request in term of bandwidth
+		while ( subTrees.hasNext() && !bestSubTreePlacement )
 		{
-			subTree = subTreesWithAvailableSlots.get(i);
+			subTree = subTrees.next();
 			
+			/*
+			 * check for the available VMs and for a server link that can guarantee the bandwidth of one VM 
+			 * (the summaries of the root switch, the candidates are only ordered by the residual bandwidth of their upper link)
+			 */
+			if (subTree.getAvailableVms() < request.N || subTree.getMaxServerBandwidth() < request.B)
+			{
+				continue;
+			}
 			
 			if (this.isBandwidthAvailable(subTree, request))
 			{				
 				bestSubTreePlacement = true;
 				return subTree;
 			}
-			
-			i++;			
 		}
 		
 
 		//if no subtrees that can fit the VM request at the specified level we search at a higher level
-		if (!bestSubTreePlacement && level <= FatTreeNetwork.HEIGHT)
+		if (!bestSubTreePlacement && level <= this.treeNetwork.height)
 		{		
 			level++;
 			subTree = this.getBestPlacementForRequest ( request, level);
 		}
 		
 		//this is to handle the case where there is a subtree with available slots but with not enough bandwidth
-		if (!bestSubTreePlacement && level > FatTreeNetwork.HEIGHT)
+		if (!bestSubTreePlacement && level > this.treeNetwork.height)
 		{
 			return null;
 		}
@@ -613,6 +1224,103 @@ public class VirtualMachinesPlacement{
 	}
 	
 	
+	/**
+	 * This function checks the candidate sub trees on the threads of the candidates pool and returns the first one 
+	 * (in the order of the iterator) that can admit the bandwidth of the request.
+	 * The candidates are checked by groups of one candidate per thread so that no more candidates than needed are checked 
+	 * when an early one is admitted, and the group candidates before the first admitted one are all checked 
+	 * so that the returned sub tree is the one found when checking them one after the other
+	 * 
+	 * @param subTrees candidate sub trees
+	 * @param request
+	 * 
+	 * @return first sub tree that can admit the request, null if none can admit it
+	 * or if the thread was interrupted (the remaining candidates are left in the iterator)
+	 */
+	private SubTree getFirstSubTreeWithBandwidth (Iterator <SubTree> subTrees, final Request request)
+	{
+		ArrayList <SubTree> candidates = new ArrayList <SubTree>();
+		ArrayList <Callable <ArrayList <int []>>> checks = new ArrayList <Callable <ArrayList <int []>>>();
+		List <Future <ArrayList <int []>>> allocations;
+		ArrayList <int []> physicalVMAllocation;
+		SubTree subTree;
+		
+		while (subTrees.hasNext())
+		{
+			candidates.clear();
+			checks.clear();
+			
+			while (subTrees.hasNext() && candidates.size() < this.candidatesPool.getParallelism())
+			{
+				subTree = subTrees.next();
+				
+				//same skip as the sequential check (see getBestPlacementForRequest)
+				if (subTree.getAvailableVms() < request.N || subTree.getMaxServerBandwidth() < request.B)
+				{
+					continue;
+				}
+				
+				final SubTree candidate = subTree;
+				
+				candidates.add(candidate);
+				checks.add(new Callable <ArrayList <int []>>()
+				{
+					@Override
+					public ArrayList <int []> call()
+					{
+						return getAllocationPlan(candidate, request);
+					}
+				});
+			}
+			
+			try
+			{
+				allocations = this.candidatesPool.invokeAll(checks);
+				
+				for (int i=0; i<candidates.size(); i++)
+				{
+					physicalVMAllocation = allocations.get(i).get();
+					
+					if (physicalVMAllocation != null)
+					{
+						request.primaryAllocationPlan = physicalVMAllocation;
+						request.primaryAllocationPlanSubTree = candidates.get(i);
+						
+						return candidates.get(i);
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				//keep the interruption for the caller and check the group in this thread
+				Thread.currentThread().interrupt();
+				
+				for (int i=0; i<candidates.size(); i++)
+				{
+					if (this.isBandwidthAvailable(candidates.get(i), request))
+					{
+						return candidates.get(i);
+					}
+				}
+				
+				//the remaining candidates are checked by the caller without the pool
+				return null;
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof RuntimeException)
+				{
+					throw (RuntimeException)e.getCause();
+				}
+				
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		
+		return null;
+	}
+	
+	
 	/**
 	 * This function calculate the revenue of the allocation 
 	 * 